@@ -0,0 +1,356 @@
+import benchmark.Fixtures;
+import com.google.gson.GsonBuilder;
+import config.EngineConfig;
+import metrics.EngineMetrics;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.api.java.function.PairFunction;
+import org.apache.spark.api.java.function.VoidFunction;
+import org.apache.spark.sql.SQLContext;
+import org.apache.spark.streaming.Duration;
+import org.apache.spark.streaming.api.java.JavaDStream;
+import org.apache.spark.streaming.api.java.JavaPairDStream;
+import org.apache.spark.streaming.api.java.JavaStreamingContext;
+import org.apache.spark.streaming.scheduler.BatchInfo;
+import org.apache.spark.streaming.scheduler.StreamingListener;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchCompleted;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchSubmitted;
+import org.apache.spark.streaming.scheduler.StreamingListenerOutputOperationCompleted;
+import org.apache.spark.streaming.scheduler.StreamingListenerOutputOperationStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverError;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverStopped;
+import scala.Tuple2;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * End to end throughput of StreamHandler.processStream on Spark local[*].
+ *
+ * Synthetic Logstash events are fed through a queue stream in place of Kafka, one RDD per batch. The events of a
+ * batch are generated on the executors from a seed, so the input costs neither driver memory nor I/O. For every
+ * combination of batch interval and input rate the pipeline runs for a number of batches, and the processing and
+ * scheduling delays of the batches (from a StreamingListener) are reported together with the driver time of each
+ * stage of processBatch. A rate is sustainable while the processing delay stays below the batch interval, once it
+ * doesn't the scheduling delay keeps growing.
+ *
+ * Usage:  StreamingBenchmark <batchIntervals> <rates> [<batchesPerRun>]
+ *   <batchIntervals> is a list of batch intervals in milliseconds, e.g. 1000,2000,5000
+ *   <rates> is a list of input rates in events per second, e.g. 500,2000,10000
+ *   <batchesPerRun> is the number of batches measured per combination (10 by default)
+ *
+ * Results are printed and written to target/streaming-benchmark.json. The rule CSVs, rule files and dead letters of
+ * the runs go to a temporary directory that is deleted afterwards.
+ */
+public class StreamingBenchmark {
+	private static final String APP_NAME = "StreamingBenchmark";
+	private static final String SPARK_MASTER = "local[*]";
+	private static final String RESULT_FILE = "target/streaming-benchmark.json";
+
+	private static final int DEFAULT_BATCHES_PER_RUN = 10;
+
+	//The first batches of every run initialise the dictionaries and the cluster centres, they are not measured.
+	private static final int WARM_UP_BATCHES = 2;
+
+	private static final int WINDOW_MAX_SEGMENTS = 20;
+	private static final long WINDOW_MAX_ROWS = 100000;
+	private static final long WINDOW_RETENTION_MILLIS = 600000;
+
+	private static final String CLASSIFIERS = "logisticRegressionSimple,decisionTreeSimple";
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: StreamingBenchmark <batchIntervals> <rates> [<batchesPerRun>]");
+			System.exit(1);
+		}
+
+		int batchesPerRun = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCHES_PER_RUN;
+
+		SparkConf sparkConf = new SparkConf().setMaster(SPARK_MASTER).setAppName(APP_NAME)
+				.set("spark.scheduler.mode", "FAIR");
+		JavaSparkContext sc = new JavaSparkContext(sparkConf);
+		SQLContext sqlContext = new SQLContext(sc);
+
+		LogManager.getRootLogger().setLevel(Level.ERROR);
+
+		List<Map<String, Object>> results = new ArrayList<>();
+		Path outputDir = Files.createTempDirectory("streaming-benchmark");
+
+		try {
+			for (String batchInterval : args[0].split(",")) {
+				for (String rate : args[1].split(",")) {
+					Map<String, Object> result = run(sc, sqlContext, Long.parseLong(batchInterval), Integer.parseInt(rate),
+							batchesPerRun, outputDir);
+
+					System.out.println(result);
+					results.add(result);
+				}
+			}
+		} finally {
+			deleteRecursively(outputDir);
+		}
+
+		writeResults(results);
+		printTable(results);
+
+		sc.stop();
+	}
+
+	private static Map<String, Object> run(JavaSparkContext sc, SQLContext sqlContext, long batchIntervalMillis,
+	                                       int eventsPerSecond, int batchesPerRun, Path outputDir) throws InterruptedException {
+		int eventsPerBatch = (int) (eventsPerSecond * batchIntervalMillis / 1000);
+		int noOfBatches = WARM_UP_BATCHES + batchesPerRun;
+
+		JavaStreamingContext streamingContext = new JavaStreamingContext(sc, new Duration(batchIntervalMillis));
+
+		//The queue is copied when the stream is created, so every batch has to be in it up front. The events are
+		//generated and cached before the stream starts, so that generating them is not part of the measured batches.
+		Queue<JavaRDD<String>> batches = new LinkedList<>();
+		for (int batch = 0; batch < noOfBatches; batch++) {
+			JavaRDD<String> batchEvents = syntheticEvents(sc, eventsPerBatch, batch).cache();
+			batchEvents.count();
+			batches.add(batchEvents);
+		}
+		List<JavaRDD<String>> cachedBatches = new ArrayList<>(batches);
+
+		JavaDStream<String> events = streamingContext.queueStream(batches, true);
+		JavaPairDStream<String, String> messages = withoutKeys(events);
+
+		LogWindowStore logWindowStore = new LogWindowStore(WINDOW_RETENTION_MILLIS, WINDOW_MAX_ROWS, WINDOW_MAX_SEGMENTS, "logs");
+
+		//Every batch runs the whole pipeline, that is what is measured.
+		BatchController batchController = new BatchController(batchIntervalMillis, 0, 0, WINDOW_MAX_ROWS, EngineMetrics.getRegistry());
+
+		Map<String, String> settings = new HashMap<>();
+		settings.put("classifiers", CLASSIFIERS);
+		settings.put("outputDir", outputDir.toString());
+
+		//Registered before the pipeline, so it runs on the driver right before the first measured batch is processed
+		//and the stage times cover the same batches as the delays.
+		resetStageTimingsAt(messages, WARM_UP_BATCHES);
+
+		new StreamHandler().processStream(messages, logWindowStore, batchController, null, null, null,
+				new EngineConfig(settings), sqlContext);
+
+		BatchListener listener = new BatchListener(noOfBatches);
+		streamingContext.addStreamingListener(listener);
+
+		streamingContext.start();
+		listener.awaitBatches(noOfBatches * batchIntervalMillis * 20 + 120000);
+		streamingContext.stop(false, false);
+
+		for (JavaRDD<String> cachedBatch : cachedBatches) {
+			cachedBatch.unpersist();
+		}
+
+		return summarise(listener.getBatches(), batchIntervalMillis, eventsPerSecond, eventsPerBatch);
+	}
+
+	private static Map<String, Object> summarise(List<BatchInfo> batches, long batchIntervalMillis, int eventsPerSecond,
+	                                             int eventsPerBatch) {
+		long processingDelay = 0;
+		long maxProcessingDelay = 0;
+		long schedulingDelay = 0;
+		long maxSchedulingDelay = 0;
+		long lastSchedulingDelay = 0;
+		int measured = 0;
+
+		for (BatchInfo batch : batches.subList(Math.min(WARM_UP_BATCHES, batches.size()), batches.size())) {
+			long batchProcessingDelay = batch.processingDelay().isDefined() ? (Long) batch.processingDelay().get() : 0;
+			long batchSchedulingDelay = batch.schedulingDelay().isDefined() ? (Long) batch.schedulingDelay().get() : 0;
+
+			processingDelay += batchProcessingDelay;
+			maxProcessingDelay = Math.max(maxProcessingDelay, batchProcessingDelay);
+			schedulingDelay += batchSchedulingDelay;
+			maxSchedulingDelay = Math.max(maxSchedulingDelay, batchSchedulingDelay);
+			lastSchedulingDelay = batchSchedulingDelay;
+			measured++;
+		}
+
+		double averageProcessingDelay = measured == 0 ? 0 : (double) processingDelay / measured;
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("batchIntervalMillis", batchIntervalMillis);
+		result.put("eventsPerSecond", eventsPerSecond);
+		result.put("eventsPerBatch", eventsPerBatch);
+		result.put("measuredBatches", measured);
+		result.put("averageProcessingDelayMillis", averageProcessingDelay);
+		result.put("maxProcessingDelayMillis", maxProcessingDelay);
+		result.put("averageSchedulingDelayMillis", measured == 0 ? 0 : (double) schedulingDelay / measured);
+		result.put("maxSchedulingDelayMillis", maxSchedulingDelay);
+		result.put("processedEventsPerSecond", averageProcessingDelay == 0 ? 0 : eventsPerBatch * 1000 / averageProcessingDelay);
+		result.put("sustainable", averageProcessingDelay <= batchIntervalMillis && lastSchedulingDelay <= batchIntervalMillis);
+		result.put("stageMillis", StreamHandler.getStageTimings().getAverageMillis());
+
+		return result;
+	}
+
+	private static void resetStageTimingsAt(JavaPairDStream<String, String> messages, final int batch) {
+		messages.foreachRDD(new VoidFunction<JavaPairRDD<String, String>>() {
+			private int noOfBatches;
+
+			@Override
+			public void call(JavaPairRDD<String, String> rdd) throws Exception {
+				if (noOfBatches++ == batch) {
+					StreamHandler.getStageTimings().reset();
+				}
+			}
+		});
+	}
+
+	//Static so that the functions shipped to the executors do not drag anything else along with them.
+	private static JavaRDD<String> syntheticEvents(JavaSparkContext sc, final int noOfEvents, int batch) {
+		int noOfPartitions = sc.defaultParallelism();
+		List<Long> seeds = new ArrayList<>();
+
+		for (int partition = 0; partition < noOfPartitions; partition++) {
+			seeds.add((long) batch * noOfPartitions + partition);
+		}
+
+		final int noOfPartitionsForEvents = noOfPartitions;
+
+		return sc.parallelize(seeds, noOfPartitions).flatMap(new FlatMapFunction<Long, String>() {
+			@Override
+			public Iterable<String> call(Long seed) throws Exception {
+				Random random = new Random(seed);
+				int eventsOfPartition = noOfEvents / noOfPartitionsForEvents
+						+ (seed % noOfPartitionsForEvents < noOfEvents % noOfPartitionsForEvents ? 1 : 0);
+				List<String> events = new ArrayList<>(eventsOfPartition);
+
+				for (int i = 0; i < eventsOfPartition; i++) {
+					events.add(Fixtures.logEvent(random).toString());
+				}
+
+				return events;
+			}
+		});
+	}
+
+	private static JavaPairDStream<String, String> withoutKeys(JavaDStream<String> events) {
+		return events.mapToPair(new PairFunction<String, String, String>() {
+			@Override
+			public Tuple2<String, String> call(String event) throws Exception {
+				return new Tuple2<>(null, event);
+			}
+		});
+	}
+
+	private static void deleteRecursively(Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+				Files.delete(directory);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static void writeResults(List<Map<String, Object>> results) throws IOException {
+		Files.createDirectories(Paths.get(RESULT_FILE).getParent());
+
+		try (Writer writer = Files.newBufferedWriter(Paths.get(RESULT_FILE), StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(results, writer);
+		}
+	}
+
+	private static void printTable(List<Map<String, Object>> results) {
+		System.out.println(String.format("%10s %10s %12s %12s %12s %12s  %s",
+				"interval", "rate", "processing", "scheduling", "events/s", "sustainable", "stages (ms)"));
+
+		for (Map<String, Object> result : results) {
+			System.out.println(String.format("%10d %10d %12.0f %12.0f %12.0f %12s  %s",
+					result.get("batchIntervalMillis"), result.get("eventsPerSecond"),
+					result.get("averageProcessingDelayMillis"), result.get("averageSchedulingDelayMillis"),
+					result.get("processedEventsPerSecond"), result.get("sustainable"), result.get("stageMillis")));
+		}
+	}
+
+	/**
+	 * Collects the completed batches until enough of them are in.
+	 */
+	private static class BatchListener implements StreamingListener {
+		private final int noOfBatches;
+		private final List<BatchInfo> batches = new ArrayList<>();
+
+		private BatchListener(int noOfBatches) {
+			this.noOfBatches = noOfBatches;
+		}
+
+		@Override
+		public synchronized void onBatchCompleted(StreamingListenerBatchCompleted batchCompleted) {
+			if (batches.size() < noOfBatches) {
+				batches.add(batchCompleted.batchInfo());
+				notifyAll();
+			}
+		}
+
+		private synchronized void awaitBatches(long timeoutMillis) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + timeoutMillis;
+
+			while (batches.size() < noOfBatches && System.currentTimeMillis() < deadline) {
+				wait(Math.max(1, deadline - System.currentTimeMillis()));
+			}
+		}
+
+		private synchronized List<BatchInfo> getBatches() {
+			return new ArrayList<>(batches);
+		}
+
+		@Override
+		public void onReceiverStarted(StreamingListenerReceiverStarted receiverStarted) {
+		}
+
+		@Override
+		public void onReceiverError(StreamingListenerReceiverError receiverError) {
+		}
+
+		@Override
+		public void onReceiverStopped(StreamingListenerReceiverStopped receiverStopped) {
+		}
+
+		@Override
+		public void onBatchSubmitted(StreamingListenerBatchSubmitted batchSubmitted) {
+		}
+
+		@Override
+		public void onBatchStarted(StreamingListenerBatchStarted batchStarted) {
+		}
+
+		@Override
+		public void onOutputOperationStarted(StreamingListenerOutputOperationStarted outputOperationStarted) {
+		}
+
+		@Override
+		public void onOutputOperationCompleted(StreamingListenerOutputOperationCompleted outputOperationCompleted) {
+		}
+	}
+}
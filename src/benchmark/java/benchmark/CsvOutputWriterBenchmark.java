@@ -0,0 +1,46 @@
+package benchmark;
+
+import converter.CsvOutputWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing flattened rows as one CSV string, header union included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CsvOutputWriterBenchmark {
+	@Param({"1000", "100000"})
+	public int noOfRows;
+
+	private CsvOutputWriter csvOutputWriter;
+	private List<Map<String, String>> rows;
+
+	@Setup
+	public void setUp() {
+		csvOutputWriter = new CsvOutputWriter();
+		rows = Fixtures.flatRows(noOfRows, 42);
+	}
+
+	@Benchmark
+	public String writeAsCsvString() throws Exception {
+		return csvOutputWriter.writeAsCsvString(rows);
+	}
+}
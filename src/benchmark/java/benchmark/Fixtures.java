@@ -0,0 +1,138 @@
+package benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generated inputs for the benchmarks. Seeded, so every run measures the same data.
+ */
+public class Fixtures {
+	private static final String[] VERBS = {"GET", "POST", "PUT", "DELETE", "HEAD"};
+	private static final String[] RESPONSES = {"200", "301", "304", "404", "500"};
+	private static final String[] CITIES = {"Moscow", "Berlin", "London", "Paris", "Colombo", "Tokyo", "New York", "Madrid"};
+
+	private Fixtures() {
+	}
+
+	/**
+	 * A Logstash event like the one in src/main/resources/schema.json.
+	 */
+	public static JsonObject logEvent(Random random) {
+		String clientIp = random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+		String verb = VERBS[random.nextInt(VERBS.length)];
+		String request = "/articles/" + random.nextInt(1000) + ".html";
+		String response = RESPONSES[random.nextInt(RESPONSES.length)];
+
+		JsonObject event = new JsonObject();
+		event.addProperty("message", clientIp + " - - [04/Jan/2015:05:13:42 +0000] \"" + verb + " " + request + " HTTP/1.1\" " + response);
+		event.addProperty("@version", "1");
+		event.addProperty("@timestamp", "2016-06-17T05:16:28.282Z");
+		event.addProperty("path", "/var/log/apache/access.log");
+		event.addProperty("host", "web-" + random.nextInt(10));
+		event.addProperty("type", "apache_access");
+		event.addProperty("clientip", clientIp);
+		event.addProperty("ident", "-");
+		event.addProperty("auth", "-");
+		event.addProperty("timestamp", "04/Jan/2015:05:13:42 +0000");
+		event.addProperty("verb", verb);
+		event.addProperty("request", request);
+		event.addProperty("httpversion", "1.1");
+		event.addProperty("response", response);
+		event.addProperty("bytes", String.valueOf(random.nextInt(100000)));
+		event.addProperty("referrer", "\"http://semicomplete.com/presentations/logstash-monitorama-2013/\"");
+		event.addProperty("agent", "\"Mozilla/5.0 (Macintosh; Intel Mac OS X 10_9_1) AppleWebKit/537.36 (KHTML, like Gecko)\"");
+
+		JsonObject geoip = new JsonObject();
+		geoip.addProperty("ip", clientIp);
+		geoip.addProperty("country_code2", "RU");
+		geoip.addProperty("country_name", "Russian Federation");
+		geoip.addProperty("city_name", CITIES[random.nextInt(CITIES.length)]);
+		geoip.addProperty("latitude", random.nextDouble() * 180 - 90);
+		geoip.addProperty("longitude", random.nextDouble() * 360 - 180);
+
+		JsonArray location = new JsonArray();
+		location.add(geoip.get("longitude"));
+		location.add(geoip.get("latitude"));
+		geoip.add("location", location);
+
+		event.add("geoip", geoip);
+
+		return event;
+	}
+
+	/**
+	 * A JSON array of log events.
+	 */
+	public static String logEvents(int noOfEvents, long seed) {
+		Random random = new Random(seed);
+		JsonArray events = new JsonArray();
+
+		for (int i = 0; i < noOfEvents; i++) {
+			events.add(logEvent(random));
+		}
+
+		return events.toString();
+	}
+
+	/**
+	 * Flat rows the way JsonProcessor produces them.
+	 */
+	public static List<Map<String, String>> flatRows(int noOfRows, long seed) {
+		Random random = new Random(seed);
+		List<Map<String, String>> rows = new ArrayList<>(noOfRows);
+
+		for (int i = 0; i < noOfRows; i++) {
+			Map<String, String> row = new HashMap<>();
+
+			row.put("verb", VERBS[random.nextInt(VERBS.length)]);
+			row.put("response", RESPONSES[random.nextInt(RESPONSES.length)]);
+			row.put("request", "/articles/" + random.nextInt(1000) + ".html");
+			row.put("city_name", CITIES[random.nextInt(CITIES.length)]);
+			row.put("agent", "\"Mozilla/5.0 (Macintosh; Intel Mac OS X 10_9_1)\"");
+			row.put("bytes", String.valueOf(random.nextInt(100000)));
+
+			rows.add(row);
+		}
+
+		return rows;
+	}
+
+	/**
+	 * A rule CSV like RuleAggregator writes (verb, response, clusters, support, confidence, precision). There are only
+	 * a few hundred distinct rules, so most rows are duplicates, like in the CSVs of a long running job.
+	 */
+	public static void writeRuleCsv(Path file, int noOfRows, long seed) throws IOException {
+		Random random = new Random(seed);
+
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write("verb,response,clusters,support,confidence,precision");
+			writer.newLine();
+
+			for (int i = 0; i < noOfRows; i++) {
+				writer.write(VERBS[random.nextInt(VERBS.length)]);
+				writer.write(',');
+				writer.write(RESPONSES[random.nextInt(RESPONSES.length)] + ".0");
+				writer.write(',');
+				writer.write(String.valueOf(random.nextInt(5)));
+				writer.write(',');
+				writer.write(String.valueOf(1 + random.nextInt(1000)));
+				writer.write(',');
+				writer.write(String.valueOf(random.nextDouble()));
+				writer.write(',');
+				writer.write(String.valueOf(random.nextDouble()));
+				writer.newLine();
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package benchmark;
+
+import com.google.common.base.Optional;
+import com.google.maps.model.LatLng;
+import geocoder.CachingGeocoder;
+import geocoder.Geocoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CachingGeocoder in front of a backend that answers straight away, so only the cost of the caches is measured.
+ *
+ * A hit is an address that is in the in-memory cache. A miss is an address that was never seen, which goes through
+ * the in-memory cache, the memory-mapped cache and the backend, and is then stored in both caches.
+ *
+ * Every iteration gets a new cache file, so misses are always stored on disk: a full cache would no longer store
+ * them and make the later iterations look faster. The file holds about 3 million addresses, more than a one second
+ * iteration adds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GeocoderCacheBenchmark {
+	private static final int CACHE_SLOTS = 1 << 22;
+	private static final int MEMORY_CACHE_SIZE = 500;
+	private static final String CACHED_ADDRESS = "Colombo, LK";
+
+	private Path cacheDir;
+	private CachingGeocoder geocoder;
+	private long missCounter;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		cacheDir = Files.createTempDirectory("geocoder-benchmark");
+		geocoder = new CachingGeocoder(new StubGeocoder(), cacheDir.resolve("geocode-cache").toString(), CACHE_SLOTS, MEMORY_CACHE_SIZE);
+
+		geocoder.geocode(CACHED_ADDRESS);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		//The cache file stays mapped until the JVM exits, only the directory entry goes.
+		Files.deleteIfExists(cacheDir.resolve("geocode-cache"));
+		Files.deleteIfExists(cacheDir);
+	}
+
+	@Benchmark
+	public Optional<LatLng> hit() throws Exception {
+		return geocoder.geocode(CACHED_ADDRESS);
+	}
+
+	@Benchmark
+	public Optional<LatLng> miss() throws Exception {
+		return geocoder.geocode("City " + missCounter++ + ", XX");
+	}
+
+	private static class StubGeocoder implements Geocoder {
+		private static final Optional<LatLng> LOCATION = Optional.of(new LatLng(6.93, 79.85));
+
+		@Override
+		public Optional<LatLng> geocode(String address) {
+			return LOCATION;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package benchmark;
+
+import converter.JsonFlattener;
+import converter.JsonProcessor;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flattening of Logstash events, from a JSON array string and from a single already parsed JSONObject.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JsonProcessorBenchmark {
+	@Param({"100", "10000"})
+	public int noOfEvents;
+
+	private JsonProcessor jsonProcessor;
+	private String events;
+	private JSONObject event;
+
+	@Setup
+	public void setUp() {
+		jsonProcessor = new JsonProcessor();
+		events = Fixtures.logEvents(noOfEvents, 42);
+		event = new JSONObject(Fixtures.logEvent(new Random(42)).toString());
+	}
+
+	@Benchmark
+	public List<Map<String, String>> parseJson() throws Exception {
+		return jsonProcessor.parseJson(events);
+	}
+
+	@Benchmark
+	public long flattenStreaming() throws IOException {
+		return jsonProcessor.getJsonFlattener().flatten(new StringReader(events), new JsonFlattener.RowHandler() {
+			@Override
+			public void onRow(Map<String, String> row) {
+			}
+		});
+	}
+
+	@Benchmark
+	public Map<String, String> flattenJsonObject() {
+		return jsonProcessor.parse(event);
+	}
+}
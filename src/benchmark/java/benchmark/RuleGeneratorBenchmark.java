@@ -0,0 +1,63 @@
+package benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rulegenerator.RuleGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a rule CSV into a rule file, all distinct rules and only the best 100, in a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleGeneratorBenchmark {
+	private static final String CSV_FILE = "rules.csv";
+
+	@Param({"1000", "100000", "1000000"})
+	public int noOfRows;
+
+	private Path outputDir;
+	private RuleGenerator ruleGenerator;
+
+	@Setup
+	public void setUp() throws IOException {
+		outputDir = Files.createTempDirectory("rule-generator-benchmark");
+		Fixtures.writeRuleCsv(outputDir.resolve(CSV_FILE), noOfRows, 42);
+
+		ruleGenerator = new RuleGenerator(outputDir.toString());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(outputDir.toFile());
+	}
+
+	@Benchmark
+	public String generateRuleFile() {
+		return ruleGenerator.generateRuleFile(CSV_FILE);
+	}
+
+	@Benchmark
+	public String generateBestRules() {
+		return ruleGenerator.generateRuleFile(CSV_FILE, 100);
+	}
+}
@@ -0,0 +1,194 @@
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decides per micro-batch whether the ML stages (clustering, classification, rules) run, so that their cost follows
+ * the load instead of the batch interval.
+ *
+ * Every batch is added to the log window either way, only the ML stages are put off:
+ * - A batch with fewer rows than the minimum (e.g. at night) is deferred, and its rows are carried forward to the next
+ *   run, which clusters the new rows of all batches since the last run.
+ * - When the engine is behind, i.e. a batch starts later than one batch interval after its batch time, or the last run
+ *   took longer than the batches since it cover, the batch is coalesced into the next run. The following batches then
+ *   only pay for decoding and the window, so the queue drains, and the next run does the work of all of them at once.
+ * Nothing is deferred for longer than the maximum delay, and no more rows than the maximum are left waiting (they
+ * are kept in the log window until they are processed), then the ML stages run whatever the load.
+ *
+ * The decisions are counted in the metrics (controller.processed, controller.deferred, controller.coalesced,
+ * controller.forced) next to the rows and batches waiting for the next run and the batches per run.
+ */
+public class BatchController {
+	private static final Logger logger = LoggerFactory.getLogger(BatchController.class);
+
+	public enum Decision {
+		//Run the ML stages on the rows of this batch and of all batches deferred since the last run.
+		PROCESS,
+		//Too few rows, carried forward.
+		DEFER,
+		//The engine is behind, coalesced into a later run.
+		COALESCE
+	}
+
+	private static final long NOTHING_PENDING = -1;
+
+	private final long batchIntervalMillis;
+	private final long minBatchRows;
+	private final long maxDeferMillis;
+	private final long maxPendingRows;
+
+	private long pendingSinceMillis = NOTHING_PENDING;
+	private long pendingRows;
+	private long pendingBatches;
+
+	private long lastRunBatchMillis = NOTHING_PENDING;
+	private long lastRunDurationMillis;
+
+	private final Counter processed;
+	private final Counter deferred;
+	private final Counter coalesced;
+	private final Counter forced;
+	private final Histogram batchesPerRun;
+
+	/**
+	 * @param minBatchRows   batches with fewer rows are carried forward, 0 to never defer on size
+	 * @param maxDeferMillis longest the ML stages are put off for
+	 * @param maxPendingRows most rows left waiting for the ML stages, the row limit of the log window
+	 */
+	public BatchController(long batchIntervalMillis, long minBatchRows, long maxDeferMillis, long maxPendingRows,
+	                       MetricRegistry metrics) {
+		checkArgument(batchIntervalMillis > 0, "Batch interval has to be positive");
+		checkArgument(minBatchRows >= 0, "Minimum batch size can't be negative");
+		checkArgument(maxDeferMillis >= 0, "Maximum delay can't be negative");
+		checkArgument(maxPendingRows > 0, "Maximum number of waiting rows has to be positive");
+
+		this.batchIntervalMillis = batchIntervalMillis;
+		this.minBatchRows = minBatchRows;
+		this.maxDeferMillis = maxDeferMillis;
+		this.maxPendingRows = maxPendingRows;
+
+		processed = metrics.counter("controller.processed");
+		deferred = metrics.counter("controller.deferred");
+		coalesced = metrics.counter("controller.coalesced");
+		forced = metrics.counter("controller.forced");
+		batchesPerRun = metrics.histogram("controller.batchesPerRun");
+
+		//A new controller (e.g. for another streaming context) takes over the gauges of the one before.
+		metrics.remove("controller.pendingRows");
+		metrics.remove("controller.pendingBatches");
+
+		metrics.register("controller.pendingRows", new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return getPendingRows();
+			}
+		});
+		metrics.register("controller.pendingBatches", new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return getPendingBatches();
+			}
+		});
+	}
+
+	/**
+	 * Adds a batch to the ones waiting for the ML stages and decides whether they run now. When they do, processed has
+	 * to be called once they are done.
+	 *
+	 * @param batchRows  rows the batch added to the window, 0 if nothing came in
+	 * @param startDelay how long after its batch time the batch started to be processed
+	 */
+	public synchronized Decision decide(long batchTimeMillis, long batchRows, long startDelay) {
+		if (batchRows > 0) {
+			if (pendingSinceMillis == NOTHING_PENDING) {
+				pendingSinceMillis = batchTimeMillis;
+			}
+
+			pendingRows += batchRows;
+			pendingBatches++;
+		}
+
+		if (pendingRows == 0) {
+			return Decision.DEFER;
+		}
+
+		if (maxDeferMillis == 0) {
+			return Decision.PROCESS;
+		}
+
+		if (batchTimeMillis - pendingSinceMillis >= maxDeferMillis || pendingRows >= maxPendingRows) {
+			forced.inc();
+			return Decision.PROCESS;
+		}
+
+		if (pendingRows < minBatchRows) {
+			deferred.inc();
+			logger.info("Deferring the ML stages, " + pendingRows + " rows in " + pendingBatches + " batches are waiting");
+			return Decision.DEFER;
+		}
+
+		boolean queueing = startDelay > batchIntervalMillis;
+		boolean slowerThanBatches = lastRunBatchMillis != NOTHING_PENDING
+				&& batchTimeMillis - lastRunBatchMillis < lastRunDurationMillis;
+
+		if (queueing || slowerThanBatches) {
+			coalesced.inc();
+			logger.info("Coalescing the ML stages, batch started " + startDelay + " ms late and the last run took "
+					+ lastRunDurationMillis + " ms, " + pendingRows + " rows in " + pendingBatches + " batches are waiting");
+			return Decision.COALESCE;
+		}
+
+		return Decision.PROCESS;
+	}
+
+	/**
+	 * The ML stages ran on the pending batches.
+	 */
+	public synchronized void processed(long batchTimeMillis, long durationMillis) {
+		processed.inc();
+		batchesPerRun.update(pendingBatches);
+
+		lastRunBatchMillis = batchTimeMillis;
+		lastRunDurationMillis = durationMillis;
+
+		pendingSinceMillis = NOTHING_PENDING;
+		pendingRows = 0;
+		pendingBatches = 0;
+	}
+
+	/**
+	 * Batch time of the oldest batch waiting for the ML stages, or the given time if none is.
+	 */
+	public synchronized long getPendingSinceMillis(long batchTimeMillis) {
+		return pendingSinceMillis == NOTHING_PENDING ? batchTimeMillis : pendingSinceMillis;
+	}
+
+	public synchronized long getPendingRows() {
+		return pendingRows;
+	}
+
+	public synchronized long getPendingBatches() {
+		return pendingBatches;
+	}
+
+	public long getBatchIntervalMillis() {
+		return batchIntervalMillis;
+	}
+
+	public long getMinBatchRows() {
+		return minBatchRows;
+	}
+
+	public long getMaxDeferMillis() {
+		return maxDeferMillis;
+	}
+
+	public long getMaxPendingRows() {
+		return maxPendingRows;
+	}
+}
@@ -1,324 +1,315 @@
+import classification.ClassificationResult;
+import classification.Classifier;
+import classification.ClassifierModel;
+import classification.ClassifierRegistry;
+import classification.LabeledDataset;
+import evaluation.ClassificationEvaluator;
+import evaluation.ClassificationMetrics;
+import org.apache.spark.SparkContext;
 import org.apache.spark.api.java.JavaDoubleRDD;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.function.Function;
 import org.apache.spark.api.java.function.PairFunction;
-import org.apache.spark.ml.classification.DecisionTreeClassificationModel;
-import org.apache.spark.ml.classification.DecisionTreeClassifier;
 import org.apache.spark.ml.evaluation.MulticlassClassificationEvaluator;
-import org.apache.spark.ml.feature.StringIndexer;
-import org.apache.spark.ml.feature.StringIndexerModel;
-import org.apache.spark.ml.regression.LinearRegression;
-import org.apache.spark.ml.tree.DecisionTreeModel;
-import org.apache.spark.mllib.classification.LogisticRegressionModel;
-import org.apache.spark.mllib.classification.LogisticRegressionWithLBFGS;
-import org.apache.spark.mllib.classification.NaiveBayes;
-import org.apache.spark.mllib.classification.NaiveBayesModel;
 import org.apache.spark.mllib.evaluation.BinaryClassificationMetrics;
 import org.apache.spark.mllib.evaluation.MulticlassMetrics;
-import org.apache.spark.mllib.linalg.Vector;
-import org.apache.spark.mllib.linalg.Vectors;
 import org.apache.spark.mllib.regression.LabeledPoint;
-import org.apache.spark.mllib.regression.LinearRegressionModel;
-import org.apache.spark.mllib.regression.LinearRegressionWithSGD;
-import org.apache.spark.mllib.tree.DecisionTree;
 import org.apache.spark.sql.DataFrame;
-import org.apache.spark.sql.Row;
-import org.codehaus.janino.Java;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
 import scala.Tuple2;
+import tracing.StageTrace;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static org.apache.spark.sql.types.DataTypes.DoubleType;
-import static org.apache.spark.sql.types.DataTypes.StringType;
 
 public class ClassificationProcessor implements Serializable {
+	private static final Logger logger = LoggerFactory.getLogger(ClassificationProcessor.class);
+
+	private static final String LABEL_COLUMN = "clusters";
+	private static final String SCHEDULER_POOL_PROPERTY = "spark.scheduler.pool";
+	private static final int DEFAULT_MAX_CONCURRENT_CLASSIFIERS = 4;
+
 	private int noOfIterations;
 	private double stepSize;
+	private int maxConcurrentClassifiers;
+	private ClassificationEvaluator classificationEvaluator;
+	private ClassifierRegistry classifierRegistry;
+
+	//Latest model of every classifier, used to warm start the next training and written to the model snapshots.
+	private Map<String, ClassifierModel> latestModels = new ConcurrentHashMap<String, ClassifierModel>();
+
+	//Per record debug output of the map functions, off unless sampling is switched on with setDebugTrace.
+	private int traceSampleEvery = 0;
+	private Level traceLevel = Level.DEBUG;
+	private Map<String, StageTrace> traces = new ConcurrentHashMap<String, StageTrace>();
 
 	public ClassificationProcessor(int noOfIterations, double stepSize) {
-		this.noOfIterations = checkNotNull(noOfIterations);
-		this.stepSize = checkNotNull(stepSize);
+		this(noOfIterations, stepSize, ClassifierRegistry.DEFAULT_NO_OF_CLASSES);
 	}
 
-	public JavaRDD<Tuple2<Object, Object>> linearRegressionWithSdgSimple(DataFrame logsAfterKMeans) {
-		//Simple analysis with only one feature.
-		JavaRDD<LabeledPoint> featureLabel = logsAfterKMeans.select(
-				logsAfterKMeans.col("clusters").alias("label"),
-				logsAfterKMeans.col("verbIndex"))
-				.javaRDD().map(new Function<Row, LabeledPoint>() {
-					@Override
-					public LabeledPoint call(Row row) throws Exception {
-						System.out.println("Label " + row.get(0));
-						System.out.println("Features " + row.get(1));
-						return new LabeledPoint( (double) ((Integer) row.get(0)).intValue(), Vectors.dense((double) row.get(1)));
-					}
-				});
-
-		//Split 40% training data, 60% test data
-		JavaRDD<LabeledPoint>[] splits = splitData(featureLabel, 0.4, 0.6, 11L);
-		JavaRDD<LabeledPoint> training = splits[0].cache();
-		JavaRDD<LabeledPoint> test = splits[1];
+	/**
+	 * @param noOfClasses number of clusters the labels come from
+	 */
+	public ClassificationProcessor(int noOfIterations, double stepSize, int noOfClasses) {
+		this(noOfIterations, stepSize, noOfClasses, ClassifierRegistry.DEFAULT_DECISION_TREE_MAX_DEPTH,
+				ClassifierRegistry.DEFAULT_DECISION_TREE_MAX_BINS);
+	}
 
-		//More interesting complex analysis with two or more features.
+	/**
+	 * @param noOfClasses          number of clusters the labels come from
+	 * @param decisionTreeMaxDepth depth and bins of the registered decision trees
+	 */
+	public ClassificationProcessor(int noOfIterations, double stepSize, int noOfClasses, int decisionTreeMaxDepth,
+	                               int decisionTreeMaxBins) {
+		this.noOfIterations = checkNotNull(noOfIterations);
+		this.stepSize = checkNotNull(stepSize);
+		this.maxConcurrentClassifiers = DEFAULT_MAX_CONCURRENT_CLASSIFIERS;
+		this.classificationEvaluator = new ClassificationEvaluator();
+		this.classifierRegistry = ClassifierRegistry.createDefault(noOfIterations, stepSize, noOfClasses,
+				decisionTreeMaxDepth, decisionTreeMaxBins);
+	}
 
-		//Train on full data for now. Can slice before doing the map to LabeledPoints
-		LinearRegressionModel linearRegressionModel = new LinearRegressionWithSGD().train(
-				JavaRDD.toRDD(training),
-				noOfIterations,
-				stepSize
-		);
+	/**
+	 * Registry the classifiers are looked up in by name. Register additional classifiers here.
+	 */
+	public ClassifierRegistry getClassifierRegistry() {
+		return classifierRegistry;
+	}
 
-		// Evaluate model on training examples and compute training error
-		JavaRDD<Tuple2<Object, Object>> valuesAndPreds = predictLabelOfTestDataFromLinearRegression(test, linearRegressionModel);
+	/**
+	 * Classifiers for a comma separated list of registered names, e.g. "logisticRegressionSimple,decisionTreeSimple".
+	 */
+	public List<Classifier> selectClassifiers(String classifierNames) {
+		return classifierRegistry.select(classifierNames);
+	}
 
-		return valuesAndPreds;
+	/**
+	 * Latest trained (or restored) model per classifier name.
+	 */
+	public Map<String, ClassifierModel> getLatestModels() {
+		return new HashMap<String, ClassifierModel>(latestModels);
 	}
 
-	public JavaRDD<Tuple2<Object, Object>> linearRegressionWithSdgComplex(DataFrame logsAfterKMeans) {
+	/**
+	 * Sets the model a classifier continues from, e.g. one from a snapshot after a restart.
+	 */
+	public void restoreModel(String classifierName, ClassifierModel model) {
+		latestModels.put(classifierName, checkNotNull(model));
+	}
 
-		JavaRDD<LabeledPoint> featureLabel = logsAfterKMeans.select(
-				logsAfterKMeans.col("clusters").alias("label"),
-				logsAfterKMeans.col("features_normalized")
-				)
-				.javaRDD().map(new Function<Row, LabeledPoint>() {
-					@Override
-					public LabeledPoint call(Row row) throws Exception {
-
-						System.out.println("Label " + row.get(0));
-						System.out.println("Features " + row.get(1));
-						return new LabeledPoint(
-								(double) ((Integer) row.get(0)).intValue(),
-								(Vector) row.get(1)
-						);
-					}
-				});
+	/**
+	 * How many classifiers are trained at the same time at most.
+	 */
+	public void setMaxConcurrentClassifiers(int maxConcurrentClassifiers) {
+		checkArgument(maxConcurrentClassifiers > 0, "Need to be able to train at least one classifier");
 
-		//Split 40% training data, 60% test data
-		JavaRDD<LabeledPoint>[] splits = splitData(featureLabel, 0.4, 0.6, 11L);
-		JavaRDD<LabeledPoint> training = splits[0].cache();
-		JavaRDD<LabeledPoint> test = splits[1];
+		this.maxConcurrentClassifiers = maxConcurrentClassifiers;
+	}
 
-		//More interesting complex analysis with two or more features.
+	/**
+	 * Logs one in every sampleEvery records of the map functions (labeled points and predictions) at the given level.
+	 * Use 0 to only count the records.
+	 */
+	public void setDebugTrace(int sampleEvery, Level level) {
+		this.traceSampleEvery = sampleEvery;
+		this.traceLevel = checkNotNull(level);
+		this.traces = new ConcurrentHashMap<String, StageTrace>();
+	}
 
-		//Train on full data for now. Can slice before doing the map to LabeledPoints
-		LinearRegressionWithSGD linearRegression = new LinearRegressionWithSGD();
+	/**
+	 * Number of records that went through each stage of the map functions so far.
+	 */
+	public Map<String, Long> getTraceCounts() {
+		Map<String, Long> traceCounts = new HashMap<String, Long>();
 
-		/**
-		 * If intercept is not set to true, it will take 0 as an intercept.
-		 * http://stackoverflow.com/questions/26259743/spark-mllib-linear-regression-model-intercept-is-always-0-0
-		 */
+		for (StageTrace trace : traces.values()) {
+			traceCounts.put(trace.getStage(), trace.getRecords());
+		}
 
-		linearRegression.setIntercept(true);
+		return traceCounts;
+	}
 
-		LinearRegressionModel linearRegressionModel = linearRegression.train(
-				JavaRDD.toRDD(training),
-				noOfIterations,
-				stepSize
-		);
+	private synchronized StageTrace trace(SparkContext sparkContext, String stage) {
+		StageTrace trace = traces.get(stage);
 
-		// Evaluate model on training examples and compute training error
-		JavaRDD<Tuple2<Object, Object>> valuesAndPreds = predictLabelOfTestDataFromLinearRegression(test, linearRegressionModel);
+		if (trace == null) {
+			trace = StageTrace.create(sparkContext, stage, traceSampleEvery, traceLevel);
+			traces.put(stage, trace);
+		}
 
-		return valuesAndPreds;
+		return trace;
 	}
 
-	public JavaRDD<Tuple2<Object, Object>> logisticRegressionWithLgbtSimple(DataFrame logsAfterKMeans) {
+	/**
+	 * Trains the given classifiers on the same batch and evaluates them on its test data, to compare them live.
+	 *
+	 * The labeled points are built and cached once per feature column and shared by every classifier trained on that
+	 * column. The classifiers are trained concurrently, each in its own scheduler pool (named after the classifier),
+	 * so with spark.scheduler.mode=FAIR they share the cluster instead of queueing up behind each other. A classifier
+	 * that fails is logged and left out of the results so that the others still get compared.
+	 */
+	public Map<String, ClassificationResult> trainAndEvaluate(DataFrame logsAfterKMeans, List<Classifier> classifiers) {
+		final SparkContext sparkContext = logsAfterKMeans.sqlContext().sparkContext();
 
-		/**
-		 * Logistic Regression with LGBT is preferred over SGD
-		 * Ref: https://spark.apache.org/docs/1.6.2/api/java/org/apache/spark/mllib/classification/package-summary.html
-		 */
+		Map<String, LabeledDataset> datasets = new HashMap<String, LabeledDataset>();
+		Map<String, Future<ClassificationResult>> futures = new LinkedHashMap<String, Future<ClassificationResult>>();
+		Map<String, ClassificationResult> results = new LinkedHashMap<String, ClassificationResult>();
 
-		JavaRDD<LabeledPoint> featureLabel = logsAfterKMeans.select(
-				logsAfterKMeans.col("clusters").alias("label"),
-				logsAfterKMeans.col("verbIndex")
-		)
-				.javaRDD().map(new Function<Row, LabeledPoint>() {
-					@Override
-					public LabeledPoint call(Row row) throws Exception {
-
-						System.out.println("Label " + row.get(0));
-						System.out.println("Features " + row.get(1));
-						return new LabeledPoint(
-								(double) ((Integer) row.get(0)).intValue(),
-								Vectors.dense((double) row.get(1))
-						);
-					}
-				});
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(classifiers.size(), maxConcurrentClassifiers));
 
-		//Split 40% training data, 60% test data
-		JavaRDD<LabeledPoint>[] splits = splitData(featureLabel, 0.4, 0.6, 11L);
-		JavaRDD<LabeledPoint> training = splits[0].cache();
-		JavaRDD<LabeledPoint> test = splits[1];
-
-		LogisticRegressionModel logisticRegressionModel = new LogisticRegressionWithLBFGS()
-				.setNumClasses(5)
-				.run(training.rdd());
-
-		// Compute raw scores on the test set.
-		JavaRDD<Tuple2<Object, Object>> valuesAndPreds = test.map(
-				new Function<LabeledPoint, Tuple2<Object, Object>>() {
-					public Tuple2<Object, Object> call(LabeledPoint point) {
-						Double prediction = logisticRegressionModel.predict(point.features());
-						System.out.println("Prediction: " + prediction);
-						return new Tuple2<Object, Object>(prediction, point.label());
-					}
-				}
-		);
+		try {
+			for (final Classifier classifier : classifiers) {
+				String featureColumn = classifier.getFeatureColumn();
 
-		return valuesAndPreds;
+				if (!datasets.containsKey(featureColumn)) {
+					datasets.put(featureColumn, createLabeledDataset(logsAfterKMeans, featureColumn));
+				}
 
-	}
+				final LabeledDataset dataset = datasets.get(featureColumn);
 
-	public JavaRDD<Tuple2<Object, Object>> logisticRegressionWithLgbtComplex(DataFrame logsAfterKMeans) {
-
-		/**
-		 * Logistic Regression with LGBT is preferred over SGD
-		 * Ref: https://spark.apache.org/docs/1.6.2/api/java/org/apache/spark/mllib/classification/package-summary.html
-		 */
+				if (dataset.getTrainingCount() == 0) {
+					logger.warn("No training data for " + classifier.getName() + ", skipping it for this batch");
+					continue;
+				}
 
-		JavaRDD<LabeledPoint> featureLabel = logsAfterKMeans.select(
-				logsAfterKMeans.col("clusters").alias("label"),
-				logsAfterKMeans.col("features")
-		)
-				.javaRDD().map(new Function<Row, LabeledPoint>() {
+				futures.put(classifier.getName(), executor.submit(new Callable<ClassificationResult>() {
 					@Override
-					public LabeledPoint call(Row row) throws Exception {
-
-						System.out.println("Label " + row.get(0));
-						System.out.println("Features " + row.get(1));
-						return new LabeledPoint(
-								(double) ((Integer) row.get(0)).intValue(),
-								(Vector) row.get(1)
-						);
+					public ClassificationResult call() throws Exception {
+						//Local properties are per thread, so every job of this classifier goes to its own pool.
+						sparkContext.setLocalProperty(SCHEDULER_POOL_PROPERTY, classifier.getName());
+
+						try {
+							return trainAndEvaluate(classifier, dataset);
+						} finally {
+							sparkContext.setLocalProperty(SCHEDULER_POOL_PROPERTY, null);
+						}
 					}
-				});
+				}));
+			}
 
-		//Split 40% training data, 60% test data
-		JavaRDD<LabeledPoint>[] splits = splitData(featureLabel, 0.4, 0.6, 11L);
-		JavaRDD<LabeledPoint> training = splits[0].cache();
-		JavaRDD<LabeledPoint> test = splits[1];
-
-		LogisticRegressionModel logisticRegressionModel = new LogisticRegressionWithLBFGS()
-				.setNumClasses(5)
-				.run(training.rdd());
-
-		// Compute raw scores on the test set.
-		JavaRDD<Tuple2<Object, Object>> valuesAndPreds = test.map(
-				new Function<LabeledPoint, Tuple2<Object, Object>>() {
-					public Tuple2<Object, Object> call(LabeledPoint point) {
-						Double prediction = logisticRegressionModel.predict(point.features());
-						System.out.println("Prediction: " + prediction);
-						return new Tuple2<Object, Object>(prediction, point.label());
-					}
+			for (Map.Entry<String, Future<ClassificationResult>> future : futures.entrySet()) {
+				try {
+					results.put(future.getKey(), future.getValue().get());
+				} catch (ExecutionException e) {
+					logger.error("Training " + future.getKey() + " failed", e.getCause());
 				}
-		);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
 
-		return valuesAndPreds;
+			for (LabeledDataset dataset : datasets.values()) {
+				dataset.release();
+			}
+		}
 
+		return results;
 	}
 
-	public JavaPairRDD<Double, Double> naiveBayesSimple(DataFrame logsAfterKMeans) {
+	/**
+	 * Trains and evaluates a single registered classifier.
+	 */
+	public ClassificationResult trainAndEvaluate(DataFrame logsAfterKMeans, String classifierName) {
+		Classifier classifier = classifierRegistry.get(classifierName);
+		LabeledDataset dataset = createLabeledDataset(logsAfterKMeans, classifier.getFeatureColumn());
+
+		try {
+			return trainAndEvaluate(classifier, dataset);
+		} finally {
+			dataset.release();
+		}
+	}
 
-		JavaRDD<LabeledPoint> featureLabel = logsAfterKMeans.select(
-				logsAfterKMeans.col("clusters").alias("label"),
-				logsAfterKMeans.col("verbIndex")
-		)
-				.javaRDD().map(new Function<Row, LabeledPoint>() {
-					@Override
-					public LabeledPoint call(Row row) throws Exception {
-
-						System.out.println("Label " + row.get(0));
-						System.out.println("Features " + row.get(1));
-						return new LabeledPoint(
-								(double) ((Integer) row.get(0)).intValue(),
-								Vectors.dense((double) row.get(1))
-						);
-					}
-				});
+	private ClassificationResult trainAndEvaluate(Classifier classifier, LabeledDataset dataset) {
+		long start = System.currentTimeMillis();
 
+		ClassifierModel model = classifier.train(dataset.getTraining(), latestModels.get(classifier.getName()));
+		latestModels.put(classifier.getName(), model);
 
-		//Split 40% training data, 60% test data
-		JavaRDD<LabeledPoint>[] splits = splitData(featureLabel, 0.4, 0.6, 11L);
-		JavaRDD<LabeledPoint> training = splits[0].cache();
-		JavaRDD<LabeledPoint> test = splits[1];
+		JavaRDD<Tuple2<Object, Object>> valuesAndPreds = predict(dataset.getTest(), model,
+				trace(dataset.getTest().context(), classifier.getName() + ".predictions"));
 
-		NaiveBayesModel naiveBayesModel = NaiveBayes.train(training.rdd(), 1.0);
+		ClassificationMetrics metrics = evaluate(valuesAndPreds);
 
-		JavaPairRDD<Double, Double> valuesAndPreds =
-				test.mapToPair(new PairFunction<LabeledPoint, Double, Double>() {
-					@Override
-					public Tuple2<Double, Double> call(LabeledPoint point) {
-						double prediction = naiveBayesModel.predict(point.features());
-						System.out.println("Prediction: " + prediction);
-						return new Tuple2<>(prediction, point.label());
-					}
-				});
+		return new ClassificationResult(classifier, model, valuesAndPreds, metrics, System.currentTimeMillis() - start);
+	}
 
-		double accuracy = valuesAndPreds.filter(new Function<Tuple2<Double, Double>, Boolean>() {
+	private LabeledDataset createLabeledDataset(DataFrame logsAfterKMeans, String featureColumn) {
+		//Split 40% training data, 60% test data
+		return new LabeledDataset(logsAfterKMeans, LABEL_COLUMN, featureColumn, 0.4, 0.6, 11L,
+				trace(logsAfterKMeans.sqlContext().sparkContext(), featureColumn + ".labeledPoints"));
+	}
+
+	//Static so that the function shipped to the executors does not drag the processor along with it.
+	private static JavaRDD<Tuple2<Object, Object>> predict(JavaRDD<LabeledPoint> test, final ClassifierModel model,
+	                                                        final StageTrace predictionTrace) {
+		return test.map(new Function<LabeledPoint, Tuple2<Object, Object>>() {
 			@Override
-			public Boolean call(Tuple2<Double, Double> doubleDoubleTuple2) throws Exception {
-				return doubleDoubleTuple2._1().equals(doubleDoubleTuple2._2());
+			public Tuple2<Object, Object> call(LabeledPoint point) throws Exception {
+				double prediction = model.predict(point.features());
+				predictionTrace.record("Prediction {} Label {}", prediction, point.label());
+				return new Tuple2<Object, Object>(prediction, point.label());
 			}
-		}).count() / (double) test.count();
+		});
+	}
 
-		System.out.println("Naive Bayes Accuracy :" + accuracy);
+	private static JavaPairRDD<Double, Double> toPairs(JavaRDD<Tuple2<Object, Object>> valuesAndPreds) {
+		return valuesAndPreds.mapToPair(new PairFunction<Tuple2<Object, Object>, Double, Double>() {
+			@Override
+			public Tuple2<Double, Double> call(Tuple2<Object, Object> predictionAndLabel) throws Exception {
+				return new Tuple2<>((Double) predictionAndLabel._1(), (Double) predictionAndLabel._2());
+			}
+		});
+	}
 
-		return valuesAndPreds;
+	public JavaRDD<Tuple2<Object, Object>> linearRegressionWithSdgSimple(DataFrame logsAfterKMeans) {
+		//Simple analysis with only one feature.
+		return trainAndEvaluate(logsAfterKMeans, "linearRegressionSimple").getValuesAndPreds();
 	}
 
-	public JavaPairRDD<Double, Double> naiveBayesComplex(DataFrame logsAfterKMeans) {
+	public JavaRDD<Tuple2<Object, Object>> linearRegressionWithSdgComplex(DataFrame logsAfterKMeans) {
+		//More interesting complex analysis with two or more features.
+		return trainAndEvaluate(logsAfterKMeans, "linearRegressionComplex").getValuesAndPreds();
+	}
 
-		JavaRDD<LabeledPoint> featureLabel = logsAfterKMeans.select(
-				logsAfterKMeans.col("clusters").alias("label"),
-				logsAfterKMeans.col("features")
-		)
-				.javaRDD().map(new Function<Row, LabeledPoint>() {
-					@Override
-					public LabeledPoint call(Row row) throws Exception {
-
-						System.out.println("Label " + row.get(0));
-						System.out.println("Features " + row.get(1));
-						return new LabeledPoint(
-								(double) ((Integer) row.get(0)).intValue(),
-								(Vector) row.get(1)
-						);
-					}
-				});
+	public JavaRDD<Tuple2<Object, Object>> logisticRegressionWithLgbtSimple(DataFrame logsAfterKMeans) {
+		return trainAndEvaluate(logsAfterKMeans, "logisticRegressionSimple").getValuesAndPreds();
+	}
 
-		//Split 40% training data, 60% test data
-		JavaRDD<LabeledPoint>[] splits = splitData(featureLabel, 0.4, 0.6, 11L);
-		JavaRDD<LabeledPoint> training = splits[0].cache();
-		JavaRDD<LabeledPoint> test = splits[1];
+	public JavaRDD<Tuple2<Object, Object>> logisticRegressionWithLgbtComplex(DataFrame logsAfterKMeans) {
+		return trainAndEvaluate(logsAfterKMeans, "logisticRegressionComplex").getValuesAndPreds();
+	}
 
-		NaiveBayesModel naiveBayesModel = NaiveBayes.train(training.rdd(), 1.0);
+	public JavaPairRDD<Double, Double> naiveBayesSimple(DataFrame logsAfterKMeans) {
+		ClassificationResult result = trainAndEvaluate(logsAfterKMeans, "naiveBayesSimple");
 
-		JavaPairRDD<Double, Double> valuesAndPreds =
-				test.mapToPair(new PairFunction<LabeledPoint, Double, Double>() {
-					@Override
-					public Tuple2<Double, Double> call(LabeledPoint point) {
-						double prediction = naiveBayesModel.predict(point.features());
-						System.out.println("Prediction: " + prediction);
-						return new Tuple2<>(prediction, point.label());
-					}
-				});
+		logger.info("Naive Bayes Accuracy :" + result.getMetrics().getAccuracy());
 
+		return toPairs(result.getValuesAndPreds());
+	}
 
-		double accuracy = valuesAndPreds.filter(new Function<Tuple2<Double, Double>, Boolean>() {
-			@Override
-			public Boolean call(Tuple2<Double, Double> doubleDoubleTuple2) throws Exception {
-				return doubleDoubleTuple2._1().equals(doubleDoubleTuple2._2());
-			}
-		}).count() / (double) test.count();
+	public JavaPairRDD<Double, Double> naiveBayesComplex(DataFrame logsAfterKMeans) {
+		ClassificationResult result = trainAndEvaluate(logsAfterKMeans, "naiveBayesComplex");
 
-		System.out.println("Naive Bayes Accuracy :" + accuracy);
+		logger.info("Naive Bayes Accuracy :" + result.getMetrics().getAccuracy());
 
-		return valuesAndPreds;
+		return toPairs(result.getValuesAndPreds());
 	}
 
 //	public JavaRDD<Tuple2<Object, Object>> linearRegressionWithElasticNet(DataFrame logsAfterKMeans) {
@@ -338,7 +329,7 @@ public class ClassificationProcessor implements Serializable {
 //
 //		org.apache.spark.ml.regression.LinearRegressionModel linearRegressionModel = linearRegression.fit(logsAfterKMeans);
 //
-//		System.out.println("Weights: " + linearRegressionModel.weights() + " Intercept: " + linearRegressionModel.intercept());
+//		logger.info("Weights: " + linearRegressionModel.weights() + " Intercept: " + linearRegressionModel.intercept());
 //
 //		return null;
 //
@@ -349,143 +340,21 @@ public class ClassificationProcessor implements Serializable {
 	 */
 
 	public JavaPairRDD<Double, Double> decisionTreeSimple(DataFrame logsAfterKMeans) {
+		ClassificationResult result = trainAndEvaluate(logsAfterKMeans, "decisionTreeSimple");
 
-		JavaRDD<LabeledPoint> featureLabel = logsAfterKMeans.select(
-				logsAfterKMeans.col("clusters").alias("label"),
-				logsAfterKMeans.col("verbIndex")
-		)
-				.javaRDD().map(new Function<Row, LabeledPoint>() {
-					@Override
-					public LabeledPoint call(Row row) throws Exception {
-
-						System.out.println("Label " + row.get(0));
-						System.out.println("Features " + row.get(1));
-						return new LabeledPoint(
-								(double) ((Integer) row.get(0)).intValue(),
-								Vectors.dense((double) row.get(1))
-						);
-					}
-				});
-
-		//Split 40% training data, 60% test data
-		JavaRDD<LabeledPoint>[] splits = splitData(featureLabel, 0.4, 0.6, 11L);
-		JavaRDD<LabeledPoint> training = splits[0].cache();
-		JavaRDD<LabeledPoint> test = splits[1];
-
-		// Set parameters.
-		//  Empty categoricalFeaturesInfo indicates all features are continuous.
-		Integer numClasses = 3;
-		Map<Integer, Integer> categoricalFeaturesInfo = new HashMap<Integer, Integer>();
-		String impurity = "gini";
-		Integer maxDepth = 10;
-		Integer maxBins = 1000;
-
-		// Train a DecisionTree model for classification.
-		org.apache.spark.mllib.tree.model.DecisionTreeModel model = DecisionTree.trainClassifier(training, numClasses,
-				categoricalFeaturesInfo, impurity, maxDepth, maxBins);
-
-		// Evaluate model on test instances and compute test error
-		JavaPairRDD<Double, Double> valueAndPreds =
-				test.mapToPair(new PairFunction<LabeledPoint, Double, Double>() {
-					@Override
-					public Tuple2<Double, Double> call(LabeledPoint point) {
-						double prediction = model.predict(point.features());
-						System.out.println("Prediction " + prediction);
-						return new Tuple2<>(prediction, point.label());
-					}
-				});
-
-		Double testError =
-				1.0 * valueAndPreds.filter(new Function<Tuple2<Double, Double>, Boolean>() {
-					@Override
-					public Boolean call(Tuple2<Double, Double> pl) {
-						return !pl._1().equals(pl._2());
-					}
-				}).count() / test.count();
-
-		Double accuracy =
-				1.0 * valueAndPreds.filter(new Function<Tuple2<Double, Double>, Boolean>() {
-					@Override
-					public Boolean call(Tuple2<Double, Double> pl) {
-						return pl._1().equals(pl._2());
-					}
-				}).count() / test.count();
-
-		System.out.println("Test Error: " + testError);
-		System.out.println("Accuracy: " + accuracy);
-
-		return valueAndPreds;
+		logger.info("Test Error: " + result.getMetrics().getError());
+		logger.info("Accuracy: " + result.getMetrics().getAccuracy());
 
+		return toPairs(result.getValuesAndPreds());
 	}
 
 	public JavaPairRDD<Double, Double> decisionTreeComplex(DataFrame logsAfterKMeans) {
+		ClassificationResult result = trainAndEvaluate(logsAfterKMeans, "decisionTreeComplex");
 
-		JavaRDD<LabeledPoint> featureLabel = logsAfterKMeans.select(
-				logsAfterKMeans.col("clusters").alias("label"),
-				logsAfterKMeans.col("features")
-		)
-				.javaRDD().map(new Function<Row, LabeledPoint>() {
-					@Override
-					public LabeledPoint call(Row row) throws Exception {
-
-						System.out.println("Label " + row.get(0));
-						System.out.println("Features " + row.get(1));
-						return new LabeledPoint(
-								(double) ((Integer) row.get(0)).intValue(),
-								(Vector) row.get(1)
-						);
-					}
-				});
-
-		//Split 40% training data, 60% test data
-		JavaRDD<LabeledPoint>[] splits = splitData(featureLabel, 0.4, 0.6, 11L);
-		JavaRDD<LabeledPoint> training = splits[0].cache();
-		JavaRDD<LabeledPoint> test = splits[1];
-
-		// Set parameters.
-		//  Empty categoricalFeaturesInfo indicates all features are continuous.
-		Integer numClasses = 3;
-		Map<Integer, Integer> categoricalFeaturesInfo = new HashMap<Integer, Integer>();
-		String impurity = "gini";
-		Integer maxDepth = 10;
-		Integer maxBins = 1000;
-
-		// Train a DecisionTree model for classification.
-		 org.apache.spark.mllib.tree.model.DecisionTreeModel model = DecisionTree.trainClassifier(training, numClasses,
-				categoricalFeaturesInfo, impurity, maxDepth, maxBins);
-
-		// Evaluate model on test instances and compute test error
-		JavaPairRDD<Double, Double> valueAndPreds =
-				test.mapToPair(new PairFunction<LabeledPoint, Double, Double>() {
-					@Override
-					public Tuple2<Double, Double> call(LabeledPoint point) {
-						double prediction = model.predict(point.features());
-						System.out.println("Prediction " + prediction);
-						return new Tuple2<>(prediction, point.label());
-					}
-				});
-
-		Double testError =
-				1.0 * valueAndPreds.filter(new Function<Tuple2<Double, Double>, Boolean>() {
-					@Override
-					public Boolean call(Tuple2<Double, Double> pl) {
-						return !pl._1().equals(pl._2());
-					}
-				}).count() / test.count();
-
-		Double accuracy =
-				1.0 * valueAndPreds.filter(new Function<Tuple2<Double, Double>, Boolean>() {
-					@Override
-					public Boolean call(Tuple2<Double, Double> pl) {
-						return pl._1().equals(pl._2());
-					}
-				}).count() / test.count();
-
-		System.out.println("Test Error: " + testError);
-		System.out.println("Accuracy: " + accuracy);
-
-		return valueAndPreds;
+		logger.info("Test Error: " + result.getMetrics().getError());
+		logger.info("Accuracy: " + result.getMetrics().getAccuracy());
 
+		return toPairs(result.getValuesAndPreds());
 	}
 
 	public void evaluateAccuracyDecisionTrees(DataFrame prediction) {
@@ -496,7 +365,7 @@ public class ClassificationProcessor implements Serializable {
 
 		double accuracy = evaluator.evaluate(prediction);
 
-		System.out.println("Decision Tree Accuracy :" + accuracy);
+		logger.info("Decision Tree Accuracy :" + accuracy);
 	}
 
 	public void evaluatePrecisionDecisionTrees(DataFrame prediction) {
@@ -507,7 +376,7 @@ public class ClassificationProcessor implements Serializable {
 
 		double precision = evaluator.evaluate(prediction);
 
-		System.out.println("Decision Tree Precision :" + precision);
+		logger.info("Decision Tree Precision :" + precision);
 	}
 
 	public void evaluateRecallDecisionTrees(DataFrame prediction) {
@@ -518,7 +387,20 @@ public class ClassificationProcessor implements Serializable {
 
 		double recall = evaluator.evaluate(prediction);
 
-		System.out.println("Decision Tree Recall :" + recall);
+		logger.info("Decision Tree Recall :" + recall);
+	}
+
+	/**
+	 * Computes all the evaluation metrics (confusion matrix, accuracy, error, precision/recall/F-measure, MSE and
+	 * ROC/AUC) in a single pass over the predictions. Prefer this over calling computeMeanSquaredError, evaluateRoc and
+	 * calculateMetricsForLogisticRegression one after the other, which is a Spark job each.
+	 */
+	public ClassificationMetrics evaluate(JavaRDD<Tuple2<Object, Object>> valuesAndPreds) {
+		return classificationEvaluator.evaluate(valuesAndPreds);
+	}
+
+	public ClassificationMetrics evaluate(JavaPairRDD<Double, Double> valuesAndPreds) {
+		return classificationEvaluator.evaluate(valuesAndPreds);
 	}
 
 	public JavaRDD<Tuple2<Object, Object>> evaluateRoc(JavaRDD<Tuple2<Object, Object>> valuesAndPreds) {
@@ -527,8 +409,8 @@ public class ClassificationProcessor implements Serializable {
 
 		JavaRDD<Tuple2<Object, Object>> roc = binaryClassificationMetrics.roc().toJavaRDD();
 
-		System.out.println("ROC curve: " + roc.toArray());
-		System.out.println("Area under ROC curve:" + binaryClassificationMetrics.areaUnderROC());
+		logger.info("ROC curve: " + roc.toArray());
+		logger.info("Area under ROC curve:" + binaryClassificationMetrics.areaUnderROC());
 
 		return roc;
 	}
@@ -548,18 +430,6 @@ public class ClassificationProcessor implements Serializable {
 		return concurrentHashMap;
 	}
 
-	private JavaRDD<Tuple2<Object, Object>> predictLabelOfTestDataFromLinearRegression(JavaRDD<LabeledPoint> test, final LinearRegressionModel linearRegressionModel) {
-		return test.map(
-					new Function<LabeledPoint, Tuple2<Object, Object>>() {
-						public Tuple2<Object, Object> call(LabeledPoint point) {
-							double prediction = linearRegressionModel.predict(point.features());
-							System.out.println("Prediction: " + prediction);
-							return new Tuple2<Object, Object>(prediction, point.label());
-						}
-					}
-			);
-	}
-
 	public double computeMeanSquaredError(JavaRDD<Tuple2<Object, Object>> valuesAndPreds) {
 
 		 double MSE = new JavaDoubleRDD(valuesAndPreds.map(
@@ -570,17 +440,10 @@ public class ClassificationProcessor implements Serializable {
 					}
 			).rdd()).mean();
 
-		System.out.println("Training Mean Squared Error = " + MSE);
+		logger.info("Training Mean Squared Error = " + MSE);
 
 		return MSE;
 	}
 
-	private JavaRDD<LabeledPoint>[] splitData(JavaRDD<LabeledPoint> featureLabel, double trainingSplit, double testSplit, long seed) {
-		return featureLabel.randomSplit(
-				new double[]{trainingSplit, testSplit},
-				seed
-		);
-	}
-
 }
 
@@ -1,23 +1,49 @@
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.Function;
 import org.apache.spark.ml.clustering.KMeans;
 import org.apache.spark.ml.clustering.KMeansModel;
+import org.apache.spark.mllib.clustering.StreamingKMeansModel;
 import org.apache.spark.mllib.linalg.Vector;
 import org.apache.spark.sql.DataFrame;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class ClusteringProcessor {
+	private static final Logger logger = LoggerFactory.getLogger(ClusteringProcessor.class);
+
+	//Streaming KMeans keeps the full weight of previous batches with a decay factor of 1.0 and forgets them with 0.0
+	private static final double DEFAULT_DECAY_FACTOR = 1.0;
+	private static final String DECAY_TIME_UNIT = "batches";
 
 	private int noOfClusters;
 	private String featureColumnName;
 	private String predictionColumnName;
+	private double decayFactor;
 	private KMeans kmeans;
 	private KMeansModel kmeansModel;
+	private StreamingKMeansModel streamingKMeansModel;
+	private boolean restoredModel;
 	private DataFrame clusterResults;
+	private double latestCost = Double.NaN;
 
 	public ClusteringProcessor(int noOfClusters, String featureColumnName, String predictionColumnName) {
+		this(noOfClusters, featureColumnName, predictionColumnName, DEFAULT_DECAY_FACTOR);
+	}
+
+	public ClusteringProcessor(int noOfClusters, String featureColumnName, String predictionColumnName, double decayFactor) {
+		checkArgument(decayFactor >= 0.0 && decayFactor <= 1.0, "Decay factor has to be between 0 and 1");
+
 		this.noOfClusters = checkNotNull(noOfClusters);
 		this.featureColumnName = checkNotNull(featureColumnName);
 		this.predictionColumnName = checkNotNull(predictionColumnName);
+		this.decayFactor = decayFactor;
 
 		kmeans = new org.apache.spark.ml.clustering.KMeans()
 				.setK(noOfClusters)
@@ -25,6 +51,9 @@ public class ClusteringProcessor {
 				.setPredictionCol(predictionColumnName);
 	}
 
+	/**
+	 * Fits KMeans from scratch on all the logs that are passed in.
+	 */
 	public KMeansModel startKMeans(DataFrame logsWithFeatures) {
 
 		kmeansModel = kmeans.fit(logsWithFeatures);
@@ -35,8 +64,100 @@ public class ClusteringProcessor {
 		return kmeansModel;
 	}
 
+	/**
+	 * Incremental KMeans. Only the logs of the new batch are used to move the cluster centres (streaming KMeans with
+	 * the decay factor given in the constructor), so training cost scales with the batch size and not with the
+	 * history. The logs to cluster (usually the whole window) are then only assigned to the updated centres.
+	 *
+	 * The centres are warm started from the model of a previous startKMeans call if there is one, otherwise they are
+	 * initialised with a regular KMeans fit on the first batch.
+	 */
+	public StreamingKMeansModel updateKMeans(DataFrame newLogsWithFeatures, DataFrame logsToCluster) {
+		JavaRDD<Vector> newFeatures = selectFeatures(newLogsWithFeatures, featureColumnName);
+
+		//Centres from a snapshot are only usable if the features are still built the same way.
+		if (restoredModel) {
+			restoredModel = false;
+
+			int noOfFeatures = newFeatures.first().size();
+
+			if (streamingKMeansModel.clusterCenters()[0].size() != noOfFeatures) {
+				logger.warn("Restored cluster centres have " + streamingKMeansModel.clusterCenters()[0].size()
+						+ " features instead of " + noOfFeatures + ", starting from scratch");
+				streamingKMeansModel = null;
+			}
+		}
+
+		if (streamingKMeansModel == null) {
+			if (kmeansModel == null) {
+				kmeansModel = kmeans.fit(newLogsWithFeatures);
+			}
+
+			//Start with no weight on the initial centres so that the first update places them on the batch itself.
+			streamingKMeansModel = new StreamingKMeansModel(kmeansModel.clusterCenters(), new double[kmeansModel.clusterCenters().length]);
+		}
+
+		streamingKMeansModel = streamingKMeansModel.update(newFeatures.rdd(), decayFactor, DECAY_TIME_UNIT);
+
+		//Cost of the new logs only, they are cached by the window store so this is a cheap pass over the batch.
+		latestCost = streamingKMeansModel.computeCost(newFeatures.rdd());
+
+		clusterResults = assignClusters(logsToCluster, streamingKMeansModel, featureColumnName, predictionColumnName);
+
+		return streamingKMeansModel;
+	}
+
+	/**
+	 * Continues from the centres (and their weights) of a snapshot instead of initialising them on the first batch.
+	 * Ignored if the snapshot has a different number of clusters.
+	 */
+	public void restore(StreamingKMeansModel model) {
+		if (model.clusterCenters().length != noOfClusters) {
+			logger.warn("Snapshot has " + model.clusterCenters().length + " clusters instead of " + noOfClusters + ", not restoring it");
+			return;
+		}
+
+		streamingKMeansModel = model;
+		restoredModel = true;
+	}
+
+	//Static so that the functions shipped to the executors do not drag the processor along with them.
+	private static JavaRDD<Vector> selectFeatures(DataFrame logsWithFeatures, String featureColumnName) {
+		return logsWithFeatures.select(featureColumnName).javaRDD().map(new Function<Row, Vector>() {
+			@Override
+			public Vector call(Row row) throws Exception {
+				return (Vector) row.get(0);
+			}
+		});
+	}
+
+	private static DataFrame assignClusters(DataFrame logsWithFeatures, final StreamingKMeansModel model,
+	                                        String featureColumnName, String predictionColumnName) {
+		final int featureIndex = logsWithFeatures.schema().fieldIndex(featureColumnName);
+
+		JavaRDD<Row> logsWithClusters = logsWithFeatures.javaRDD().map(new Function<Row, Row>() {
+			@Override
+			public Row call(Row row) throws Exception {
+				Object[] values = new Object[row.length() + 1];
+
+				for (int i = 0; i < row.length(); i++) {
+					values[i] = row.get(i);
+				}
+				values[row.length()] = model.predict((Vector) row.get(featureIndex));
+
+				return RowFactory.create(values);
+			}
+		});
+
+		StructType schema = logsWithFeatures.schema().add(predictionColumnName, DataTypes.IntegerType, false);
+
+		return logsWithFeatures.sqlContext().createDataFrame(logsWithClusters, schema);
+	}
+
 	public void showClusterCentreResult() {
-		for (Vector centre : kmeansModel.clusterCenters()) {
+		Vector[] centres = streamingKMeansModel != null ? streamingKMeansModel.clusterCenters() : kmeansModel.clusterCenters();
+
+		for (Vector centre : centres) {
 			System.out.println(centre);
 		}
 	}
@@ -53,10 +174,26 @@ public class ClusteringProcessor {
 		return predictionColumnName;
 	}
 
+	public double getDecayFactor() {
+		return decayFactor;
+	}
+
 	public KMeans getKmeans() {
 		return kmeans;
 	}
 
+	public StreamingKMeansModel getStreamingKMeansModel() {
+		return streamingKMeansModel;
+	}
+
+	/**
+	 * Sum of the squared distances of the logs of the last batch to their closest centre after updateKMeans, NaN
+	 * before the first update.
+	 */
+	public double getLatestCost() {
+		return latestCost;
+	}
+
 	public DataFrame getClusterResults() {
 		return clusterResults;
 	}
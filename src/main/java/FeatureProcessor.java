@@ -0,0 +1,253 @@
+import feature.CategoryDictionary;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.ml.feature.Normalizer;
+import org.apache.spark.ml.feature.VectorAssembler;
+import org.apache.spark.sql.DataFrame;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Feature engineering that is set up once and reused for every batch.
+ *
+ * Replaces fitting StringIndexer pipelines on every batch. Each categorical column has a growing CategoryDictionary
+ * on the driver, unseen categories of a batch are looked up in a single job and get the next free index, and the batch
+ * is then only transformed. Indices stay the same between batches, so models trained on different batches (and the
+ * incremental KMeans centres) stay comparable.
+ *
+ * Output columns are the index columns (doubles, like StringIndexer), the assembled "features" vector, its normalised
+ * version "features_normalized" and the "latLong" vector.
+ */
+public class FeatureProcessor {
+	private static final Logger logger = LoggerFactory.getLogger(FeatureProcessor.class);
+
+	private final String[] categoricalColumns;
+	private final String[] indexColumns;
+	private final Map<String, CategoryDictionary> dictionaries = new LinkedHashMap<>();
+
+	private final VectorAssembler assembler;
+	private final Normalizer normalizer;
+	private final VectorAssembler assemblerForLatLong;
+
+	private Broadcast<List<CategoryDictionary>> broadcastDictionaries;
+
+	public FeatureProcessor(String[] categoricalColumns, String[] indexColumns, String[] featureColumns, int maxCategoriesPerColumn) {
+		checkArgument(checkNotNull(categoricalColumns).length == checkNotNull(indexColumns).length,
+				"Every categorical column needs an index column");
+
+		this.categoricalColumns = categoricalColumns;
+		this.indexColumns = indexColumns;
+
+		for (String categoricalColumn : categoricalColumns) {
+			dictionaries.put(categoricalColumn, new CategoryDictionary(categoricalColumn, maxCategoriesPerColumn));
+		}
+
+		assembler = new VectorAssembler()
+				.setInputCols(checkNotNull(featureColumns))
+				.setOutputCol("features");
+
+		normalizer = new Normalizer().setInputCol("features").setOutputCol("features_normalized");
+
+		assemblerForLatLong = new VectorAssembler()
+				.setInputCols(
+						new String[]{"latitude", "longitude"}
+				).setOutputCol("latLong");
+	}
+
+	/**
+	 * Indexes and vectorises a batch of logs. Logs are expected to be without nulls in the categorical columns.
+	 */
+	public DataFrame transform(DataFrame logs) {
+		updateDictionaries(logs);
+
+		DataFrame logsWithIndices = addIndexColumns(logs, broadcastDictionaries, categoricalColumns, indexColumns);
+
+		return assemblerForLatLong.transform(normalizer.transform(assembler.transform(logsWithIndices)));
+	}
+
+	/**
+	 * Looks up the categories of the batch that are not in the dictionaries yet (one job for all columns) and adds
+	 * them. New categories are sorted before they get an index so that the same input always gives the same indices.
+	 */
+	private void updateDictionaries(DataFrame logs) {
+		JavaSparkContext sparkContext = new JavaSparkContext(logs.sqlContext().sparkContext());
+
+		if (broadcastDictionaries == null) {
+			broadcastDictionaries = sparkContext.broadcast(copyDictionaries());
+		}
+
+		List<Tuple2<Integer, String>> unseenCategories = findUnseenCategories(logs, broadcastDictionaries, categoricalColumns)
+				.distinct()
+				.collect();
+
+		if (unseenCategories.isEmpty()) {
+			return;
+		}
+
+		List<Set<String>> newCategoriesPerColumn = new ArrayList<>();
+		for (int i = 0; i < categoricalColumns.length; i++) {
+			newCategoriesPerColumn.add(new TreeSet<String>());
+		}
+
+		for (Tuple2<Integer, String> unseenCategory : unseenCategories) {
+			newCategoriesPerColumn.get(unseenCategory._1()).add(unseenCategory._2());
+		}
+
+		int added = 0;
+		for (int i = 0; i < categoricalColumns.length; i++) {
+			added += dictionaries.get(categoricalColumns[i]).addAll(newCategoriesPerColumn.get(i));
+		}
+
+		if (added > 0) {
+			logger.info("Added " + added + " new categories to the feature dictionaries");
+
+			broadcastDictionaries.unpersist();
+			broadcastDictionaries = sparkContext.broadcast(copyDictionaries());
+		}
+	}
+
+	/**
+	 * Puts back dictionaries from a snapshot, so categories keep the indices they had before a restart. Has to be
+	 * called before the first batch is transformed. Dictionaries of columns that are not categorical columns of this
+	 * processor are ignored, and the configured maximum number of categories still applies.
+	 */
+	public void restoreDictionaries(Collection<CategoryDictionary> restoredDictionaries) {
+		for (CategoryDictionary restoredDictionary : restoredDictionaries) {
+			CategoryDictionary dictionary = dictionaries.get(restoredDictionary.getColumnName());
+
+			if (dictionary != null) {
+				CategoryDictionary restored = new CategoryDictionary(dictionary.getColumnName(), dictionary.getMaxCategories());
+				restored.addAll(restoredDictionary.getCategories());
+
+				dictionaries.put(dictionary.getColumnName(), restored);
+			}
+		}
+
+		if (broadcastDictionaries != null) {
+			broadcastDictionaries.unpersist();
+			broadcastDictionaries = null;
+		}
+	}
+
+	private List<CategoryDictionary> copyDictionaries() {
+		List<CategoryDictionary> copies = new ArrayList<>();
+
+		for (String categoricalColumn : categoricalColumns) {
+			copies.add(dictionaries.get(categoricalColumn).copy());
+		}
+
+		return copies;
+	}
+
+	//Static so that the functions shipped to the executors do not drag the processor along with them.
+	private static JavaRDD<Tuple2<Integer, String>> findUnseenCategories(DataFrame logs,
+	                                                                     final Broadcast<List<CategoryDictionary>> dictionaries,
+	                                                                     String[] categoricalColumns) {
+		final int[] columnIndices = fieldIndices(logs.schema(), categoricalColumns);
+
+		return logs.javaRDD().mapPartitions(new FlatMapFunction<Iterator<Row>, Tuple2<Integer, String>>() {
+			@Override
+			public Iterable<Tuple2<Integer, String>> call(Iterator<Row> rows) throws Exception {
+				List<CategoryDictionary> knownCategories = dictionaries.value();
+				Set<Tuple2<Integer, String>> unseen = new HashSet<>();
+
+				while (rows.hasNext()) {
+					Row row = rows.next();
+
+					for (int i = 0; i < columnIndices.length; i++) {
+						CategoryDictionary dictionary = knownCategories.get(i);
+						Object category = row.get(columnIndices[i]);
+
+						if (category != null && !dictionary.isFull() && !dictionary.contains(category.toString())) {
+							unseen.add(new Tuple2<>(i, category.toString()));
+						}
+					}
+				}
+
+				return unseen.isEmpty() ? Collections.<Tuple2<Integer, String>>emptyList() : new ArrayList<>(unseen);
+			}
+		});
+	}
+
+	private static DataFrame addIndexColumns(DataFrame logs, final Broadcast<List<CategoryDictionary>> dictionaries,
+	                                         String[] categoricalColumns, String[] indexColumns) {
+		final int[] columnIndices = fieldIndices(logs.schema(), categoricalColumns);
+
+		JavaRDD<Row> rowsWithIndices = logs.javaRDD().map(new Function<Row, Row>() {
+			@Override
+			public Row call(Row row) throws Exception {
+				List<CategoryDictionary> knownCategories = dictionaries.value();
+				Object[] values = new Object[row.length() + columnIndices.length];
+
+				for (int i = 0; i < row.length(); i++) {
+					values[i] = row.get(i);
+				}
+
+				for (int i = 0; i < columnIndices.length; i++) {
+					Object category = row.get(columnIndices[i]);
+					values[row.length() + i] = knownCategories.get(i).indexOf(category == null ? null : category.toString());
+				}
+
+				return RowFactory.create(values);
+			}
+		});
+
+		StructType schema = logs.schema();
+		for (String indexColumn : indexColumns) {
+			schema = schema.add(indexColumn, DataTypes.DoubleType, false);
+		}
+
+		return logs.sqlContext().createDataFrame(rowsWithIndices, schema);
+	}
+
+	private static int[] fieldIndices(StructType schema, String[] columns) {
+		int[] indices = new int[columns.length];
+
+		for (int i = 0; i < columns.length; i++) {
+			indices[i] = schema.fieldIndex(columns[i]);
+		}
+
+		return indices;
+	}
+
+	/**
+	 * Copies of the dictionaries of all categorical columns, e.g. to write them to a snapshot.
+	 */
+	public List<CategoryDictionary> getDictionaries() {
+		return copyDictionaries();
+	}
+
+	public CategoryDictionary getDictionary(String categoricalColumn) {
+		return dictionaries.get(categoricalColumn);
+	}
+
+	public String[] getCategoricalColumns() {
+		return categoricalColumns;
+	}
+
+	public String[] getIndexColumns() {
+		return indexColumns;
+	}
+}
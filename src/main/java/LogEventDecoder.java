@@ -0,0 +1,289 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.sql.DataFrame;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SQLContext;
+import org.apache.spark.sql.types.ArrayType;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.storage.StorageLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.Tuple2;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the JSON log events that Logstash sends (COMBINEDAPACHELOG + geoip) against a fixed schema.
+ *
+ * sqlContext.read().json(...) infers the schema on every batch, which is an extra pass over the data, and the
+ * inferred schema changes whenever a batch happens to miss a field. Here the schema is bound once and every event is
+ * parsed in a single streaming pass straight into a Row. Fields that are not in the schema are skipped, missing fields
+ * are null. Events that can't be parsed are kept apart as dead letters and counted.
+ *
+ * The dead letters are counted with an action on the cached events rather than with an accumulator in the parsing
+ * map, which would count them again whenever a task is retried, run speculatively or recomputed after its cached
+ * partition was evicted.
+ */
+public class LogEventDecoder {
+	private static final Logger logger = LoggerFactory.getLogger(LogEventDecoder.class);
+
+	//Same fields as the sample event in src/main/resources/schema.json.
+	public static final StructType LOG_EVENT_SCHEMA = DataTypes.createStructType(new StructField[]{
+			DataTypes.createStructField("message", DataTypes.StringType, true),
+			DataTypes.createStructField("@version", DataTypes.StringType, true),
+			DataTypes.createStructField("@timestamp", DataTypes.StringType, true),
+			DataTypes.createStructField("path", DataTypes.StringType, true),
+			DataTypes.createStructField("host", DataTypes.StringType, true),
+			DataTypes.createStructField("type", DataTypes.StringType, true),
+			DataTypes.createStructField("clientip", DataTypes.StringType, true),
+			DataTypes.createStructField("ident", DataTypes.StringType, true),
+			DataTypes.createStructField("auth", DataTypes.StringType, true),
+			DataTypes.createStructField("timestamp", DataTypes.StringType, true),
+			DataTypes.createStructField("verb", DataTypes.StringType, true),
+			DataTypes.createStructField("request", DataTypes.StringType, true),
+			DataTypes.createStructField("httpversion", DataTypes.StringType, true),
+			DataTypes.createStructField("response", DataTypes.StringType, true),
+			DataTypes.createStructField("bytes", DataTypes.StringType, true),
+			DataTypes.createStructField("referrer", DataTypes.StringType, true),
+			DataTypes.createStructField("agent", DataTypes.StringType, true),
+			DataTypes.createStructField("geoip", DataTypes.createStructType(new StructField[]{
+					DataTypes.createStructField("ip", DataTypes.StringType, true),
+					DataTypes.createStructField("area_code", DataTypes.LongType, true),
+					DataTypes.createStructField("postal_code", DataTypes.StringType, true),
+					DataTypes.createStructField("dma_code", DataTypes.LongType, true),
+					DataTypes.createStructField("country_code2", DataTypes.StringType, true),
+					DataTypes.createStructField("country_code3", DataTypes.StringType, true),
+					DataTypes.createStructField("country_name", DataTypes.StringType, true),
+					DataTypes.createStructField("continent_code", DataTypes.StringType, true),
+					DataTypes.createStructField("region_name", DataTypes.StringType, true),
+					DataTypes.createStructField("city_name", DataTypes.StringType, true),
+					DataTypes.createStructField("latitude", DataTypes.DoubleType, true),
+					DataTypes.createStructField("longitude", DataTypes.DoubleType, true),
+					DataTypes.createStructField("timezone", DataTypes.StringType, true),
+					DataTypes.createStructField("real_region_name", DataTypes.StringType, true),
+					DataTypes.createStructField("location", DataTypes.createArrayType(DataTypes.DoubleType), true)
+			}), true)
+	});
+
+	private final StructType schema;
+	private final StructReader structReader;
+	private final String deadLetterDir;
+
+	private long malformedEvents;
+
+	public LogEventDecoder(StructType schema, String deadLetterDir) {
+		this.schema = schema;
+		this.structReader = new StructReader(schema);
+		this.deadLetterDir = deadLetterDir;
+	}
+
+	/**
+	 * Decodes a batch of events. The decoded events are cached, so the rows and the dead letters both come from the
+	 * same single parse.
+	 */
+	public DecodedLogs decode(JavaRDD<String> events, SQLContext sqlContext) {
+		JavaRDD<Tuple2<Row, String>> decodedEvents = parseEvents(events, structReader)
+				.persist(StorageLevel.MEMORY_AND_DISK());
+
+		DataFrame logs = sqlContext.createDataFrame(selectRows(decodedEvents), schema);
+
+		return new DecodedLogs(logs, decodedEvents);
+	}
+
+	//Static so that the functions shipped to the executors do not drag the decoder along with them.
+	private static JavaRDD<Tuple2<Row, String>> parseEvents(JavaRDD<String> events, final StructReader structReader) {
+		return events.map(new Function<String, Tuple2<Row, String>>() {
+			@Override
+			public Tuple2<Row, String> call(String event) throws Exception {
+				try {
+					JsonReader reader = new JsonReader(new StringReader(event));
+					Row row = structReader.read(reader);
+
+					if (reader.peek() != JsonToken.END_DOCUMENT) {
+						throw new IOException("Trailing data after the log event");
+					}
+
+					return new Tuple2<>(row, null);
+				} catch (IOException | RuntimeException e) {
+					return new Tuple2<>(null, event);
+				}
+			}
+		});
+	}
+
+	private static JavaRDD<Row> selectRows(JavaRDD<Tuple2<Row, String>> decodedEvents) {
+		return decodedEvents.filter(new Function<Tuple2<Row, String>, Boolean>() {
+			@Override
+			public Boolean call(Tuple2<Row, String> decodedEvent) throws Exception {
+				return decodedEvent._1() != null;
+			}
+		}).map(new Function<Tuple2<Row, String>, Row>() {
+			@Override
+			public Row call(Tuple2<Row, String> decodedEvent) throws Exception {
+				return decodedEvent._1();
+			}
+		});
+	}
+
+	private static JavaRDD<String> selectDeadLetters(JavaRDD<Tuple2<Row, String>> decodedEvents) {
+		return decodedEvents.filter(new Function<Tuple2<Row, String>, Boolean>() {
+			@Override
+			public Boolean call(Tuple2<Row, String> decodedEvent) throws Exception {
+				return decodedEvent._1() == null;
+			}
+		}).map(new Function<Tuple2<Row, String>, String>() {
+			@Override
+			public String call(Tuple2<Row, String> decodedEvent) throws Exception {
+				return decodedEvent._2();
+			}
+		});
+	}
+
+	public StructType getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Total number of events that could not be decoded since the decoder was created.
+	 */
+	public synchronized long getMalformedEvents() {
+		return malformedEvents;
+	}
+
+	/**
+	 * Logs of one batch together with the events of the batch that could not be decoded.
+	 */
+	public class DecodedLogs {
+		private final DataFrame logs;
+		private final JavaRDD<Tuple2<Row, String>> decodedEvents;
+
+		private DecodedLogs(DataFrame logs, JavaRDD<Tuple2<Row, String>> decodedEvents) {
+			this.logs = logs;
+			this.decodedEvents = decodedEvents;
+		}
+
+		public DataFrame getLogs() {
+			return logs;
+		}
+
+		/**
+		 * Writes the malformed events of the batch to the dead letter directory. Best called after the logs have been
+		 * used in a job, so that the events are counted from the cache instead of being parsed again. Returns the
+		 * number of malformed events of the batch.
+		 */
+		public long writeDeadLetters(String batchName) {
+			JavaRDD<String> deadLetters = selectDeadLetters(decodedEvents);
+			long malformedEventsOfBatch = deadLetters.count();
+
+			synchronized (LogEventDecoder.this) {
+				malformedEvents += malformedEventsOfBatch;
+			}
+
+			if (malformedEventsOfBatch > 0) {
+				logger.warn(malformedEventsOfBatch + " log events could not be decoded, writing them to " + deadLetterDir);
+
+				deadLetters.coalesce(1).saveAsTextFile(deadLetterDir + "/" + batchName);
+			}
+
+			return malformedEventsOfBatch;
+		}
+
+		public void release() {
+			decodedEvents.unpersist();
+		}
+	}
+
+	/**
+	 * Reads a JSON object into a Row of the given struct type. Built once from the schema so that looking up a field
+	 * is a single hash map lookup.
+	 */
+	private static class StructReader implements Serializable {
+		private final Map<String, Integer> fieldIndices = new HashMap<>();
+		private final DataType[] fieldTypes;
+		private final StructReader[] nestedReaders;
+
+		private StructReader(StructType structType) {
+			StructField[] fields = structType.fields();
+			fieldTypes = new DataType[fields.length];
+			nestedReaders = new StructReader[fields.length];
+
+			for (int i = 0; i < fields.length; i++) {
+				fieldIndices.put(fields[i].name(), i);
+				fieldTypes[i] = fields[i].dataType();
+
+				if (fieldTypes[i] instanceof StructType) {
+					nestedReaders[i] = new StructReader((StructType) fieldTypes[i]);
+				}
+			}
+		}
+
+		private Row read(JsonReader reader) throws IOException {
+			Object[] values = new Object[fieldTypes.length];
+
+			reader.beginObject();
+			while (reader.hasNext()) {
+				Integer index = fieldIndices.get(reader.nextName());
+
+				if (index == null) {
+					reader.skipValue();
+				} else {
+					values[index] = readValue(reader, fieldTypes[index], nestedReaders[index]);
+				}
+			}
+			reader.endObject();
+
+			return RowFactory.create(values);
+		}
+
+		private static Object readValue(JsonReader reader, DataType dataType, StructReader nestedReader) throws IOException {
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+				return null;
+			}
+
+			if (nestedReader != null) {
+				return nestedReader.read(reader);
+			}
+
+			if (dataType instanceof ArrayType) {
+				DataType elementType = ((ArrayType) dataType).elementType();
+				List<Object> elements = new ArrayList<>();
+
+				reader.beginArray();
+				while (reader.hasNext()) {
+					elements.add(readValue(reader, elementType, null));
+				}
+				reader.endArray();
+
+				return elements.toArray();
+			}
+
+			//Numbers that come in as strings (and the other way around) are converted to the type of the schema.
+			if (dataType == DataTypes.StringType) {
+				return reader.peek() == JsonToken.BOOLEAN ? String.valueOf(reader.nextBoolean()) : reader.nextString();
+			} else if (dataType == DataTypes.LongType) {
+				return reader.nextLong();
+			} else if (dataType == DataTypes.IntegerType) {
+				return reader.nextInt();
+			} else if (dataType == DataTypes.DoubleType) {
+				return reader.nextDouble();
+			} else if (dataType == DataTypes.BooleanType) {
+				return reader.nextBoolean();
+			}
+
+			throw new IOException("Unsupported type in log event schema: " + dataType);
+		}
+	}
+}
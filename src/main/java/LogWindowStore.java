@@ -0,0 +1,314 @@
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.sql.DataFrame;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SQLContext;
+import org.apache.spark.storage.StorageLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bounded sliding window over the logs that came in from the stream.
+ *
+ * Every micro-batch is kept as its own cached segment. Segments are evicted once they are older than the retention
+ * period or once the window holds more rows than allowed, so the cost of working on the window stays flat however
+ * long the job runs. When too many segments pile up, the batches are compacted into buckets of a fixed time range
+ * (retention / (maxSegments / 2)), one segment per bucket, and the compacted RDDs are checkpointed (if a checkpoint
+ * directory is set on the SparkContext) so the lineage does not grow either. A bucket is evicted as a whole once its
+ * newest batch is out of the retention period, so compacted rows expire on time instead of being merged into a segment
+ * that stays as new as the latest compaction.
+ *
+ * Batches from a given batch time on can be kept out of compaction, so that getBatchesSince returns exactly their rows,
+ * e.g. the batches whose ML stages were put off (see BatchController). The window can then hold more than maxSegments
+ * segments until they are processed. These batches are not evicted for the row limit either, so the window can also
+ * hold more than maxRows rows until then (BatchController runs the ML stages once that many rows are waiting). They
+ * are still evicted once they are out of the retention period, and their rows are counted as dropped.
+ */
+public class LogWindowStore {
+	private static final Logger logger = LoggerFactory.getLogger(LogWindowStore.class);
+
+	private final long retentionMillis;
+	private final long maxRows;
+	private final int maxSegments;
+	private final String tableName;
+	private final long bucketMillis;
+
+	//Segments of batches from this time on are not compacted.
+	private long keepSeparateSinceMillis = Long.MAX_VALUE;
+
+	private final Deque<Segment> segments = new ArrayDeque<>();
+	private long rowCount;
+	private long latestBatchRows;
+	private long droppedPendingRows;
+	private DataFrame window;
+	private DataFrame latestBatch;
+
+	public LogWindowStore(long retentionMillis, long maxRows, int maxSegments, String tableName) {
+		checkArgument(retentionMillis > 0, "Retention has to be positive");
+		checkArgument(maxRows > 0, "Maximum number of rows has to be positive");
+		checkArgument(maxSegments > 1, "Need at least two segments to be able to compact");
+
+		this.retentionMillis = retentionMillis;
+		this.maxRows = maxRows;
+		this.maxSegments = maxSegments;
+		this.tableName = tableName;
+		//Half of the segments for the compacted buckets, the other half for the batches since the last compaction.
+		this.bucketMillis = Math.max(1, retentionMillis / (maxSegments / 2));
+	}
+
+	/**
+	 * Adds a batch of logs to the window and evicts whatever falls out of it.
+	 *
+	 * The batch is cached and counted straight away. Counting is needed for the row based retention anyway and it
+	 * makes sure the batch does not have to be recomputed from the stream blocks later on, which is what caused
+	 * "Attempted to use BlockRDD ... after its blocks have been removed" with the old ever-growing union.
+	 */
+	public DataFrame append(DataFrame batch, long batchTimeMillis) {
+		return append(batch, batchTimeMillis, batchTimeMillis);
+	}
+
+	/**
+	 * Same, but the batches from keepSeparateSinceMillis on are not compacted, so that getBatchesSince can return them
+	 * without the rows of older batches.
+	 */
+	public DataFrame append(DataFrame batch, long batchTimeMillis, long keepSeparateSinceMillis) {
+		this.keepSeparateSinceMillis = keepSeparateSinceMillis;
+
+		DataFrame cachedBatch = batch.persist(StorageLevel.MEMORY_AND_DISK());
+		long batchRows = cachedBatch.count();
+		latestBatchRows = batchRows;
+
+		if (batchRows == 0) {
+			cachedBatch.unpersist();
+			latestBatch = null;
+		} else {
+			segments.addLast(new Segment(cachedBatch, batchTimeMillis, batchTimeMillis, batchRows));
+			rowCount += batchRows;
+			latestBatch = cachedBatch;
+		}
+
+		evict(batchTimeMillis);
+
+		if (segments.size() > maxSegments) {
+			compact();
+		}
+
+		refreshWindow();
+
+		return window;
+	}
+
+	/**
+	 * Evicts segments that fell out of the window without adding a batch, for batches where nothing came in.
+	 */
+	public DataFrame expire(long now) {
+		int noOfSegments = segments.size();
+
+		evict(now);
+
+		if (segments.size() != noOfSegments) {
+			refreshWindow();
+		}
+
+		return window;
+	}
+
+	private void evict(long now) {
+		Iterator<Segment> iterator = segments.iterator();
+
+		while (iterator.hasNext()) {
+			Segment segment = iterator.next();
+
+			//Always keep the newest batch, even if it is larger than the row limit on its own, and the batches that are
+			//kept separate, whose rows have not been processed yet.
+			boolean isNewest = !iterator.hasNext();
+			boolean isPending = segment.oldestBatchTime >= keepSeparateSinceMillis;
+			boolean expired = segment.newestBatchTime < now - retentionMillis;
+			boolean overRowLimit = rowCount > maxRows && !isNewest && !isPending;
+
+			if (!expired && !overRowLimit) {
+				//Segments are ordered oldest first so nothing after this one can be expired or needs to go.
+				break;
+			}
+
+			if (isPending) {
+				droppedPendingRows += segment.rows;
+				logger.warn("Evicted " + segment.rows + " rows from the log window before the ML stages ran on them");
+			}
+
+			iterator.remove();
+			rowCount -= segment.rows;
+			segment.logs.unpersist();
+		}
+	}
+
+	/**
+	 * Merges the segments of the same time bucket into a single cached segment per bucket.
+	 *
+	 * The newest segment stays on its own so that it can still be evicted independently when the row limit is hit.
+	 */
+	private void compact() {
+		Segment newest = segments.pollLast();
+		Deque<Segment> compacted = new ArrayDeque<>();
+		List<Segment> bucket = new ArrayList<>();
+
+		//Segments are ordered oldest first, so the segments of a bucket are next to each other.
+		for (Segment segment : segments) {
+			if (segment.oldestBatchTime >= keepSeparateSinceMillis) {
+				if (!bucket.isEmpty()) {
+					compacted.addLast(merge(bucket));
+					bucket.clear();
+				}
+
+				compacted.addLast(segment);
+				continue;
+			}
+
+			if (!bucket.isEmpty() && bucketOf(bucket.get(0)) != bucketOf(segment)) {
+				compacted.addLast(merge(bucket));
+				bucket.clear();
+			}
+
+			bucket.add(segment);
+		}
+
+		if (!bucket.isEmpty()) {
+			compacted.addLast(merge(bucket));
+		}
+
+		segments.clear();
+		segments.addAll(compacted);
+		segments.addLast(newest);
+
+		logger.info("Compacted log window into " + compacted.size() + " buckets");
+	}
+
+	private long bucketOf(Segment segment) {
+		return segment.oldestBatchTime / bucketMillis;
+	}
+
+	private Segment merge(List<Segment> bucket) {
+		if (bucket.size() == 1) {
+			return bucket.get(0);
+		}
+
+		DataFrame merged = null;
+		long mergedRows = 0;
+
+		for (Segment segment : bucket) {
+			merged = merged == null ? segment.logs : merged.unionAll(segment.logs);
+			mergedRows += segment.rows;
+		}
+
+		SQLContext sqlContext = merged.sqlContext();
+		JavaRDD<Row> mergedRdd = merged.javaRDD().persist(StorageLevel.MEMORY_AND_DISK());
+
+		if (sqlContext.sparkContext().getCheckpointDir().isDefined()) {
+			mergedRdd.checkpoint();
+		}
+
+		DataFrame compacted = sqlContext.createDataFrame(mergedRdd, merged.schema());
+
+		//Materialise (and checkpoint) the compacted segment before the segments it was built from are dropped.
+		mergedRdd.count();
+
+		for (Segment segment : bucket) {
+			segment.logs.unpersist();
+		}
+
+		return new Segment(compacted, bucket.get(0).oldestBatchTime, bucket.get(bucket.size() - 1).newestBatchTime, mergedRows);
+	}
+
+	private void refreshWindow() {
+		window = null;
+
+		for (Segment segment : segments) {
+			window = window == null ? segment.logs : window.unionAll(segment.logs);
+		}
+
+		//Register the window so that it can be queried with Spark SQL.
+		if (window != null) {
+			window.registerTempTable(tableName);
+		}
+	}
+
+	public DataFrame getWindow() {
+		return window;
+	}
+
+	/**
+	 * The batch added by the last call to append, or null if it was empty.
+	 */
+	public DataFrame getLatestBatch() {
+		return latestBatch;
+	}
+
+	/**
+	 * The logs of the batches from the given batch time on, or null if there are none, e.g. the batches whose rows were
+	 * carried forward (see BatchController). Only batches that were kept out of compaction (see append) are returned,
+	 * batches that were evicted in the meantime are missing.
+	 */
+	public DataFrame getBatchesSince(long batchTimeMillis) {
+		DataFrame batches = null;
+
+		for (Segment segment : segments) {
+			if (segment.oldestBatchTime >= batchTimeMillis) {
+				batches = batches == null ? segment.logs : batches.unionAll(segment.logs);
+			}
+		}
+
+		return batches;
+	}
+
+	/**
+	 * Rows of the batch that was appended last, as counted when it was appended.
+	 */
+	public long getLatestBatchRows() {
+		return latestBatchRows;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Rows of batches that were kept separate but evicted before the ML stages ran on them, since the window was
+	 * created.
+	 */
+	public long getDroppedPendingRows() {
+		return droppedPendingRows;
+	}
+
+	public int getNoOfSegments() {
+		return segments.size();
+	}
+
+	public long getRetentionMillis() {
+		return retentionMillis;
+	}
+
+	public long getMaxRows() {
+		return maxRows;
+	}
+
+	private static class Segment {
+		private final DataFrame logs;
+		private final long oldestBatchTime;
+		private final long newestBatchTime;
+		private final long rows;
+
+		private Segment(DataFrame logs, long oldestBatchTime, long newestBatchTime, long rows) {
+			this.logs = logs;
+			this.oldestBatchTime = oldestBatchTime;
+			this.newestBatchTime = newestBatchTime;
+			this.rows = rows;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package classification;
+
+import evaluation.ClassificationMetrics;
+import org.apache.spark.api.java.JavaRDD;
+import scala.Tuple2;
+
+/**
+ * Trained model of a classifier together with its (prediction, label) pairs on the test data and their metrics.
+ */
+public class ClassificationResult {
+	private final Classifier classifier;
+	private final ClassifierModel model;
+	private final JavaRDD<Tuple2<Object, Object>> valuesAndPreds;
+	private final ClassificationMetrics metrics;
+	private final long trainingMillis;
+
+	public ClassificationResult(Classifier classifier, ClassifierModel model, JavaRDD<Tuple2<Object, Object>> valuesAndPreds,
+	                            ClassificationMetrics metrics, long trainingMillis) {
+		this.classifier = classifier;
+		this.model = model;
+		this.valuesAndPreds = valuesAndPreds;
+		this.metrics = metrics;
+		this.trainingMillis = trainingMillis;
+	}
+
+	public String getName() {
+		return classifier.getName();
+	}
+
+	public Classifier getClassifier() {
+		return classifier;
+	}
+
+	public ClassifierModel getModel() {
+		return model;
+	}
+
+	public JavaRDD<Tuple2<Object, Object>> getValuesAndPreds() {
+		return valuesAndPreds;
+	}
+
+	public ClassificationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Time it took to train the model and evaluate it, in milliseconds.
+	 */
+	public long getTrainingMillis() {
+		return trainingMillis;
+	}
+
+	@Override
+	public String toString() {
+		return getName() + " (" + trainingMillis + " ms): " + metrics;
+	}
+}
@@ -0,0 +1,34 @@
+package classification;
+
+import org.apache.spark.SparkContext;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.mllib.regression.LabeledPoint;
+
+import java.io.Serializable;
+
+/**
+ * A classification algorithm together with its parameters and the feature column it is trained on.
+ *
+ * Classifiers are registered by name in a ClassifierRegistry and picked by configuration. They only train, building
+ * the labeled points and predicting the test data is done once for all of them by the ClassificationProcessor.
+ */
+public interface Classifier extends Serializable {
+
+	String getName();
+
+	/**
+	 * Column that holds the features, either a single Double (e.g. "verbIndex") or a Vector (e.g. "features").
+	 */
+	String getFeatureColumn();
+
+	/**
+	 * @param previousModel model of an earlier batch (or a snapshot) of this classifier to warm start from if the
+	 *                      algorithm supports it, or null
+	 */
+	ClassifierModel train(JavaRDD<LabeledPoint> training, ClassifierModel previousModel);
+
+	/**
+	 * Loads a model of this classifier that was saved with getModel().save(...).
+	 */
+	ClassifierModel load(SparkContext sparkContext, String path);
+}
@@ -0,0 +1,19 @@
+package classification;
+
+import org.apache.spark.mllib.linalg.Vector;
+import org.apache.spark.mllib.util.Saveable;
+
+import java.io.Serializable;
+
+/**
+ * Model trained by a Classifier. Shipped to the executors to predict the test data.
+ */
+public interface ClassifierModel extends Serializable {
+
+	double predict(Vector features);
+
+	/**
+	 * The underlying MLlib model.
+	 */
+	Saveable getModel();
+}
@@ -0,0 +1,98 @@
+package classification;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Classifiers by name, so that the ones to train can be picked by configuration (e.g.
+ * "logisticRegressionSimple,decisionTreeSimple") instead of commenting code in and out.
+ */
+public class ClassifierRegistry implements Serializable {
+	//The labels are the clusters, so there is one class per cluster of the default number of clusters.
+	public static final int DEFAULT_NO_OF_CLASSES = 5;
+	public static final int DEFAULT_DECISION_TREE_MAX_DEPTH = 10;
+	public static final int DEFAULT_DECISION_TREE_MAX_BINS = 1000;
+
+	private final Map<String, Classifier> classifiers = new LinkedHashMap<>();
+
+	/**
+	 * Registry with the classifiers the engine has always had. "Simple" ones are trained on the verb only, "Complex"
+	 * ones on the assembled feature vector.
+	 */
+	public static ClassifierRegistry createDefault(int noOfIterations, double stepSize) {
+		return createDefault(noOfIterations, stepSize, DEFAULT_NO_OF_CLASSES);
+	}
+
+	/**
+	 * Default registry for labels from 0 to noOfClasses - 1, i.e. one class per cluster.
+	 */
+	public static ClassifierRegistry createDefault(int noOfIterations, double stepSize, int noOfClasses) {
+		return createDefault(noOfIterations, stepSize, noOfClasses, DEFAULT_DECISION_TREE_MAX_DEPTH, DEFAULT_DECISION_TREE_MAX_BINS);
+	}
+
+	/**
+	 * Default registry for noOfClasses classes with decision trees of the given depth and number of bins.
+	 */
+	public static ClassifierRegistry createDefault(int noOfIterations, double stepSize, int noOfClasses,
+	                                               int decisionTreeMaxDepth, int decisionTreeMaxBins) {
+		checkArgument(noOfClasses > 1, "At least two classes are needed");
+
+		ClassifierRegistry registry = new ClassifierRegistry();
+
+		registry.register(new LinearRegressionWithSgdClassifier("linearRegressionSimple", "verbIndex", noOfIterations, stepSize, false));
+		registry.register(new LinearRegressionWithSgdClassifier("linearRegressionComplex", "features_normalized", noOfIterations, stepSize, true));
+		registry.register(new LogisticRegressionWithLbfgsClassifier("logisticRegressionSimple", "verbIndex", noOfClasses));
+		registry.register(new LogisticRegressionWithLbfgsClassifier("logisticRegressionComplex", "features", noOfClasses));
+		registry.register(new NaiveBayesClassifier("naiveBayesSimple", "verbIndex", 1.0));
+		registry.register(new NaiveBayesClassifier("naiveBayesComplex", "features", 1.0));
+		registry.register(new DecisionTreeClassifier("decisionTreeSimple", "verbIndex", noOfClasses, "gini", decisionTreeMaxDepth, decisionTreeMaxBins));
+		registry.register(new DecisionTreeClassifier("decisionTreeComplex", "features", noOfClasses, "gini", decisionTreeMaxDepth, decisionTreeMaxBins));
+
+		return registry;
+	}
+
+	/**
+	 * Registers a classifier, replacing one that was registered under the same name.
+	 */
+	public ClassifierRegistry register(Classifier classifier) {
+		classifiers.put(classifier.getName(), classifier);
+
+		return this;
+	}
+
+	public Classifier get(String name) {
+		Classifier classifier = classifiers.get(name);
+
+		checkArgument(classifier != null, "Unknown classifier %s, registered are %s", name, classifiers.keySet());
+
+		return classifier;
+	}
+
+	/**
+	 * Classifiers for a comma separated list of names, in the order they are listed.
+	 */
+	public List<Classifier> select(String names) {
+		List<Classifier> selected = new ArrayList<>();
+
+		for (String name : names.split(",")) {
+			if (!name.trim().isEmpty()) {
+				selected.add(get(name.trim()));
+			}
+		}
+
+		checkArgument(!selected.isEmpty(), "No classifier selected");
+
+		return selected;
+	}
+
+	public Collection<Classifier> getClassifiers() {
+		return Collections.unmodifiableCollection(classifiers.values());
+	}
+}
@@ -0,0 +1,95 @@
+package classification;
+
+import org.apache.spark.SparkContext;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.mllib.linalg.Vector;
+import org.apache.spark.mllib.regression.LabeledPoint;
+import org.apache.spark.mllib.tree.DecisionTree;
+import org.apache.spark.mllib.tree.model.DecisionTreeModel;
+import org.apache.spark.mllib.util.Saveable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decision tree for classification (non-linear method). All features are treated as continuous.
+ */
+public class DecisionTreeClassifier implements Classifier {
+	private final String name;
+	private final String featureColumn;
+	private final int numClasses;
+	private final String impurity;
+	private final int maxDepth;
+	private final int maxBins;
+
+	public DecisionTreeClassifier(String name, String featureColumn, int numClasses, String impurity, int maxDepth, int maxBins) {
+		this.name = checkNotNull(name);
+		this.featureColumn = checkNotNull(featureColumn);
+		this.numClasses = numClasses;
+		this.impurity = checkNotNull(impurity);
+		this.maxDepth = maxDepth;
+		this.maxBins = maxBins;
+	}
+
+	/**
+	 * Trees are grown from scratch, the previous model is not used.
+	 */
+	@Override
+	public ClassifierModel train(JavaRDD<LabeledPoint> training, ClassifierModel previousModel) {
+		//Empty categoricalFeaturesInfo indicates all features are continuous.
+		Map<Integer, Integer> categoricalFeaturesInfo = new HashMap<Integer, Integer>();
+
+		return new Model(DecisionTree.trainClassifier(training, numClasses, categoricalFeaturesInfo, impurity, maxDepth, maxBins));
+	}
+
+	@Override
+	public ClassifierModel load(SparkContext sparkContext, String path) {
+		return new Model(DecisionTreeModel.load(sparkContext, path));
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getFeatureColumn() {
+		return featureColumn;
+	}
+
+	public int getNumClasses() {
+		return numClasses;
+	}
+
+	public String getImpurity() {
+		return impurity;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public int getMaxBins() {
+		return maxBins;
+	}
+
+	private static class Model implements ClassifierModel {
+		private final DecisionTreeModel model;
+
+		private Model(DecisionTreeModel model) {
+			this.model = model;
+		}
+
+		@Override
+		public double predict(Vector features) {
+			return model.predict(features);
+		}
+
+		@Override
+		public Saveable getModel() {
+			return model;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package classification;
+
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.mllib.linalg.Vector;
+import org.apache.spark.mllib.linalg.Vectors;
+import org.apache.spark.mllib.regression.LabeledPoint;
+import org.apache.spark.sql.DataFrame;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.storage.StorageLevel;
+import tracing.StageTrace;
+
+/**
+ * Labeled points for one feature column of a batch, split into cached training and test data.
+ *
+ * Built once per feature column and batch, and shared by every classifier trained on that column, so the rows are
+ * only mapped to LabeledPoints (and split) once however many classifiers are compared.
+ */
+public class LabeledDataset {
+	private final String featureColumn;
+	private final JavaRDD<LabeledPoint> training;
+	private final JavaRDD<LabeledPoint> test;
+	private final long trainingCount;
+
+	public LabeledDataset(DataFrame logs, String labelColumn, String featureColumn, double trainingSplit, double testSplit,
+	                      long seed, StageTrace labelTrace) {
+		this.featureColumn = featureColumn;
+
+		boolean scalarFeature = logs.schema().apply(featureColumn).dataType() == DataTypes.DoubleType;
+
+		JavaRDD<LabeledPoint> featureLabel = toLabeledPoints(logs.select(labelColumn, featureColumn), scalarFeature, labelTrace);
+
+		JavaRDD<LabeledPoint>[] splits = featureLabel.randomSplit(new double[]{trainingSplit, testSplit}, seed);
+
+		training = splits[0].persist(StorageLevel.MEMORY_AND_DISK());
+		test = splits[1].persist(StorageLevel.MEMORY_AND_DISK());
+
+		//Materialises the training data before the classifiers start training on it concurrently.
+		trainingCount = training.count();
+	}
+
+	//Static so that the function shipped to the executors does not drag the dataset along with it.
+	private static JavaRDD<LabeledPoint> toLabeledPoints(DataFrame labelAndFeature, final boolean scalarFeature,
+	                                                     final StageTrace labelTrace) {
+		return labelAndFeature.javaRDD().map(new Function<Row, LabeledPoint>() {
+			@Override
+			public LabeledPoint call(Row row) throws Exception {
+				labelTrace.record("Label {} Features {}", row.get(0), row.get(1));
+
+				return new LabeledPoint(
+						((Number) row.get(0)).doubleValue(),
+						scalarFeature ? Vectors.dense(row.getDouble(1)) : (Vector) row.get(1)
+				);
+			}
+		});
+	}
+
+	public String getFeatureColumn() {
+		return featureColumn;
+	}
+
+	public JavaRDD<LabeledPoint> getTraining() {
+		return training;
+	}
+
+	public JavaRDD<LabeledPoint> getTest() {
+		return test;
+	}
+
+	public long getTrainingCount() {
+		return trainingCount;
+	}
+
+	public void release() {
+		training.unpersist();
+		test.unpersist();
+	}
+}
@@ -0,0 +1,98 @@
+package classification;
+
+import org.apache.spark.SparkContext;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.mllib.linalg.Vector;
+import org.apache.spark.mllib.regression.LabeledPoint;
+import org.apache.spark.mllib.regression.LinearRegressionModel;
+import org.apache.spark.mllib.regression.LinearRegressionWithSGD;
+import org.apache.spark.mllib.util.Saveable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Linear regression trained with SGD. The predictions are not rounded to a cluster.
+ */
+public class LinearRegressionWithSgdClassifier implements Classifier {
+	private final String name;
+	private final String featureColumn;
+	private final int noOfIterations;
+	private final double stepSize;
+	private final boolean intercept;
+
+	public LinearRegressionWithSgdClassifier(String name, String featureColumn, int noOfIterations, double stepSize, boolean intercept) {
+		this.name = checkNotNull(name);
+		this.featureColumn = checkNotNull(featureColumn);
+		this.noOfIterations = noOfIterations;
+		this.stepSize = stepSize;
+		this.intercept = intercept;
+	}
+
+	@Override
+	public ClassifierModel train(JavaRDD<LabeledPoint> training, ClassifierModel previousModel) {
+		LinearRegressionWithSGD linearRegression = new LinearRegressionWithSGD();
+
+		/**
+		 * If intercept is not set to true, it will take 0 as an intercept.
+		 * http://stackoverflow.com/questions/26259743/spark-mllib-linear-regression-model-intercept-is-always-0-0
+		 */
+		linearRegression.setIntercept(intercept);
+		linearRegression.optimizer().setNumIterations(noOfIterations).setStepSize(stepSize);
+
+		//Warm start from the weights of the previous model as long as the number of features did not change.
+		if (previousModel instanceof Model) {
+			Vector previousWeights = ((Model) previousModel).model.weights();
+
+			if (previousWeights.size() == training.first().features().size()) {
+				return new Model(linearRegression.run(training.rdd(), previousWeights));
+			}
+		}
+
+		return new Model(linearRegression.run(training.rdd()));
+	}
+
+	@Override
+	public ClassifierModel load(SparkContext sparkContext, String path) {
+		return new Model(LinearRegressionModel.load(sparkContext, path));
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getFeatureColumn() {
+		return featureColumn;
+	}
+
+	public int getNoOfIterations() {
+		return noOfIterations;
+	}
+
+	public double getStepSize() {
+		return stepSize;
+	}
+
+	public boolean isIntercept() {
+		return intercept;
+	}
+
+	private static class Model implements ClassifierModel {
+		private final LinearRegressionModel model;
+
+		private Model(LinearRegressionModel model) {
+			this.model = model;
+		}
+
+		@Override
+		public double predict(Vector features) {
+			return model.predict(features);
+		}
+
+		@Override
+		public Saveable getModel() {
+			return model;
+		}
+	}
+}
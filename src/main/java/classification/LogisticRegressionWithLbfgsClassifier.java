@@ -0,0 +1,82 @@
+package classification;
+
+import org.apache.spark.SparkContext;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.mllib.classification.LogisticRegressionModel;
+import org.apache.spark.mllib.classification.LogisticRegressionWithLBFGS;
+import org.apache.spark.mllib.linalg.Vector;
+import org.apache.spark.mllib.regression.LabeledPoint;
+import org.apache.spark.mllib.util.Saveable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Multinomial logistic regression trained with LBFGS.
+ *
+ * Logistic Regression with LBFGS is preferred over SGD
+ * Ref: https://spark.apache.org/docs/1.6.2/api/java/org/apache/spark/mllib/classification/package-summary.html
+ */
+public class LogisticRegressionWithLbfgsClassifier implements Classifier {
+	private final String name;
+	private final String featureColumn;
+	private final int numClasses;
+
+	public LogisticRegressionWithLbfgsClassifier(String name, String featureColumn, int numClasses) {
+		this.name = checkNotNull(name);
+		this.featureColumn = checkNotNull(featureColumn);
+		this.numClasses = numClasses;
+	}
+
+	@Override
+	public ClassifierModel train(JavaRDD<LabeledPoint> training, ClassifierModel previousModel) {
+		LogisticRegressionWithLBFGS logisticRegression = new LogisticRegressionWithLBFGS().setNumClasses(numClasses);
+
+		//Warm start from the weights of the previous model as long as the number of features did not change.
+		if (previousModel instanceof Model) {
+			LogisticRegressionModel model = ((Model) previousModel).model;
+
+			if (model.numClasses() == numClasses && model.numFeatures() == training.first().features().size()) {
+				return new Model(logisticRegression.run(training.rdd(), model.weights()));
+			}
+		}
+
+		return new Model(logisticRegression.run(training.rdd()));
+	}
+
+	@Override
+	public ClassifierModel load(SparkContext sparkContext, String path) {
+		return new Model(LogisticRegressionModel.load(sparkContext, path));
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getFeatureColumn() {
+		return featureColumn;
+	}
+
+	public int getNumClasses() {
+		return numClasses;
+	}
+
+	private static class Model implements ClassifierModel {
+		private final LogisticRegressionModel model;
+
+		private Model(LogisticRegressionModel model) {
+			this.model = model;
+		}
+
+		@Override
+		public double predict(Vector features) {
+			return model.predict(features);
+		}
+
+		@Override
+		public Saveable getModel() {
+			return model;
+		}
+	}
+}
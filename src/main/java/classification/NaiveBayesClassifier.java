@@ -0,0 +1,71 @@
+package classification;
+
+import org.apache.spark.SparkContext;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.mllib.classification.NaiveBayes;
+import org.apache.spark.mllib.classification.NaiveBayesModel;
+import org.apache.spark.mllib.linalg.Vector;
+import org.apache.spark.mllib.regression.LabeledPoint;
+import org.apache.spark.mllib.util.Saveable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Multinomial naive Bayes. Features have to be non-negative, which the indexed features are.
+ */
+public class NaiveBayesClassifier implements Classifier {
+	private final String name;
+	private final String featureColumn;
+	private final double lambda;
+
+	public NaiveBayesClassifier(String name, String featureColumn, double lambda) {
+		this.name = checkNotNull(name);
+		this.featureColumn = checkNotNull(featureColumn);
+		this.lambda = lambda;
+	}
+
+	/**
+	 * Naive Bayes has nothing to warm start, the counts are taken from the training data in one pass.
+	 */
+	@Override
+	public ClassifierModel train(JavaRDD<LabeledPoint> training, ClassifierModel previousModel) {
+		return new Model(NaiveBayes.train(training.rdd(), lambda));
+	}
+
+	@Override
+	public ClassifierModel load(SparkContext sparkContext, String path) {
+		return new Model(NaiveBayesModel.load(sparkContext, path));
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getFeatureColumn() {
+		return featureColumn;
+	}
+
+	public double getLambda() {
+		return lambda;
+	}
+
+	private static class Model implements ClassifierModel {
+		private final NaiveBayesModel model;
+
+		private Model(NaiveBayesModel model) {
+			this.model = model;
+		}
+
+		@Override
+		public double predict(Vector features) {
+			return model.predict(features);
+		}
+
+		@Override
+		public Saveable getModel() {
+			return model;
+		}
+	}
+}
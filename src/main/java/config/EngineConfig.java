@@ -0,0 +1,535 @@
+package config;
+
+import geocoder.MappedGeocodeCache;
+import org.slf4j.event.Level;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Settings of the engine that used to be compile time constants, typed and validated once at startup.
+ *
+ * Every setting has a default. They are overridden, from lowest to highest precedence, by
+ * - a properties file, --config=<file> on the command line or -Dconfig=<file> (src/main/resources/engine.properties
+ *   lists every setting with its default),
+ * - system properties with the same name (-DbatchIntervalMillis=1000), which is how most of them were set before,
+ * - command line arguments of the form --<name>=<value> (--batchIntervalMillis=1000).
+ *
+ * Unknown names in the file or on the command line and values that are not valid fail at startup with all problems
+ * at once, instead of when the setting is first used.
+ */
+public class EngineConfig implements Serializable {
+	public static final String CONFIG_OPTION = "config";
+
+	public static final String CSV_RULE_FILE_FORMAT = "csv";
+	public static final String COLUMNAR_RULE_FILE_FORMAT = "columnar";
+
+	private static final String OPTION_PREFIX = "--";
+
+	private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+	static {
+		//Spark and the stream. The receiver based stream needs local[n] with n > 1 so that receiving and processing
+		//don't wait for each other, the direct stream has no receivers.
+		DEFAULTS.put("sparkMaster", "local[2]");
+		DEFAULTS.put("directSparkMaster", "local[*]");
+		DEFAULTS.put("batchIntervalMillis", "2000");
+		DEFAULTS.put("maxRatePerPartition", "10000");
+		DEFAULTS.put("checkpointDir", "/tmp/gsoc-mlanalysisengine/checkpoints");
+
+		//Log window, see LogWindowStore.
+		DEFAULTS.put("windowSeconds", "600");
+		DEFAULTS.put("windowMaxRows", "100000");
+		DEFAULTS.put("windowMaxSegments", "20");
+
+		//When the ML stages run, see BatchController.
+		DEFAULTS.put("minBatchRows", "100");
+		DEFAULTS.put("maxDeferSeconds", "60");
+
+		//Models.
+		DEFAULTS.put("classifiers", "logisticRegressionSimple,decisionTreeSimple");
+		DEFAULTS.put("classifierIterations", "10");
+		DEFAULTS.put("classifierStepSize", "0.000000000000001");
+		DEFAULTS.put("decisionTreeMaxDepth", "10");
+		DEFAULTS.put("decisionTreeMaxBins", "1000");
+		DEFAULTS.put("clusters", "5");
+		DEFAULTS.put("kmeansDecayFactor", "0.9");
+		DEFAULTS.put("maxCategoriesPerColumn", "10000");
+		DEFAULTS.put("ruleMinSupport", "2");
+		DEFAULTS.put("ruleMinConfidence", "0.1");
+
+		//Output.
+		DEFAULTS.put("outputDir", "src/main/resources/output");
+		DEFAULTS.put("ruleFileFormat", CSV_RULE_FILE_FORMAT);
+		DEFAULTS.put("offsetFile", "src/main/resources/output/kafka-offsets");
+		DEFAULTS.put("snapshotDir", "src/main/resources/snapshots");
+		DEFAULTS.put("snapshotIntervalSeconds", "300");
+		DEFAULTS.put("snapshotVersionsToKeep", "3");
+
+		//Geocoding, see Main.createGeocoder.
+		DEFAULTS.put("geocodeLogs", "false");
+		DEFAULTS.put("gazetteer", "src/main/resources/gazetteer.tsv");
+		DEFAULTS.put("googleApiKey", "");
+		DEFAULTS.put("geocodeCacheFile", "src/main/resources/cache/geocode-cache");
+		DEFAULTS.put("geocodeCacheSlots", String.valueOf(1 << 20));
+		DEFAULTS.put("geocodeMemoryCacheSize", "500");
+		DEFAULTS.put("maxConcurrentGeocodeLookups", "8");
+
+		//Metrics, 0 switches the Prometheus endpoint off.
+		DEFAULTS.put("metricsPort", "9404");
+
+		//Debug trace of the classification map functions, see ClassificationProcessor.setDebugTrace. 0 only counts.
+		DEFAULTS.put("traceSampleEvery", "0");
+		DEFAULTS.put("traceLevel", Level.DEBUG.name());
+	}
+
+	private final Map<String, String> values;
+
+	private final String sparkMaster;
+	private final String directSparkMaster;
+	private final long batchIntervalMillis;
+	private final int maxRatePerPartition;
+	private final String checkpointDir;
+
+	private final long windowSeconds;
+	private final long windowMaxRows;
+	private final int windowMaxSegments;
+
+	private final long minBatchRows;
+	private final long maxDeferSeconds;
+
+	private final String classifiers;
+	private final int classifierIterations;
+	private final double classifierStepSize;
+	private final int decisionTreeMaxDepth;
+	private final int decisionTreeMaxBins;
+	private final int clusters;
+	private final double kmeansDecayFactor;
+	private final int maxCategoriesPerColumn;
+	private final long ruleMinSupport;
+	private final double ruleMinConfidence;
+
+	private final String outputDir;
+	private final String ruleFileFormat;
+	private final String offsetFile;
+	private final String snapshotDir;
+	private final long snapshotIntervalSeconds;
+	private final int snapshotVersionsToKeep;
+
+	private final boolean geocodeLogs;
+	private final String gazetteer;
+	private final String googleApiKey;
+	private final String geocodeCacheFile;
+	private final int geocodeCacheSlots;
+	private final int geocodeMemoryCacheSize;
+	private final int maxConcurrentGeocodeLookups;
+
+	private final int metricsPort;
+
+	private final int traceSampleEvery;
+	private final Level traceLevel;
+
+	/**
+	 * Settings from the defaults overridden by the given values. Throws an IllegalArgumentException that lists every
+	 * unknown name and invalid value.
+	 */
+	public EngineConfig(Map<String, String> overrides) {
+		List<String> errors = new ArrayList<>();
+
+		values = new LinkedHashMap<>(DEFAULTS);
+		for (Map.Entry<String, String> override : overrides.entrySet()) {
+			if (!DEFAULTS.containsKey(override.getKey())) {
+				errors.add("Unknown setting " + override.getKey());
+			} else {
+				values.put(override.getKey(), override.getValue().trim());
+			}
+		}
+
+		sparkMaster = string("sparkMaster", errors);
+		directSparkMaster = string("directSparkMaster", errors);
+		batchIntervalMillis = longValue("batchIntervalMillis", 1, Long.MAX_VALUE, errors);
+		maxRatePerPartition = intValue("maxRatePerPartition", 1, Integer.MAX_VALUE, errors);
+		checkpointDir = string("checkpointDir", errors);
+
+		windowSeconds = longValue("windowSeconds", 1, Long.MAX_VALUE, errors);
+		windowMaxRows = longValue("windowMaxRows", 1, Long.MAX_VALUE, errors);
+		windowMaxSegments = intValue("windowMaxSegments", 2, Integer.MAX_VALUE, errors);
+
+		minBatchRows = longValue("minBatchRows", 0, Long.MAX_VALUE, errors);
+		maxDeferSeconds = longValue("maxDeferSeconds", 0, Long.MAX_VALUE, errors);
+		//Rows waiting for the ML stages would otherwise be evicted from the window before they are processed.
+		if (maxDeferSeconds >= windowSeconds) {
+			errors.add("maxDeferSeconds has to be less than windowSeconds (" + windowSeconds + ") but is " + maxDeferSeconds);
+		}
+
+		classifiers = string("classifiers", errors);
+		classifierIterations = intValue("classifierIterations", 1, Integer.MAX_VALUE, errors);
+		classifierStepSize = doubleValue("classifierStepSize", Double.MIN_VALUE, Double.MAX_VALUE, errors);
+		//MLlib does not grow trees deeper than 30.
+		decisionTreeMaxDepth = intValue("decisionTreeMaxDepth", 0, 30, errors);
+		decisionTreeMaxBins = intValue("decisionTreeMaxBins", 2, Integer.MAX_VALUE, errors);
+		//The clusters are the classes of the classifiers, which need at least two.
+		clusters = intValue("clusters", 2, Integer.MAX_VALUE, errors);
+		kmeansDecayFactor = doubleValue("kmeansDecayFactor", 0, 1, errors);
+		maxCategoriesPerColumn = intValue("maxCategoriesPerColumn", 1, Integer.MAX_VALUE, errors);
+		ruleMinSupport = longValue("ruleMinSupport", 0, Long.MAX_VALUE, errors);
+		ruleMinConfidence = doubleValue("ruleMinConfidence", 0, 1, errors);
+
+		outputDir = string("outputDir", errors);
+		ruleFileFormat = oneOf("ruleFileFormat", errors, CSV_RULE_FILE_FORMAT, COLUMNAR_RULE_FILE_FORMAT);
+		offsetFile = string("offsetFile", errors);
+		snapshotDir = string("snapshotDir", errors);
+		snapshotIntervalSeconds = longValue("snapshotIntervalSeconds", 1, Long.MAX_VALUE, errors);
+		snapshotVersionsToKeep = intValue("snapshotVersionsToKeep", 1, Integer.MAX_VALUE, errors);
+
+		geocodeLogs = booleanValue("geocodeLogs", errors);
+		gazetteer = string("gazetteer", errors);
+		googleApiKey = values.get("googleApiKey");
+		geocodeCacheFile = string("geocodeCacheFile", errors);
+		geocodeCacheSlots = intValue("geocodeCacheSlots", 1, MappedGeocodeCache.MAX_SLOTS, errors);
+		if (Integer.bitCount(geocodeCacheSlots) > 1) {
+			errors.add("geocodeCacheSlots has to be a power of two but is " + geocodeCacheSlots);
+		}
+		geocodeMemoryCacheSize = intValue("geocodeMemoryCacheSize", 1, Integer.MAX_VALUE, errors);
+		maxConcurrentGeocodeLookups = intValue("maxConcurrentGeocodeLookups", 1, Integer.MAX_VALUE, errors);
+
+		metricsPort = intValue("metricsPort", 0, 65535, errors);
+
+		traceSampleEvery = intValue("traceSampleEvery", 0, Integer.MAX_VALUE, errors);
+		traceLevel = Level.valueOf(oneOf("traceLevel", errors, Level.DEBUG.name(), Level.TRACE.name(), Level.INFO.name(),
+				Level.WARN.name(), Level.ERROR.name()));
+
+		if (!errors.isEmpty()) {
+			throw new IllegalArgumentException("Invalid configuration:\n  " + String.join("\n  ", errors));
+		}
+	}
+
+	/**
+	 * All defaults.
+	 */
+	public static EngineConfig defaults() {
+		return new EngineConfig(Collections.<String, String>emptyMap());
+	}
+
+	/**
+	 * Settings from the properties file given with --config=... (or -Dconfig=...), system properties and the
+	 * --<name>=<value> arguments, see the class comment.
+	 */
+	public static EngineConfig load(String[] args) throws IOException {
+		Map<String, String> options = options(args);
+		Map<String, String> overrides = new LinkedHashMap<>();
+
+		String configFile = options.containsKey(CONFIG_OPTION) ? options.remove(CONFIG_OPTION) : System.getProperty(CONFIG_OPTION);
+		if (configFile != null) {
+			overrides.putAll(readProperties(Paths.get(configFile)));
+		}
+
+		for (String name : DEFAULTS.keySet()) {
+			String value = System.getProperty(name);
+
+			if (value != null) {
+				overrides.put(name, value);
+			}
+		}
+
+		overrides.putAll(options);
+
+		return new EngineConfig(overrides);
+	}
+
+	/**
+	 * The arguments that are not --<name>=<value> settings, e.g. the brokers and topics.
+	 */
+	public static String[] positionalArguments(String[] args) {
+		List<String> positional = new ArrayList<>();
+
+		for (String arg : args) {
+			if (!isOption(arg)) {
+				positional.add(arg);
+			}
+		}
+
+		return positional.toArray(new String[positional.size()]);
+	}
+
+	public static Map<String, String> readProperties(Path file) throws IOException {
+		Properties properties = new Properties();
+
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+
+		Map<String, String> values = new LinkedHashMap<>();
+		for (String name : properties.stringPropertyNames()) {
+			values.put(name, properties.getProperty(name));
+		}
+
+		return values;
+	}
+
+	private static Map<String, String> options(String[] args) {
+		Map<String, String> options = new LinkedHashMap<>();
+
+		for (String arg : args) {
+			if (isOption(arg)) {
+				int separator = arg.indexOf('=');
+				options.put(arg.substring(OPTION_PREFIX.length(), separator), arg.substring(separator + 1));
+			}
+		}
+
+		return options;
+	}
+
+	//Flags without a value (like --direct) are positional.
+	private static boolean isOption(String arg) {
+		return arg.startsWith(OPTION_PREFIX) && arg.indexOf('=') > OPTION_PREFIX.length();
+	}
+
+	private String string(String name, List<String> errors) {
+		String value = values.get(name);
+
+		if (value.isEmpty()) {
+			errors.add(name + " can't be empty");
+		}
+
+		return value;
+	}
+
+	private String oneOf(String name, List<String> errors, String... allowed) {
+		String value = values.get(name);
+
+		for (String option : allowed) {
+			if (option.equals(value)) {
+				return value;
+			}
+		}
+
+		errors.add(name + " has to be one of " + String.join(", ", allowed) + " but is " + value);
+		return allowed[0];
+	}
+
+	private long longValue(String name, long min, long max, List<String> errors) {
+		try {
+			long value = Long.parseLong(values.get(name));
+
+			if (value < min || value > max) {
+				errors.add(name + " has to be between " + min + " and " + max + " but is " + value);
+			}
+
+			return value;
+		} catch (NumberFormatException e) {
+			errors.add(name + " has to be a whole number but is " + values.get(name));
+			return 0;
+		}
+	}
+
+	private int intValue(String name, int min, int max, List<String> errors) {
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, longValue(name, min, max, errors)));
+	}
+
+	private double doubleValue(String name, double min, double max, List<String> errors) {
+		try {
+			double value = Double.parseDouble(values.get(name));
+
+			if (!(value >= min && value <= max)) {
+				errors.add(name + " has to be between " + min + " and " + max + " but is " + value);
+			}
+
+			return value;
+		} catch (NumberFormatException e) {
+			errors.add(name + " has to be a number but is " + values.get(name));
+			return 0;
+		}
+	}
+
+	private boolean booleanValue(String name, List<String> errors) {
+		String value = values.get(name);
+
+		if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+			errors.add(name + " has to be true or false but is " + value);
+		}
+
+		return Boolean.parseBoolean(value);
+	}
+
+	/**
+	 * Every setting with its value, in the order of the defaults.
+	 */
+	public Map<String, String> getValues() {
+		return Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * The settings for the log, with the Google API key left out.
+	 */
+	@Override
+	public String toString() {
+		Map<String, String> printable = new LinkedHashMap<>(values);
+		if (!googleApiKey.isEmpty()) {
+			printable.put("googleApiKey", "***");
+		}
+
+		return printable.toString();
+	}
+
+	public String getSparkMaster() {
+		return sparkMaster;
+	}
+
+	public String getDirectSparkMaster() {
+		return directSparkMaster;
+	}
+
+	public long getBatchIntervalMillis() {
+		return batchIntervalMillis;
+	}
+
+	public int getMaxRatePerPartition() {
+		return maxRatePerPartition;
+	}
+
+	public String getCheckpointDir() {
+		return checkpointDir;
+	}
+
+	public long getWindowSeconds() {
+		return windowSeconds;
+	}
+
+	public long getWindowMaxRows() {
+		return windowMaxRows;
+	}
+
+	public int getWindowMaxSegments() {
+		return windowMaxSegments;
+	}
+
+	public long getMinBatchRows() {
+		return minBatchRows;
+	}
+
+	public long getMaxDeferSeconds() {
+		return maxDeferSeconds;
+	}
+
+	public String getClassifiers() {
+		return classifiers;
+	}
+
+	public int getClassifierIterations() {
+		return classifierIterations;
+	}
+
+	public double getClassifierStepSize() {
+		return classifierStepSize;
+	}
+
+	public int getDecisionTreeMaxDepth() {
+		return decisionTreeMaxDepth;
+	}
+
+	public int getDecisionTreeMaxBins() {
+		return decisionTreeMaxBins;
+	}
+
+	public int getClusters() {
+		return clusters;
+	}
+
+	public double getKmeansDecayFactor() {
+		return kmeansDecayFactor;
+	}
+
+	public int getMaxCategoriesPerColumn() {
+		return maxCategoriesPerColumn;
+	}
+
+	public long getRuleMinSupport() {
+		return ruleMinSupport;
+	}
+
+	public double getRuleMinConfidence() {
+		return ruleMinConfidence;
+	}
+
+	public String getOutputDir() {
+		return outputDir;
+	}
+
+	public String getRuleFileFormat() {
+		return ruleFileFormat;
+	}
+
+	public String getOffsetFile() {
+		return offsetFile;
+	}
+
+	public String getSnapshotDir() {
+		return snapshotDir;
+	}
+
+	public long getSnapshotIntervalSeconds() {
+		return snapshotIntervalSeconds;
+	}
+
+	public int getSnapshotVersionsToKeep() {
+		return snapshotVersionsToKeep;
+	}
+
+	public boolean isGeocodeLogs() {
+		return geocodeLogs;
+	}
+
+	public String getGazetteer() {
+		return gazetteer;
+	}
+
+	/**
+	 * Empty if Google's Geocoding API is not to be used.
+	 */
+	public String getGoogleApiKey() {
+		return googleApiKey;
+	}
+
+	public String getGeocodeCacheFile() {
+		return geocodeCacheFile;
+	}
+
+	public int getGeocodeCacheSlots() {
+		return geocodeCacheSlots;
+	}
+
+	public int getGeocodeMemoryCacheSize() {
+		return geocodeMemoryCacheSize;
+	}
+
+	public int getMaxConcurrentGeocodeLookups() {
+		return maxConcurrentGeocodeLookups;
+	}
+
+	public int getMetricsPort() {
+		return metricsPort;
+	}
+
+	/**
+	 * One in every traceSampleEvery records of the classification map functions is logged, 0 to only count them.
+	 */
+	public int getTraceSampleEvery() {
+		return traceSampleEvery;
+	}
+
+	public Level getTraceLevel() {
+		return traceLevel;
+	}
+}
@@ -1,74 +1,229 @@
 package converter;
 
-import org.apache.commons.lang.StringUtils;
-
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+/**
+ * Writes flattened JSON rows as CSV.
+ *
+ * Rows are streamed: they are taken one at a time from an iterator and appended to a reusable buffer that is handed
+ * to the Writer whenever it fills up, so neither the rows nor the output have to fit in memory. The header is either
+ * given up front or, for rows that can be iterated twice, the sorted union of the keys of all rows (two passes).
+ *
+ * Fields are escaped as in RFC 4180: fields with a comma, a quote or a line break are quoted, with quotes doubled.
+ */
 public class CsvOutputWriter {
+	private static final int BUFFER_SIZE = 64 * 1024;
 
 	public String writeAsCsvString(List<Map<String, String>> flatJson) throws FileNotFoundException {
-		Set<String> headers = collectHeaders(flatJson);
-		String output = StringUtils.join(headers.toArray(), ",") + "\n";
-		for (Map<String, String> map : flatJson) {
-			output = output + getCommaSeperatedRow(headers, map) + "\n";
+		StringWriter output = new StringWriter();
+
+		try {
+			write(flatJson, output);
+		} catch (IOException e) {
+			//A StringWriter does not throw.
+			throw new IllegalStateException(e);
 		}
-		return output;
+
+		return output.toString();
 	}
 
-	public void writeAsCsvFile(List<Map<String, String>> flatJson, String fileName) throws FileNotFoundException {
-		Set<String> headers = collectHeaders(flatJson);
-		String output = StringUtils.join(headers.toArray(), ",") + "\n";
-		for (Map<String, String> map : flatJson) {
-			output = output + getCommaSeperatedRow(headers, map) + "\n";
+	/**
+	 * Writes the rows to the file. A write that fails halfway, e.g. on a full disk, is thrown rather than leaving a
+	 * partial file behind silently.
+	 */
+	public void writeAsCsvFile(List<Map<String, String>> flatJson, String fileName) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(fileName)), StandardCharsets.UTF_8)) {
+			write(flatJson, writer);
 		}
-		writeToFile(output, fileName);
 	}
 
-	private void writeToFile(String output, String fileName) throws FileNotFoundException {
-		BufferedWriter writer = null;
-		try {
-			writer = new BufferedWriter(new FileWriter(fileName));
-			writer.write(output);
-		} catch (IOException e) {
-			e.printStackTrace();
-		} finally {
-			close(writer);
-		}
+	/**
+	 * Writes the rows with the sorted union of their keys as the header. The rows are iterated twice, once for the
+	 * header and once to write them. Returns the number of rows written.
+	 */
+	public long write(Iterable<Map<String, String>> rows, Writer out) throws IOException {
+		return write(rows.iterator(), collectHeaders(rows), out);
 	}
 
-	private void close(BufferedWriter writer) {
-		try {
-			if (writer != null) {
-				writer.close();
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
+	/**
+	 * Writes the rows with a fixed header, keys of the rows that are not in the header are left out. The Writer is
+	 * flushed, not closed. Returns the number of rows written.
+	 */
+	public long write(Iterator<Map<String, String>> rows, Collection<String> headers, Writer out) throws IOException {
+		RowWriter rowWriter = newRowWriter(headers, out);
+
+		while (rows.hasNext()) {
+			rowWriter.writeRow(rows.next());
 		}
+		rowWriter.flush();
+
+		return rowWriter.getNoOfRows();
 	}
 
-	private String getCommaSeperatedRow(Set<String> headers, Map<String, String> map) {
-		List<String> items = new ArrayList<String>();
-		for (String header : headers) {
-			String value = map.get(header) == null ? "" : map.get(header).replace(",", "");
-			items.add(value);
-		}
-		return StringUtils.join(items.toArray(), ",");
+	/**
+	 * Same as writing to a Writer, as UTF-8. The channel is not closed.
+	 */
+	public long write(Iterator<Map<String, String>> rows, Collection<String> headers, WritableByteChannel out) throws IOException {
+		return write(rows, headers, Channels.newWriter(out, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE));
 	}
 
-	private Set<String> collectHeaders(List<Map<String, String>> flatJson) {
+	/**
+	 * Writes the header line and returns a writer for the rows, for rows that are produced one at a time.
+	 */
+	public RowWriter newRowWriter(Collection<String> headers, Writer out) throws IOException {
+		return new RowWriter(headers, out, true);
+	}
+
+	/**
+	 * Same, but without the header line, for parts of a CSV that are put together afterwards.
+	 */
+	public RowWriter newRowWriterWithoutHeader(Collection<String> headers, Writer out) throws IOException {
+		return new RowWriter(headers, out, false);
+	}
+
+	/**
+	 * The sorted union of the keys of all rows.
+	 */
+	public static Set<String> collectHeaders(Iterable<Map<String, String>> rows) {
 		Set<String> headers = new TreeSet<String>();
-		for (Map<String, String> map : flatJson) {
-			headers.addAll(map.keySet());
+		for (Map<String, String> row : rows) {
+			headers.addAll(row.keySet());
 		}
 		return headers;
 	}
-}
 
+	/**
+	 * Appends the value as a CSV field, escaped as in RFC 4180. Null is an empty field. Shared with sink.CsvRowFormat
+	 * so that both kinds of CSV files are escaped alike.
+	 */
+	public static void appendField(StringBuilder line, String value) {
+		if (value == null) {
+			return;
+		}
+
+		boolean needsQuotes = false;
+		for (int i = 0; i < value.length() && !needsQuotes; i++) {
+			char c = value.charAt(i);
+			needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+
+		if (!needsQuotes) {
+			line.append(value);
+			return;
+		}
+
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			if (c == '"') {
+				line.append('"');
+			}
+			line.append(c);
+		}
+		line.append('"');
+	}
+
+	/**
+	 * Writes rows under a header through a buffer that is reused for every row.
+	 */
+	public static class RowWriter implements Flushable {
+		private final String[] headers;
+		private final Writer out;
+		private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+		private char[] chars = new char[BUFFER_SIZE];
+		private long noOfRows;
+
+		private RowWriter(Collection<String> headers, Writer out, boolean writeHeader) throws IOException {
+			this.headers = headers.toArray(new String[headers.size()]);
+			this.out = out;
+
+			if (writeHeader) {
+				for (int i = 0; i < this.headers.length; i++) {
+					if (i > 0) {
+						buffer.append(',');
+					}
+					appendField(buffer, this.headers[i]);
+				}
+				buffer.append('\n');
+			}
+		}
+
+		public void writeRow(Map<String, String> row) throws IOException {
+			for (int i = 0; i < headers.length; i++) {
+				if (i > 0) {
+					buffer.append(',');
+				}
+				appendField(buffer, row.get(headers[i]));
+			}
+
+			endLine();
+		}
+
+		/**
+		 * Writes a row whose values are already in the order of the header.
+		 */
+		public void writeLine(String[] values) throws IOException {
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					buffer.append(',');
+				}
+				appendField(buffer, values[i]);
+			}
+
+			endLine();
+		}
+
+		private void endLine() throws IOException {
+			buffer.append('\n');
+			noOfRows++;
+
+			if (buffer.length() >= BUFFER_SIZE) {
+				drain();
+			}
+		}
+
+		private void drain() throws IOException {
+			if (chars.length < buffer.length()) {
+				chars = new char[buffer.length()];
+			}
+
+			buffer.getChars(0, buffer.length(), chars, 0);
+			out.write(chars, 0, buffer.length());
+			buffer.setLength(0);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			drain();
+			out.flush();
+		}
+
+		/**
+		 * Rows written so far, not counting the header.
+		 */
+		public long getNoOfRows() {
+			return noOfRows;
+		}
+
+		public String[] getHeaders() {
+			return headers.clone();
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package converter;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Flattens JSON into rows of key paths and values with a pull parser, one row at a time.
+ *
+ * The input is a single object, an array of objects, or any number of objects one after the other (newline delimited
+ * JSON like Logstash dumps), and every object becomes one row. Objects are flattened the same way as
+ * JsonProcessor always did: nested objects add their fields without a prefix, arrays prefix their elements with the
+ * key of the array and the position of the element (starting at 1), and null values are left out.
+ *
+ * Key paths are interned, so the rows of a large export share the same key strings and repeated paths are found
+ * without building them again. Values are taken as they are written, numbers included.
+ */
+public class JsonFlattener {
+	//Upper bound for the interned key paths, so that documents with arbitrary keys can't grow the cache forever.
+	private static final int MAX_INTERNED_PATHS = 10000;
+
+	private final Map<String, Map<String, String>> pathsByPrefix = new HashMap<>();
+	private int noOfInternedPaths;
+
+	/**
+	 * Gets the rows of a whole document.
+	 */
+	public interface RowHandler {
+		void onRow(Map<String, String> row) throws IOException;
+	}
+
+	/**
+	 * Hands every row to the handler as soon as it is read. Returns the number of rows.
+	 */
+	public long flatten(Reader json, RowHandler handler) throws IOException {
+		Rows rows = new Rows(json);
+		long noOfRows = 0;
+
+		while (rows.hasNextRow()) {
+			handler.onRow(rows.nextRow());
+			noOfRows++;
+		}
+
+		return noOfRows;
+	}
+
+	/**
+	 * The rows of a document, read as they are iterated. Malformed JSON surfaces as an IllegalStateException with
+	 * the IOException as its cause.
+	 */
+	public Iterator<Map<String, String>> rows(Reader json) {
+		final Rows rows = new Rows(json);
+
+		return new Iterator<Map<String, String>>() {
+			@Override
+			public boolean hasNext() {
+				try {
+					return rows.hasNextRow();
+				} catch (IOException e) {
+					throw new IllegalStateException("JSON might be malformed", e);
+				}
+			}
+
+			@Override
+			public Map<String, String> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				try {
+					return rows.nextRow();
+				} catch (IOException e) {
+					throw new IllegalStateException("JSON might be malformed", e);
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Flattens the object the reader is at into a row.
+	 */
+	public Map<String, String> flattenObject(JsonReader reader) throws IOException {
+		Map<String, String> row = new HashMap<>();
+
+		flattenObject(reader, row, "");
+
+		return row;
+	}
+
+	private void flattenObject(JsonReader reader, Map<String, String> row, String prefix) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String key = reader.nextName();
+
+			switch (reader.peek()) {
+				case BEGIN_OBJECT:
+					flattenObject(reader, row, prefix);
+					break;
+				case BEGIN_ARRAY:
+					flattenArray(reader, row, intern("", key));
+					break;
+				case NULL:
+					reader.nextNull();
+					break;
+				case BOOLEAN:
+					row.put(intern(prefix, key), String.valueOf(reader.nextBoolean()));
+					break;
+				default:
+					String value = reader.nextString();
+					if (!value.equals("null")) {
+						row.put(intern(prefix, key), value);
+					}
+			}
+		}
+		reader.endObject();
+	}
+
+	private void flattenArray(JsonReader reader, Map<String, String> row, String prefix) throws IOException {
+		int index = 0;
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			switch (reader.peek()) {
+				case BEGIN_OBJECT:
+					flattenObject(reader, row, intern(prefix, String.valueOf(index + 1)));
+					break;
+				case BEGIN_ARRAY:
+					//Nested arrays are prefixed with the position starting at 0, as they always were.
+					flattenArray(reader, row, intern(prefix, String.valueOf(index)));
+					break;
+				case NULL:
+					reader.nextNull();
+					row.put(intern(prefix, String.valueOf(index + 1)), "null");
+					break;
+				case BOOLEAN:
+					row.put(intern(prefix, String.valueOf(index + 1)), String.valueOf(reader.nextBoolean()));
+					break;
+				default:
+					row.put(intern(prefix, String.valueOf(index + 1)), reader.nextString());
+			}
+
+			index++;
+		}
+		reader.endArray();
+	}
+
+	/**
+	 * prefix + key, the same instance every time it comes up.
+	 */
+	private String intern(String prefix, String key) {
+		Map<String, String> paths = pathsByPrefix.get(prefix);
+
+		if (paths == null) {
+			if (noOfInternedPaths >= MAX_INTERNED_PATHS) {
+				return prefix + key;
+			}
+
+			paths = new HashMap<>();
+			pathsByPrefix.put(prefix, paths);
+		}
+
+		String path = paths.get(key);
+
+		if (path == null) {
+			path = prefix.isEmpty() ? key : prefix + key;
+
+			if (noOfInternedPaths < MAX_INTERNED_PATHS) {
+				paths.put(key, path);
+				noOfInternedPaths++;
+			}
+		}
+
+		return path;
+	}
+
+	/**
+	 * Steps through the objects of a document: a single object, the objects of a top level array, or a sequence of
+	 * top level objects.
+	 */
+	private class Rows {
+		private final JsonReader reader;
+		private boolean inArray;
+		private boolean started;
+
+		private Rows(Reader json) {
+			this.reader = new JsonReader(json);
+			//Lenient to allow more than one top level value.
+			this.reader.setLenient(true);
+		}
+
+		private boolean hasNextRow() throws IOException {
+			if (!started) {
+				started = true;
+
+				if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+					reader.beginArray();
+					inArray = true;
+				}
+			}
+
+			if (inArray) {
+				if (reader.hasNext()) {
+					return true;
+				}
+
+				reader.endArray();
+				inArray = false;
+			}
+
+			return reader.peek() != JsonToken.END_DOCUMENT;
+		}
+
+		private Map<String, String> nextRow() throws IOException {
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				throw new MalformedJsonException("Expected an object but was " + reader.peek());
+			}
+
+			return flattenObject(reader);
+		}
+	}
+}
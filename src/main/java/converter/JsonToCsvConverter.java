@@ -1,8 +1,23 @@
 package converter;
 
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+/**
+ * Converts JSON to CSV without holding the rows in memory: the JSON is flattened row by row and every row is written
+ * as soon as it is read. Without a given header the JSON is read twice, first for the union of its keys.
+ */
 public class JsonToCsvConverter {
 	private JsonProcessor jsonProcessor;
 	private CsvOutputWriter csvOutputWriter;
@@ -13,20 +28,73 @@ public class JsonToCsvConverter {
 	}
 
 	public String createCsvString(String jsonString) throws Exception {
-		List<Map<String, String>> flatJson =jsonProcessor.parseJson(jsonString);
+		StringWriter csv = new StringWriter();
 
-		return csvOutputWriter.writeAsCsvString(flatJson);
+		convert(new StringReader(jsonString), collectHeaders(new StringReader(jsonString)), csv);
+
+		return csv.toString();
 	}
 
 	public String createCsvFile(String jsonString) throws Exception {
-		List<Map<String, String>> flatJson =jsonProcessor.parseJson(jsonString);
-
 		String fileName = "test.csv";
-		csvOutputWriter.writeAsCsvFile(flatJson, fileName);
+
+		try (Writer csv = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8)) {
+			convert(new StringReader(jsonString), collectHeaders(new StringReader(jsonString)), csv);
+		}
 
 		return fileName;
 	}
 
+	/**
+	 * Converts a JSON file to a CSV file with the union of the keys of all rows as the header. Returns the number of
+	 * rows.
+	 */
+	public long convertFile(String jsonFile, String csvFile) throws IOException {
+		Set<String> headers;
+
+		try (Reader json = Files.newBufferedReader(Paths.get(jsonFile), StandardCharsets.UTF_8)) {
+			headers = collectHeaders(json);
+		}
+
+		try (Reader json = Files.newBufferedReader(Paths.get(jsonFile), StandardCharsets.UTF_8);
+		     BufferedWriter csv = Files.newBufferedWriter(Paths.get(csvFile), StandardCharsets.UTF_8)) {
+			return convert(json, headers, csv);
+		}
+	}
+
+	/**
+	 * Converts with a fixed header, in a single pass. Returns the number of rows.
+	 */
+	public long convert(Reader json, Collection<String> headers, Writer csv) throws IOException {
+		final CsvOutputWriter.RowWriter rowWriter = csvOutputWriter.newRowWriter(headers, csv);
+
+		jsonProcessor.getJsonFlattener().flatten(json, new JsonFlattener.RowHandler() {
+			@Override
+			public void onRow(Map<String, String> row) throws IOException {
+				rowWriter.writeRow(row);
+			}
+		});
+		rowWriter.flush();
+
+		return rowWriter.getNoOfRows();
+	}
+
+	/**
+	 * The sorted union of the keys of all rows, without keeping the rows.
+	 */
+	public Set<String> collectHeaders(Reader json) throws IOException {
+		final Set<String> headers = new TreeSet<String>();
+
+		jsonProcessor.getJsonFlattener().flatten(json, new JsonFlattener.RowHandler() {
+			@Override
+			public void onRow(Map<String, String> row) {
+				headers.addAll(row.keySet());
+			}
+		});
+
+		return headers;
+	}
+
 	public JsonProcessor getJsonProcessor() {
 		return jsonProcessor;
 	}
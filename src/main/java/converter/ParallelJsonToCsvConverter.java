@@ -0,0 +1,313 @@
+package converter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Converts newline delimited JSON (e.g. a Logstash dump) to CSV on all cores.
+ *
+ * The input file is split into chunks that end at a line break, and every chunk is memory-mapped, flattened and
+ * written as CSV by its own task on a fork-join pool. The CSV of the chunks is appended to the output in the order of
+ * the chunks, with only a few chunks in flight at a time, so memory is bounded by the chunk size and the parallelism
+ * and not by the size of the file.
+ *
+ * The header is the union of the keys of a sample of the records: the first records of chunks spread evenly over
+ * the file. Keys that only occur outside of the sample are left out and counted. A file that is one JSON array can't
+ * be split at line breaks and is converted sequentially by JsonToCsvConverter instead.
+ */
+public class ParallelJsonToCsvConverter {
+	private static final Logger logger = LoggerFactory.getLogger(ParallelJsonToCsvConverter.class);
+
+	private static final long DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	//How many chunks are sampled for the header and how many records of each.
+	private static final int SAMPLED_CHUNKS = 32;
+	private static final int SAMPLED_RECORDS_PER_CHUNK = 1000;
+
+	private final int parallelism;
+	private final long chunkSize;
+
+	public ParallelJsonToCsvConverter(int parallelism, long chunkSize) {
+		checkArgument(parallelism > 0, "Parallelism has to be positive");
+		checkArgument(chunkSize > 0 && chunkSize <= Integer.MAX_VALUE, "Chunk size has to be between 1 and 2GB");
+
+		this.parallelism = parallelism;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Usage:  ParallelJsonToCsvConverter <jsonFile> <csvFile> [<parallelism>]
+	 *   <jsonFile> is a file with one JSON object per line
+	 *   <csvFile> is where the CSV is written to
+	 *   <parallelism> is the number of chunks converted at a time, the number of cores by default
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: ParallelJsonToCsvConverter <jsonFile> <csvFile> [<parallelism>]");
+			System.exit(1);
+		}
+
+		int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		long start = System.currentTimeMillis();
+		long noOfRows = new ParallelJsonToCsvConverter(parallelism, DEFAULT_CHUNK_SIZE).convert(args[0], args[1]);
+
+		System.out.println("Converted " + noOfRows + " records in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Returns the number of records written. The CSV file is replaced atomically once it is complete.
+	 */
+	public long convert(String jsonFile, String csvFile) throws IOException {
+		Path input = Paths.get(jsonFile);
+		Path output = Paths.get(csvFile);
+		Path tempOutput = output.resolveSibling("." + output.getFileName() + ".tmp");
+
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+			if (startsWithArray(in)) {
+				logger.info(jsonFile + " is a single JSON array, converting it sequentially");
+				return new JsonToCsvConverter(new JsonProcessor(), new CsvOutputWriter()).convertFile(jsonFile, csvFile);
+			}
+
+			List<long[]> chunks = split(in);
+			Set<String> headers = sampleHeaders(in, chunks);
+			long noOfRows;
+
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try (FileChannel out = FileChannel.open(tempOutput, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				noOfRows = convertChunks(pool, in, chunks, headers, out);
+			} finally {
+				pool.shutdown();
+			}
+
+			Files.move(tempOutput, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			logger.info("Converted " + noOfRows + " records in " + chunks.size() + " chunks of " + jsonFile + " with "
+					+ headers.size() + " columns");
+
+			return noOfRows;
+		} finally {
+			Files.deleteIfExists(tempOutput);
+		}
+	}
+
+	private long convertChunks(ForkJoinPool pool, FileChannel in, List<long[]> chunks, Set<String> headers,
+	                           FileChannel out) throws IOException {
+		CsvOutputWriter csvOutputWriter = new CsvOutputWriter();
+		CharArrayWriter headerLine = new CharArrayWriter();
+		csvOutputWriter.newRowWriter(headers, headerLine).flush();
+		writeFully(out, StandardCharsets.UTF_8.encode(headerLine.toString()));
+
+		Deque<ForkJoinTask<ChunkResult>> inFlight = new ArrayDeque<>();
+		long noOfRows = 0;
+		long droppedFields = 0;
+
+		for (long[] chunk : chunks) {
+			//Enough chunks in flight to keep every worker busy while the oldest one is written.
+			if (inFlight.size() >= 2 * parallelism) {
+				ChunkResult result = inFlight.removeFirst().join();
+				writeFully(out, ByteBuffer.wrap(result.csv));
+				noOfRows += result.noOfRows;
+				droppedFields += result.droppedFields;
+			}
+
+			inFlight.addLast(pool.submit(new ChunkConversion(in, chunk[0], chunk[1], headers, csvOutputWriter)));
+		}
+
+		while (!inFlight.isEmpty()) {
+			ChunkResult result = inFlight.removeFirst().join();
+			writeFully(out, ByteBuffer.wrap(result.csv));
+			noOfRows += result.noOfRows;
+			droppedFields += result.droppedFields;
+		}
+
+		if (droppedFields > 0) {
+			logger.warn(droppedFields + " fields were left out because their keys were not in the sampled header");
+		}
+
+		return noOfRows;
+	}
+
+	/**
+	 * Start and end of every chunk, each ending right after a line break (or at the end of the file).
+	 */
+	private List<long[]> split(FileChannel in) throws IOException {
+		List<long[]> chunks = new ArrayList<>();
+		long size = in.size();
+		long start = 0;
+		ByteBuffer scan = ByteBuffer.allocate(64 * 1024);
+
+		while (start < size) {
+			long end = Math.min(start + chunkSize, size);
+
+			//Move the end forward to just after the next line break. A record longer than the scan buffer only
+			//takes more reads.
+			while (end < size) {
+				scan.clear();
+				int read = in.read(scan, end);
+				int newline = -1;
+
+				for (int i = 0; i < read && newline < 0; i++) {
+					if (scan.get(i) == '\n') {
+						newline = i;
+					}
+				}
+
+				if (newline >= 0) {
+					end += newline + 1;
+					break;
+				}
+				end += Math.max(read, 0);
+			}
+
+			checkArgument(end - start <= Integer.MAX_VALUE, "A single record is larger than 2GB");
+
+			chunks.add(new long[]{start, end});
+			start = end;
+		}
+
+		return chunks;
+	}
+
+	private Set<String> sampleHeaders(FileChannel in, List<long[]> chunks) throws IOException {
+		Set<String> headers = new TreeSet<>();
+		JsonFlattener jsonFlattener = new JsonFlattener();
+		int step = Math.max(1, chunks.size() / SAMPLED_CHUNKS);
+
+		for (int i = 0; i < chunks.size(); i += step) {
+			long[] chunk = chunks.get(i);
+			long sampleEnd = Math.min(chunk[1], chunk[0] + 1024 * 1024);
+			String sample = decode(in, chunk[0], sampleEnd);
+
+			//Only whole records of the sample.
+			int lastNewline = sample.lastIndexOf('\n');
+			if (sampleEnd < chunk[1] && lastNewline >= 0) {
+				sample = sample.substring(0, lastNewline + 1);
+			}
+
+			Iterator<Map<String, String>> rows = jsonFlattener.rows(new StringReader(sample));
+			for (int record = 0; record < SAMPLED_RECORDS_PER_CHUNK && rows.hasNext(); record++) {
+				headers.addAll(rows.next().keySet());
+			}
+		}
+
+		return headers;
+	}
+
+	private static boolean startsWithArray(FileChannel in) throws IOException {
+		ByteBuffer start = ByteBuffer.allocate(4096);
+		int read = in.read(start, 0);
+
+		for (int i = 0; i < read; i++) {
+			byte b = start.get(i);
+
+			if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+				return b == '[';
+			}
+		}
+
+		return false;
+	}
+
+	private static String decode(FileChannel in, long start, long end) throws IOException {
+		MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+
+		return StandardCharsets.UTF_8.decode(mapped).toString();
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining()) {
+			out.write(bytes);
+		}
+	}
+
+	private static class ChunkResult {
+		private final byte[] csv;
+		private final long noOfRows;
+		private final long droppedFields;
+
+		private ChunkResult(byte[] csv, long noOfRows, long droppedFields) {
+			this.csv = csv;
+			this.noOfRows = noOfRows;
+			this.droppedFields = droppedFields;
+		}
+	}
+
+	/**
+	 * Maps, flattens and writes one chunk. Every task has its own flattener, they are not thread safe.
+	 */
+	private static class ChunkConversion implements Callable<ChunkResult> {
+		private final FileChannel in;
+		private final long start;
+		private final long end;
+		private final Set<String> headers;
+		private final CsvOutputWriter csvOutputWriter;
+
+		private ChunkConversion(FileChannel in, long start, long end, Set<String> headers, CsvOutputWriter csvOutputWriter) {
+			this.in = in;
+			this.start = start;
+			this.end = end;
+			this.headers = headers;
+			this.csvOutputWriter = csvOutputWriter;
+		}
+
+		@Override
+		public ChunkResult call() throws IOException {
+			Reader json = new StringReader(decode(in, start, end));
+			CharArrayWriter csv = new CharArrayWriter((int) Math.min(Integer.MAX_VALUE, (end - start) / 2));
+			final CsvOutputWriter.RowWriter rowWriter = csvOutputWriter.newRowWriterWithoutHeader(headers, csv);
+			final long[] droppedFields = new long[1];
+
+			try {
+				new JsonFlattener().flatten(json, new JsonFlattener.RowHandler() {
+					@Override
+					public void onRow(Map<String, String> row) throws IOException {
+						if (!headers.containsAll(row.keySet())) {
+							for (String key : row.keySet()) {
+								if (!headers.contains(key)) {
+									droppedFields[0]++;
+								}
+							}
+						}
+
+						rowWriter.writeRow(row);
+					}
+				});
+			} catch (IOException | IllegalStateException e) {
+				throw new IOException("Malformed JSON in the chunk at bytes " + start + " to " + end, e);
+			}
+
+			rowWriter.flush();
+
+			return new ChunkResult(csv.toString().getBytes(StandardCharsets.UTF_8), rowWriter.getNoOfRows(), droppedFields[0]);
+		}
+	}
+}
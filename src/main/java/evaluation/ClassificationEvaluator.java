@@ -0,0 +1,197 @@
+package evaluation;
+
+import org.apache.spark.api.java.JavaRDDLike;
+import org.apache.spark.api.java.function.Function2;
+import scala.Tuple2;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evaluates (prediction, label) pairs with a single aggregation over the data.
+ *
+ * The only thing that is collected from the executors is the confusion matrix (one count per label and prediction)
+ * together with the sum of squared errors. Everything else, including the ROC curve, is worked out from those on the
+ * driver, so evaluating a classifier is one Spark job instead of one per metric. Predictions of the regressions are
+ * not rounded to a class, so for those there is a cell per distinct prediction.
+ */
+public class ClassificationEvaluator implements Serializable {
+
+	/**
+	 * Works for the JavaRDD<Tuple2<Object, Object>> and JavaPairRDD<Double, Double> results of the classifiers, as
+	 * long as prediction and label are numbers.
+	 */
+	public <T extends Tuple2<?, ?>> ClassificationMetrics evaluate(JavaRDDLike<T, ?> valuesAndPreds) {
+		Aggregate aggregate = valuesAndPreds.aggregate(
+				new Aggregate(),
+				new Function2<Aggregate, T, Aggregate>() {
+					@Override
+					public Aggregate call(Aggregate aggregate, T predictionAndLabel) throws Exception {
+						return aggregate.add(
+								((Number) predictionAndLabel._1()).doubleValue(),
+								((Number) predictionAndLabel._2()).doubleValue()
+						);
+					}
+				},
+				new Function2<Aggregate, Aggregate, Aggregate>() {
+					@Override
+					public Aggregate call(Aggregate aggregate, Aggregate other) throws Exception {
+						return aggregate.merge(other);
+					}
+				});
+
+		return toMetrics(aggregate);
+	}
+
+	private ClassificationMetrics toMetrics(Aggregate aggregate) {
+		long count = aggregate.count;
+
+		Map<Double, Long> labelCounts = new HashMap<>();
+		Map<Double, Long> predictionCounts = new HashMap<>();
+		Map<Double, Long> truePositives = new HashMap<>();
+		long correct = 0;
+
+		for (Map.Entry<Tuple2<Double, Double>, Long> cell : aggregate.confusionMatrix.entrySet()) {
+			double label = cell.getKey()._1();
+			double prediction = cell.getKey()._2();
+			long cellCount = cell.getValue();
+
+			increment(labelCounts, label, cellCount);
+			increment(predictionCounts, prediction, cellCount);
+
+			if (label == prediction) {
+				increment(truePositives, label, cellCount);
+				correct += cellCount;
+			}
+		}
+
+		double weightedPrecision = 0.0;
+		double weightedRecall = 0.0;
+		double weightedFMeasure = 0.0;
+
+		for (Map.Entry<Double, Long> labelCount : labelCounts.entrySet()) {
+			double truePositive = getOrZero(truePositives, labelCount.getKey());
+			long predicted = getOrZero(predictionCounts, labelCount.getKey());
+
+			double labelPrecision = predicted == 0 ? 0.0 : truePositive / predicted;
+			double labelRecall = truePositive / labelCount.getValue();
+			double labelFMeasure = labelPrecision + labelRecall == 0 ? 0.0 : 2 * labelPrecision * labelRecall / (labelPrecision + labelRecall);
+
+			double weight = labelCount.getValue() / (double) count;
+			weightedPrecision += weight * labelPrecision;
+			weightedRecall += weight * labelRecall;
+			weightedFMeasure += weight * labelFMeasure;
+		}
+
+		List<Tuple2<Double, Double>> roc = computeRoc(aggregate.confusionMatrix);
+
+		return new ClassificationMetrics(
+				count,
+				correct / (double) count,
+				weightedPrecision,
+				weightedRecall,
+				weightedFMeasure,
+				aggregate.sumOfSquaredErrors / count,
+				computeAreaUnderCurve(roc),
+				roc,
+				aggregate.confusionMatrix
+		);
+	}
+
+	/**
+	 * ROC curve with the prediction as the score, every distinct prediction being a threshold (highest first).
+	 */
+	private List<Tuple2<Double, Double>> computeRoc(Map<Tuple2<Double, Double>, Long> confusionMatrix) {
+		TreeMap<Double, long[]> positivesAndNegativesByScore = new TreeMap<>();
+		long positives = 0;
+		long negatives = 0;
+
+		for (Map.Entry<Tuple2<Double, Double>, Long> cell : confusionMatrix.entrySet()) {
+			long[] positivesAndNegatives = positivesAndNegativesByScore.get(cell.getKey()._2());
+			if (positivesAndNegatives == null) {
+				positivesAndNegatives = new long[2];
+				positivesAndNegativesByScore.put(cell.getKey()._2(), positivesAndNegatives);
+			}
+
+			if (cell.getKey()._1() > 0.5) {
+				positivesAndNegatives[0] += cell.getValue();
+				positives += cell.getValue();
+			} else {
+				positivesAndNegatives[1] += cell.getValue();
+				negatives += cell.getValue();
+			}
+		}
+
+		List<Tuple2<Double, Double>> roc = new ArrayList<>();
+		roc.add(new Tuple2<>(0.0, 0.0));
+
+		long truePositives = 0;
+		long falsePositives = 0;
+		for (long[] positivesAndNegatives : positivesAndNegativesByScore.descendingMap().values()) {
+			truePositives += positivesAndNegatives[0];
+			falsePositives += positivesAndNegatives[1];
+			roc.add(new Tuple2<>(falsePositives / (double) negatives, truePositives / (double) positives));
+		}
+
+		roc.add(new Tuple2<>(1.0, 1.0));
+
+		return roc;
+	}
+
+	private double computeAreaUnderCurve(List<Tuple2<Double, Double>> curve) {
+		double area = 0.0;
+
+		for (int i = 1; i < curve.size(); i++) {
+			Tuple2<Double, Double> previous = curve.get(i - 1);
+			Tuple2<Double, Double> current = curve.get(i);
+			area += (current._1() - previous._1()) * (current._2() + previous._2()) / 2.0;
+		}
+
+		return area;
+	}
+
+	private static void increment(Map<Double, Long> counts, double key, long count) {
+		counts.put(key, getOrZero(counts, key) + count);
+	}
+
+	private static long getOrZero(Map<Double, Long> counts, double key) {
+		Long count = counts.get(key);
+		return count == null ? 0L : count;
+	}
+
+	/**
+	 * What is aggregated on the executors: counts per (label, prediction) and the sum of squared errors.
+	 */
+	private static class Aggregate implements Serializable {
+		private final Map<Tuple2<Double, Double>, Long> confusionMatrix = new HashMap<>();
+		private double sumOfSquaredErrors;
+		private long count;
+
+		private Aggregate add(double prediction, double label) {
+			Tuple2<Double, Double> cell = new Tuple2<>(label, prediction);
+			Long cellCount = confusionMatrix.get(cell);
+			confusionMatrix.put(cell, cellCount == null ? 1L : cellCount + 1);
+
+			sumOfSquaredErrors += (prediction - label) * (prediction - label);
+			count++;
+
+			return this;
+		}
+
+		private Aggregate merge(Aggregate other) {
+			for (Map.Entry<Tuple2<Double, Double>, Long> cell : other.confusionMatrix.entrySet()) {
+				Long cellCount = confusionMatrix.get(cell.getKey());
+				confusionMatrix.put(cell.getKey(), cellCount == null ? cell.getValue() : cellCount + cell.getValue());
+			}
+
+			sumOfSquaredErrors += other.sumOfSquaredErrors;
+			count += other.count;
+
+			return this;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package evaluation;
+
+import scala.Tuple2;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluation metrics of a classifier on its test data, all computed from the same single pass.
+ *
+ * Precision, recall and F-measure are the micro averaged ones (like MulticlassMetrics.precision()), the weighted ones
+ * are weighted by how often each label occurs. The ROC curve and the area under it treat the prediction as the score
+ * and labels above 0.5 as positive, the same way BinaryClassificationMetrics did.
+ */
+public class ClassificationMetrics implements Serializable {
+	private final long count;
+	private final double accuracy;
+	private final double precision;
+	private final double recall;
+	private final double fMeasure;
+	private final double weightedPrecision;
+	private final double weightedRecall;
+	private final double weightedFMeasure;
+	private final double meanSquaredError;
+	private final double areaUnderRoc;
+	private final List<Tuple2<Double, Double>> roc;
+	private final Map<Tuple2<Double, Double>, Long> confusionMatrix;
+
+	public ClassificationMetrics(long count, double accuracy, double weightedPrecision, double weightedRecall,
+	                             double weightedFMeasure, double meanSquaredError, double areaUnderRoc,
+	                             List<Tuple2<Double, Double>> roc, Map<Tuple2<Double, Double>, Long> confusionMatrix) {
+		this.count = count;
+		this.accuracy = accuracy;
+		//Every wrong prediction is a false positive for one label and a false negative for another, so the micro
+		//averaged precision, recall and F-measure all come down to the accuracy.
+		this.precision = accuracy;
+		this.recall = accuracy;
+		this.fMeasure = accuracy;
+		this.weightedPrecision = weightedPrecision;
+		this.weightedRecall = weightedRecall;
+		this.weightedFMeasure = weightedFMeasure;
+		this.meanSquaredError = meanSquaredError;
+		this.areaUnderRoc = areaUnderRoc;
+		this.roc = Collections.unmodifiableList(roc);
+		this.confusionMatrix = Collections.unmodifiableMap(confusionMatrix);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getAccuracy() {
+		return accuracy;
+	}
+
+	public double getError() {
+		return 1.0 - accuracy;
+	}
+
+	public double getPrecision() {
+		return precision;
+	}
+
+	public double getRecall() {
+		return recall;
+	}
+
+	public double getFMeasure() {
+		return fMeasure;
+	}
+
+	public double getWeightedPrecision() {
+		return weightedPrecision;
+	}
+
+	public double getWeightedRecall() {
+		return weightedRecall;
+	}
+
+	public double getWeightedFMeasure() {
+		return weightedFMeasure;
+	}
+
+	public double getMeanSquaredError() {
+		return meanSquaredError;
+	}
+
+	public double getAreaUnderRoc() {
+		return areaUnderRoc;
+	}
+
+	/**
+	 * Points of the ROC curve as (false positive rate, true positive rate).
+	 */
+	public List<Tuple2<Double, Double>> getRoc() {
+		return roc;
+	}
+
+	/**
+	 * Number of test points per (label, prediction).
+	 */
+	public Map<Tuple2<Double, Double>, Long> getConfusionMatrix() {
+		return confusionMatrix;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count +
+				" accuracy=" + accuracy +
+				" error=" + getError() +
+				" precision=" + precision +
+				" recall=" + recall +
+				" fMeasure=" + fMeasure +
+				" weightedPrecision=" + weightedPrecision +
+				" weightedRecall=" + weightedRecall +
+				" weightedFMeasure=" + weightedFMeasure +
+				" meanSquaredError=" + meanSquaredError +
+				" areaUnderRoc=" + areaUnderRoc;
+	}
+}
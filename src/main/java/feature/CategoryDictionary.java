@@ -0,0 +1,107 @@
+package feature;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Growing dictionary of the categories seen for a categorical column.
+ *
+ * Categories keep the index they were given when they were first seen, so indices stay stable between batches and
+ * models trained on different batches stay comparable. Once the dictionary is full every unseen category ends up in a
+ * single overflow index so that a column with an unbounded number of values (requests) can't eat up the driver memory.
+ */
+public class CategoryDictionary implements Serializable {
+	private final String columnName;
+	private final int maxCategories;
+	private final Map<String, Integer> indices = new HashMap<>();
+	private final List<String> categories = new ArrayList<>();
+
+	public CategoryDictionary(String columnName, int maxCategories) {
+		checkArgument(maxCategories > 0, "Dictionary needs to be able to hold at least one category");
+
+		this.columnName = columnName;
+		this.maxCategories = maxCategories;
+	}
+
+	/**
+	 * Adds the categories that have not been seen before. Returns the number of categories that were added.
+	 */
+	public int addAll(Collection<String> newCategories) {
+		int added = 0;
+
+		for (String category : newCategories) {
+			if (categories.size() >= maxCategories) {
+				break;
+			}
+
+			if (category != null && !indices.containsKey(category)) {
+				indices.put(category, categories.size());
+				categories.add(category);
+				added++;
+			}
+		}
+
+		return added;
+	}
+
+	public boolean contains(String category) {
+		return indices.containsKey(category);
+	}
+
+	public double indexOf(String category) {
+		if (category == null) {
+			return Double.NaN;
+		}
+
+		Integer index = indices.get(category);
+
+		return index == null ? getOverflowIndex() : index;
+	}
+
+	public boolean isFull() {
+		return categories.size() >= maxCategories;
+	}
+
+	/**
+	 * Index given to categories that did not fit into the dictionary anymore.
+	 */
+	public int getOverflowIndex() {
+		return maxCategories;
+	}
+
+	public String getColumnName() {
+		return columnName;
+	}
+
+	public int getMaxCategories() {
+		return maxCategories;
+	}
+
+	public int size() {
+		return categories.size();
+	}
+
+	/**
+	 * Categories in index order.
+	 */
+	public List<String> getCategories() {
+		return Collections.unmodifiableList(categories);
+	}
+
+	/**
+	 * Copy that can be shipped to the executors while the dictionary keeps growing on the driver.
+	 */
+	public CategoryDictionary copy() {
+		CategoryDictionary copy = new CategoryDictionary(columnName, maxCategories);
+		copy.addAll(categories);
+
+		return copy;
+	}
+}
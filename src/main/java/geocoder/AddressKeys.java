@@ -0,0 +1,48 @@
+package geocoder;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Normalised addresses and their 64 bit hashes, which is what the gazetteer index and the disk cache store instead of
+ * the addresses themselves.
+ */
+final class AddressKeys {
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+	private AddressKeys() {
+	}
+
+	/**
+	 * Lower case, and the parts of the address trimmed, so that "New York , US" and "new york,us" are the same.
+	 */
+	static String normalize(String address) {
+		String[] parts = address.toLowerCase(Locale.ROOT).split(",");
+		StringBuilder normalized = new StringBuilder(address.length());
+
+		for (String part : parts) {
+			String trimmed = part.trim().replaceAll("\\s+", " ");
+
+			if (!trimmed.isEmpty()) {
+				if (normalized.length() > 0) {
+					normalized.append(',');
+				}
+				normalized.append(trimmed);
+			}
+		}
+
+		return normalized.toString();
+	}
+
+	/**
+	 * Hash of the normalised address. Never 0, which marks an empty slot in the disk cache.
+	 */
+	static long hash(String address) {
+		long hash = HASH_FUNCTION.hashString(normalize(address), StandardCharsets.UTF_8).asLong();
+
+		return hash == 0 ? 1 : hash;
+	}
+}
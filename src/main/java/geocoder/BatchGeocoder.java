@@ -0,0 +1,218 @@
+package geocoder;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.maps.model.LatLng;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.sql.DataFrame;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Geocodes a column of a DataFrame one partition at a time.
+ *
+ * Instead of a UDF per coordinate (two cache lookups per row, each blocking the task on a miss), every partition
+ * collects its distinct addresses and resolves them all at once: lookups run concurrently on a bounded thread pool,
+ * and a lookup of an address that is already in flight with the same geocoder (from another partition in the same
+ * JVM) waits for that one instead of starting another. Latitude and longitude come back together in one struct column.
+ *
+ * With a CachingGeocoder in front of the backend this is about one backend lookup per distinct address per batch,
+ * and none for addresses seen before.
+ */
+public class BatchGeocoder implements Serializable {
+	private static final Logger logger = LoggerFactory.getLogger(BatchGeocoder.class);
+
+	public static final StructType LOCATION_TYPE = DataTypes.createStructType(new StructField[]{
+			DataTypes.createStructField("lat", DataTypes.DoubleType, false),
+			DataTypes.createStructField("lng", DataTypes.DoubleType, false)
+	});
+
+	//Shared by every BatchGeocoder (and so every task) in the JVM, by geocoder and normalised address. Tasks share a
+	//lookup if their copies of the geocoder resolve to the same instance, as CachingGeocoders of one cache file do.
+	private static final ConcurrentMap<InFlightKey, CompletableFuture<Optional<LatLng>>> inFlight = new ConcurrentHashMap<>();
+	private static ExecutorService executor;
+
+	private final Geocoder geocoder;
+	private final int maxConcurrentLookups;
+
+	/**
+	 * @param maxConcurrentLookups size of the lookup thread pool, which is created once per JVM by the first
+	 *                             BatchGeocoder that needs it
+	 */
+	public BatchGeocoder(Geocoder geocoder, int maxConcurrentLookups) {
+		checkArgument(maxConcurrentLookups > 0, "Need at least one thread for the lookups");
+
+		this.geocoder = geocoder;
+		this.maxConcurrentLookups = maxConcurrentLookups;
+	}
+
+	/**
+	 * Adds a LOCATION_TYPE column with the location of the address in addressColumn, null if it is not known.
+	 */
+	public DataFrame geocode(DataFrame logs, String addressColumn, String locationColumn) {
+		JavaRDD<Row> logsWithLocation = geocodePartitions(logs.javaRDD(), logs.schema().fieldIndex(addressColumn), this);
+
+		StructType schema = logs.schema().add(locationColumn, LOCATION_TYPE, true);
+
+		return logs.sqlContext().createDataFrame(logsWithLocation, schema);
+	}
+
+	//Static so that the function shipped to the executors only drags the batch geocoder along.
+	private static JavaRDD<Row> geocodePartitions(JavaRDD<Row> logs, final int addressIndex, final BatchGeocoder batchGeocoder) {
+		return logs.mapPartitions(new FlatMapFunction<Iterator<Row>, Row>() {
+			@Override
+			public Iterable<Row> call(Iterator<Row> rows) throws Exception {
+				//Rows are buffered so that all addresses of the partition can be looked up before the first row goes out.
+				List<Row> partition = new ArrayList<>();
+				Set<String> addresses = new LinkedHashSet<>();
+
+				while (rows.hasNext()) {
+					Row row = rows.next();
+					partition.add(row);
+
+					if (!row.isNullAt(addressIndex)) {
+						addresses.add(row.getString(addressIndex));
+					}
+				}
+
+				Map<String, Optional<LatLng>> locations = batchGeocoder.resolve(addresses);
+
+				List<Row> geocodedRows = new ArrayList<>(partition.size());
+
+				for (Row row : partition) {
+					Optional<LatLng> location = row.isNullAt(addressIndex) ? null : locations.get(row.getString(addressIndex));
+
+					Object[] values = new Object[row.length() + 1];
+					for (int i = 0; i < row.length(); i++) {
+						values[i] = row.get(i);
+					}
+					values[row.length()] = location != null && location.isPresent()
+							? RowFactory.create(location.get().lat, location.get().lng)
+							: null;
+
+					geocodedRows.add(RowFactory.create(values));
+				}
+
+				return geocodedRows;
+			}
+		});
+	}
+
+	/**
+	 * Looks up the addresses concurrently and waits for all of them. Addresses that fail to geocode come back absent.
+	 */
+	public Map<String, Optional<LatLng>> resolve(Collection<String> addresses) throws InterruptedException {
+		Map<String, CompletableFuture<Optional<LatLng>>> lookups = new HashMap<>();
+
+		for (String address : addresses) {
+			lookups.put(address, lookup(address));
+		}
+
+		Map<String, Optional<LatLng>> locations = new HashMap<>();
+
+		for (Map.Entry<String, CompletableFuture<Optional<LatLng>>> lookup : lookups.entrySet()) {
+			try {
+				locations.put(lookup.getKey(), lookup.getValue().get());
+			} catch (ExecutionException e) {
+				logger.warn("Could not geocode " + lookup.getKey(), e.getCause());
+				locations.put(lookup.getKey(), Optional.<LatLng>absent());
+			}
+		}
+
+		return locations;
+	}
+
+	private CompletableFuture<Optional<LatLng>> lookup(final String address) {
+		final InFlightKey key = new InFlightKey(geocoder, AddressKeys.normalize(address));
+		final CompletableFuture<Optional<LatLng>> future = new CompletableFuture<>();
+		CompletableFuture<Optional<LatLng>> existing = inFlight.putIfAbsent(key, future);
+
+		if (existing != null) {
+			return existing;
+		}
+
+		getExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.complete(geocoder.geocode(address));
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				} finally {
+					inFlight.remove(key, future);
+				}
+			}
+		});
+
+		return future;
+	}
+
+	private ExecutorService getExecutor() {
+		synchronized (BatchGeocoder.class) {
+			if (executor == null) {
+				executor = Executors.newFixedThreadPool(maxConcurrentLookups,
+						new ThreadFactoryBuilder().setDaemon(true).setNameFormat("batch-geocoder-%d").build());
+			}
+
+			return executor;
+		}
+	}
+
+	public Geocoder getGeocoder() {
+		return geocoder;
+	}
+
+	public int getMaxConcurrentLookups() {
+		return maxConcurrentLookups;
+	}
+
+	//Address of a lookup with the geocoder that does it, geocoders are compared by identity.
+	private static final class InFlightKey {
+		private final Geocoder geocoder;
+		private final String address;
+
+		InFlightKey(Geocoder geocoder, String address) {
+			this.geocoder = geocoder;
+			this.address = address;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof InFlightKey)) {
+				return false;
+			}
+
+			InFlightKey key = (InFlightKey) other;
+			return geocoder == key.geocoder && address.equals(key.address);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(geocoder) + address.hashCode();
+		}
+	}
+}
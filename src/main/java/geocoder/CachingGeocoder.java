@@ -0,0 +1,135 @@
+package geocoder;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.maps.model.LatLng;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two levels of caching in front of another geocoder: a Guava LoadingCache in memory and a MappedGeocodeCache on
+ * disk. Only addresses that are in neither reach the backend, and its results are written to both. Addresses are
+ * normalised first, so different spellings of the same address share an entry.
+ *
+ * Addresses the backend does not know are only cached in memory, and for a day at most, so that they are asked for
+ * again once the gazetteer or the backend might know them. Entries for unknown addresses in disk caches written
+ * before are ignored.
+ *
+ * The caches are set up lazily and there is one CachingGeocoder per disk cache file in a JVM: copies that are
+ * deserialised on the executors resolve to that one, so all tasks share the same caches.
+ */
+public class CachingGeocoder implements Geocoder {
+	private static final Logger logger = LoggerFactory.getLogger(CachingGeocoder.class);
+
+	private static final ConcurrentMap<String, CachingGeocoder> instances = new ConcurrentHashMap<>();
+
+	private final Geocoder backend;
+	private final String cacheFile;
+	private final int cacheSlots;
+	private final int memoryCacheSize;
+
+	private transient LoadingCache<String, Optional<LatLng>> memoryCache;
+	private transient MappedGeocodeCache diskCache;
+
+	/**
+	 * @param cacheSlots      number of slots of the disk cache if it has to be created (power of two)
+	 * @param memoryCacheSize number of addresses kept in memory
+	 */
+	public CachingGeocoder(Geocoder backend, String cacheFile, int cacheSlots, int memoryCacheSize) {
+		this.backend = backend;
+		this.cacheFile = cacheFile;
+		this.cacheSlots = cacheSlots;
+		this.memoryCacheSize = memoryCacheSize;
+
+		instances.putIfAbsent(cacheFile, this);
+	}
+
+	@Override
+	public Optional<LatLng> geocode(String address) throws Exception {
+		if (address == null) {
+			return Optional.absent();
+		}
+
+		try {
+			return getMemoryCache().get(AddressKeys.normalize(address));
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * Hit and miss counts of the in-memory cache.
+	 */
+	public CacheStats getStats() {
+		return getMemoryCache().stats();
+	}
+
+	/**
+	 * Number of addresses in the disk cache.
+	 */
+	public int getDiskCacheEntries() throws IOException {
+		return getDiskCache().getEntries();
+	}
+
+	public Geocoder getBackend() {
+		return backend;
+	}
+
+	private synchronized LoadingCache<String, Optional<LatLng>> getMemoryCache() {
+		if (memoryCache == null) {
+			memoryCache = CacheBuilder.newBuilder()
+					.maximumSize(memoryCacheSize)
+					.expireAfterWrite(24, TimeUnit.HOURS)
+					.recordStats()
+					.build(new CacheLoader<String, Optional<LatLng>>() {
+						@Override
+						public Optional<LatLng> load(String address) throws Exception {
+							return loadFromDiskOrBackend(address);
+						}
+					});
+		}
+
+		return memoryCache;
+	}
+
+	private synchronized MappedGeocodeCache getDiskCache() throws IOException {
+		if (diskCache == null) {
+			diskCache = MappedGeocodeCache.open(cacheFile, cacheSlots);
+		}
+
+		return diskCache;
+	}
+
+	private Optional<LatLng> loadFromDiskOrBackend(String address) throws Exception {
+		MappedGeocodeCache disk = getDiskCache();
+		Optional<LatLng> cached = disk.get(address);
+
+		if (cached != null && cached.isPresent()) {
+			return cached;
+		}
+
+		Optional<LatLng> location = backend.geocode(address);
+
+		if (location.isPresent() && !disk.put(address, location)) {
+			logger.warn("Geocode cache " + cacheFile + " is full, " + address + " is only cached in memory");
+		}
+
+		return location;
+	}
+
+	private Object readResolve() throws ObjectStreamException {
+		CachingGeocoder shared = instances.putIfAbsent(cacheFile, this);
+
+		return shared == null ? this : shared;
+	}
+}
@@ -0,0 +1,36 @@
+package geocoder;
+
+import com.google.common.base.Optional;
+import com.google.maps.model.LatLng;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Asks the geocoders in order and returns the first location found, e.g. the gazetteer first and Google only for
+ * the addresses the gazetteer does not know.
+ */
+public class FallbackGeocoder implements Geocoder {
+	private final List<Geocoder> geocoders;
+
+	public FallbackGeocoder(Geocoder... geocoders) {
+		this.geocoders = Arrays.asList(geocoders);
+	}
+
+	@Override
+	public Optional<LatLng> geocode(String address) throws Exception {
+		for (Geocoder geocoder : geocoders) {
+			Optional<LatLng> location = geocoder.geocode(address);
+
+			if (location.isPresent()) {
+				return location;
+			}
+		}
+
+		return Optional.absent();
+	}
+
+	public List<Geocoder> getGeocoders() {
+		return geocoders;
+	}
+}
@@ -0,0 +1,209 @@
+package geocoder;
+
+import com.google.common.base.Optional;
+import com.google.maps.model.LatLng;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Offline geocoder that looks addresses up in a local gazetteer file, so no lookup ever leaves the node.
+ *
+ * Two formats are read, line by line:
+ * - GeoNames dumps (e.g. cities15000.txt from http://download.geonames.org/export/dump/), which have 19 tab separated
+ *   columns. Lines with at least the first 15 (up to the population) are read as GeoNames. When a name occurs more
+ *   than once the place with the largest population wins.
+ * - name TAB country TAB latitude TAB longitude, where country may list alternatives separated by '|' (e.g.
+ *   "US|United States"). Lines starting with '#' are comments.
+ *
+ * Every place can be found by its name alone and by "name, country". The index only keeps the 64 bit hash of each
+ * key in a sorted array next to the coordinates (as floats, well within a city's size), so even a large gazetteer
+ * takes a few tens of bytes per key, and a lookup is a binary search. The index is loaded once per JVM on the first
+ * lookup and shared by every task.
+ */
+public class GazetteerGeocoder implements Geocoder {
+	private static final Logger logger = LoggerFactory.getLogger(GazetteerGeocoder.class);
+
+	//Columns of a GeoNames line that are needed, up to the population. A full line has 19.
+	private static final int GEONAMES_COLUMNS = 15;
+
+	private static final ConcurrentMap<String, Index> indices = new ConcurrentHashMap<>();
+
+	private final String gazetteerFile;
+
+	private transient volatile Index index;
+
+	public GazetteerGeocoder(String gazetteerFile) {
+		this.gazetteerFile = gazetteerFile;
+	}
+
+	@Override
+	public Optional<LatLng> geocode(String address) {
+		if (address == null) {
+			return Optional.absent();
+		}
+
+		return getIndex().lookup(AddressKeys.hash(address));
+	}
+
+	/**
+	 * Number of keys (names and name/country combinations) in the index.
+	 */
+	public int size() {
+		return getIndex().keys.length;
+	}
+
+	public String getGazetteerFile() {
+		return gazetteerFile;
+	}
+
+	private Index getIndex() {
+		if (index == null) {
+			Index loaded = indices.get(gazetteerFile);
+
+			if (loaded == null) {
+				synchronized (indices) {
+					loaded = indices.get(gazetteerFile);
+
+					if (loaded == null) {
+						try {
+							loaded = Index.load(gazetteerFile);
+						} catch (IOException e) {
+							throw new UncheckedIOException("Could not load gazetteer " + gazetteerFile, e);
+						}
+
+						indices.put(gazetteerFile, loaded);
+					}
+				}
+			}
+
+			index = loaded;
+		}
+
+		return index;
+	}
+
+	private static class Index {
+		private final long[] keys;
+		private final float[] latitudes;
+		private final float[] longitudes;
+
+		private Index(long[] keys, float[] latitudes, float[] longitudes) {
+			this.keys = keys;
+			this.latitudes = latitudes;
+			this.longitudes = longitudes;
+		}
+
+		private Optional<LatLng> lookup(long key) {
+			int position = Arrays.binarySearch(keys, key);
+
+			if (position < 0) {
+				return Optional.absent();
+			}
+
+			return Optional.of(new LatLng(latitudes[position], longitudes[position]));
+		}
+
+		private static Index load(String gazetteerFile) throws IOException {
+			//Key -> {latitude, longitude, population} while reading, packed into the sorted arrays afterwards.
+			Map<Long, double[]> places = new HashMap<>();
+			long lines = 0;
+
+			try (BufferedReader reader = Files.newBufferedReader(Paths.get(gazetteerFile), StandardCharsets.UTF_8)) {
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty() || line.startsWith("#")) {
+						continue;
+					}
+
+					String[] fields = line.split("\t", -1);
+
+					try {
+						if (fields.length >= GEONAMES_COLUMNS) {
+							double[] place = place(fields[4], fields[5], fields[14]);
+							addPlace(places, place, Arrays.asList(fields[1], fields[2]), fields[8]);
+						} else if (fields.length >= 4) {
+							double[] place = place(fields[2], fields[3], "0");
+							addPlace(places, place, Arrays.asList(fields[0]), fields[1]);
+						} else {
+							continue;
+						}
+					} catch (NumberFormatException e) {
+						logger.warn("Skipping gazetteer line with invalid coordinates: " + line);
+						continue;
+					}
+
+					lines++;
+				}
+			}
+
+			long[] keys = new long[places.size()];
+			int i = 0;
+			for (Long key : places.keySet()) {
+				keys[i++] = key;
+			}
+			Arrays.sort(keys);
+
+			float[] latitudes = new float[keys.length];
+			float[] longitudes = new float[keys.length];
+			for (i = 0; i < keys.length; i++) {
+				double[] place = places.get(keys[i]);
+				latitudes[i] = (float) place[0];
+				longitudes[i] = (float) place[1];
+			}
+
+			logger.info("Loaded " + lines + " places with " + keys.length + " keys from gazetteer " + gazetteerFile);
+
+			return new Index(keys, latitudes, longitudes);
+		}
+
+		private static double[] place(String latitude, String longitude, String population) {
+			return new double[]{
+					Double.parseDouble(latitude),
+					Double.parseDouble(longitude),
+					population.isEmpty() ? 0 : Double.parseDouble(population)
+			};
+		}
+
+		private static void addPlace(Map<Long, double[]> places, double[] place, List<String> names, String countries) {
+			List<String> keys = new ArrayList<>();
+
+			for (String name : names) {
+				if (name.isEmpty()) {
+					continue;
+				}
+
+				keys.add(name);
+
+				for (String country : countries.split("\\|")) {
+					if (!country.isEmpty()) {
+						keys.add(name + "," + country);
+					}
+				}
+			}
+
+			for (String key : keys) {
+				long hash = AddressKeys.hash(key);
+				double[] existing = places.get(hash);
+
+				if (existing == null || existing[2] < place[2]) {
+					places.put(hash, place);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package geocoder;
+
+import com.google.common.base.Optional;
+import com.google.maps.GeoApiContext;
+import com.google.maps.GeocodingApi;
+import com.google.maps.GeocodingApiRequest;
+import com.google.maps.model.GeocodingResult;
+import com.google.maps.model.LatLng;
+
+/**
+ * Google's Geocoding API. Needs internet access and an API key, and every lookup is a blocking remote call, so it is
+ * meant as the last resort behind the gazetteer and the caches.
+ */
+public class GoogleGeocoder implements Geocoder {
+	private final String apiKey;
+
+	//Not serializable, created again on the executors.
+	private transient GeoApiContext context;
+
+	public GoogleGeocoder(String apiKey) {
+		this.apiKey = apiKey;
+	}
+
+	@Override
+	public Optional<LatLng> geocode(String address) throws Exception {
+		GeocodingApiRequest geocodingApiRequest = GeocodingApi.newRequest(getContext());
+		GeocodingResult[] results = geocodingApiRequest.address(address).await();
+
+		if (results == null || results.length == 0 || results[0].geometry == null) {
+			return Optional.absent();
+		}
+
+		return Optional.fromNullable(results[0].geometry.location);
+	}
+
+	private synchronized GeoApiContext getContext() {
+		if (context == null) {
+			context = new GeoApiContext().setApiKey(apiKey);
+		}
+
+		return context;
+	}
+}
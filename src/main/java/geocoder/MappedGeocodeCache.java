@@ -0,0 +1,214 @@
+package geocoder;
+
+import com.google.common.base.Optional;
+import com.google.maps.model.LatLng;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Geocoding results kept in a memory-mapped file, so they survive restarts and are shared by everything in the JVM
+ * and by the other JVMs on the node that use the same file (the executors of a node, for example).
+ *
+ * The file is a fixed size open addressing hash table (linear probing) of 24 byte slots: the 64 bit hash of the
+ * normalised address, then latitude and longitude as doubles. Addresses that could not be geocoded can be stored
+ * as well (with NaN coordinates). Writes go straight into the mapping and reach the disk through the page cache,
+ * which survives the process going down. Once the table is 75% full new results are no longer added, the ones in it
+ * are still served.
+ *
+ * Within a JVM the methods are synchronized, across JVMs every read holds a shared and every write an exclusive lock
+ * on the file (FileChannel.lock). The locks and the shared mapping only work for a file on a local disk, so every
+ * node needs its own cache file rather than one on a network filesystem.
+ */
+public class MappedGeocodeCache {
+	private static final Logger logger = LoggerFactory.getLogger(MappedGeocodeCache.class);
+
+	private static final int MAGIC = 0x47454f43;
+	private static final int HEADER_BYTES = 16;
+	private static final int SLOT_BYTES = 24;
+	private static final double MAX_LOAD_FACTOR = 0.75;
+
+	//The table is a single MappedByteBuffer addressed with int offsets, so it has to stay below 2GB (2^26 slots take
+	//1.5GB).
+	public static final int MAX_SLOTS = 1 << 26;
+
+	//One mapping per file and JVM, two mappings of the same file would overwrite each other's slots.
+	private static final ConcurrentMap<String, MappedGeocodeCache> caches = new ConcurrentHashMap<>();
+
+	private final String cacheFile;
+	//Kept open for the locks, the mapping itself would stay valid without it.
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int slots;
+
+	private MappedGeocodeCache(String cacheFile, int requestedSlots) throws IOException {
+		this.cacheFile = cacheFile;
+
+		File file = new File(cacheFile);
+		if (file.getAbsoluteFile().getParentFile() != null) {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+		}
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		channel = randomAccessFile.getChannel();
+
+		//Exclusive while the header is read or written, so two JVMs opening a new file don't both set it up.
+		try (FileLock lock = channel.lock()) {
+			boolean existing = randomAccessFile.length() >= HEADER_BYTES && randomAccessFile.readInt() == MAGIC;
+
+			//An existing cache keeps its size, whatever size is asked for now.
+			int tableSlots = existing ? randomAccessFile.readInt() : requestedSlots;
+			long size = HEADER_BYTES + (long) tableSlots * SLOT_BYTES;
+
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			slots = tableSlots;
+
+			if (!existing) {
+				buffer.putInt(4, slots);
+				buffer.putInt(8, 0);
+				//Magic last, so a header with the magic is always complete.
+				buffer.putInt(0, MAGIC);
+			}
+		} catch (IOException | RuntimeException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+
+		logger.info("Opened geocode cache " + cacheFile + " with " + buffer.getInt(8) + " of " + slots + " slots in use");
+	}
+
+	/**
+	 * The cache for the file, opened (and created with the given number of slots if it does not exist yet) the first
+	 * time it is asked for in this JVM.
+	 *
+	 * @param slots power of two
+	 */
+	public static MappedGeocodeCache open(String cacheFile, int slots) throws IOException {
+		checkArgument(slots > 0 && Integer.bitCount(slots) == 1, "Number of slots has to be a power of two");
+		checkArgument(slots <= MAX_SLOTS, "Number of slots can't be more than " + MAX_SLOTS);
+
+		String key = new File(cacheFile).getAbsolutePath();
+		MappedGeocodeCache cache = caches.get(key);
+
+		if (cache == null) {
+			synchronized (caches) {
+				cache = caches.get(key);
+
+				if (cache == null) {
+					cache = new MappedGeocodeCache(cacheFile, slots);
+					caches.put(key, cache);
+				}
+			}
+		}
+
+		return cache;
+	}
+
+	/**
+	 * The cached result for the address, absent if it is cached as unknown, or null if the address is not in the
+	 * cache.
+	 */
+	public synchronized Optional<LatLng> get(String address) throws IOException {
+		try (FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+			return find(AddressKeys.hash(address));
+		}
+	}
+
+	private Optional<LatLng> find(long hash) {
+		for (int slot = firstSlot(hash), probes = 0; probes < slots; slot = (slot + 1) & (slots - 1), probes++) {
+			int offset = offset(slot);
+			long key = buffer.getLong(offset);
+
+			if (key == 0) {
+				return null;
+			}
+
+			if (key == hash) {
+				double latitude = buffer.getDouble(offset + 8);
+
+				return Double.isNaN(latitude)
+						? Optional.<LatLng>absent()
+						: Optional.of(new LatLng(latitude, buffer.getDouble(offset + 16)));
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stores the result for the address. Returns false if the cache is full.
+	 */
+	public synchronized boolean put(String address, Optional<LatLng> location) throws IOException {
+		try (FileLock lock = channel.lock()) {
+			return store(AddressKeys.hash(address), location);
+		}
+	}
+
+	private boolean store(long hash, Optional<LatLng> location) {
+		for (int slot = firstSlot(hash), probes = 0; probes < slots; slot = (slot + 1) & (slots - 1), probes++) {
+			int offset = offset(slot);
+			long key = buffer.getLong(offset);
+
+			if (key == 0 || key == hash) {
+				if (key == 0) {
+					//Read from the file, the other JVMs add entries too.
+					int entries = buffer.getInt(8);
+
+					if (entries >= slots * MAX_LOAD_FACTOR) {
+						return false;
+					}
+
+					buffer.putInt(8, entries + 1);
+				}
+
+				buffer.putDouble(offset + 8, location.isPresent() ? location.get().lat : Double.NaN);
+				buffer.putDouble(offset + 16, location.isPresent() ? location.get().lng : Double.NaN);
+				//Key last, so a slot never has a key without its coordinates.
+				buffer.putLong(offset, hash);
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Writes what has been cached so far to the disk.
+	 */
+	public synchronized void force() {
+		buffer.force();
+	}
+
+	private int firstSlot(long hash) {
+		return (int) (hash ^ (hash >>> 32)) & (slots - 1);
+	}
+
+	private static int offset(int slot) {
+		return HEADER_BYTES + slot * SLOT_BYTES;
+	}
+
+	public String getCacheFile() {
+		return cacheFile;
+	}
+
+	public int getSlots() {
+		return slots;
+	}
+
+	public synchronized int getEntries() throws IOException {
+		try (FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+			return buffer.getInt(8);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package ingestion;
+
+import kafka.common.TopicAndPartition;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.spark.streaming.kafka.OffsetRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Keeps the Kafka offsets that have been processed next to the output of the processing.
+ *
+ * Offsets are committed once the output of a batch has been written, so after a crash the direct stream starts again
+ * from the first batch that did not make it to the output and that batch is processed again (the output files of a
+ * batch are overwritten, not appended to). The offsets file is replaced atomically so it is never half written.
+ *
+ * One line per partition: topic partition untilOffset
+ */
+public class KafkaOffsetStore implements Serializable {
+	private static final Logger logger = LoggerFactory.getLogger(KafkaOffsetStore.class);
+
+	private final String offsetFile;
+
+	public KafkaOffsetStore(String offsetFile) {
+		this.offsetFile = offsetFile;
+	}
+
+	/**
+	 * Offsets to start the direct stream from. Stored offsets are used for partitions that have been seen before,
+	 * partitions that were added since then start from the beginning. Returns an empty map if nothing has been
+	 * committed yet.
+	 */
+	public Map<TopicAndPartition, Long> loadOffsets(String brokers, Set<String> topics) throws IOException {
+		Map<TopicAndPartition, Long> storedOffsets = readOffsets();
+		Map<TopicAndPartition, Long> fromOffsets = new HashMap<>();
+
+		if (storedOffsets.isEmpty()) {
+			return fromOffsets;
+		}
+
+		Map<TopicAndPartition, Long> earliestOffsets = findEarliestOffsets(brokers, topics);
+
+		for (Map.Entry<TopicAndPartition, Long> earliestOffset : earliestOffsets.entrySet()) {
+			Long storedOffset = storedOffsets.get(earliestOffset.getKey());
+
+			if (storedOffset == null) {
+				logger.info("Found new partition " + earliestOffset.getKey() + ", consuming it from the beginning");
+				fromOffsets.put(earliestOffset.getKey(), earliestOffset.getValue());
+			} else {
+				//Stored offset might have been removed from Kafka by retention in the meantime.
+				fromOffsets.put(earliestOffset.getKey(), Math.max(storedOffset, earliestOffset.getValue()));
+			}
+		}
+
+		return fromOffsets;
+	}
+
+	public void commit(OffsetRange[] offsetRanges) throws IOException {
+		Map<TopicAndPartition, Long> offsets = readOffsets();
+
+		for (OffsetRange offsetRange : offsetRanges) {
+			offsets.put(offsetRange.topicAndPartition(), offsetRange.untilOffset());
+		}
+
+		File file = new File(offsetFile);
+		if (file.getAbsoluteFile().getParentFile() != null) {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+		}
+
+		Path target = file.toPath();
+		Path temp = new File(offsetFile + ".tmp").toPath();
+
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			for (Map.Entry<TopicAndPartition, Long> offset : offsets.entrySet()) {
+				writer.write(offset.getKey().topic() + " " + offset.getKey().partition() + " " + offset.getValue());
+				writer.newLine();
+			}
+		}
+
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public Map<TopicAndPartition, Long> readOffsets() throws IOException {
+		Map<TopicAndPartition, Long> offsets = new HashMap<>();
+		File file = new File(offsetFile);
+
+		if (!file.exists()) {
+			return offsets;
+		}
+
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			String[] fields = line.trim().split(" ");
+
+			if (fields.length == 3) {
+				offsets.put(new TopicAndPartition(fields[0], Integer.parseInt(fields[1])), Long.parseLong(fields[2]));
+			}
+		}
+
+		return offsets;
+	}
+
+	private Map<TopicAndPartition, Long> findEarliestOffsets(String brokers, Set<String> topics) {
+		Properties props = new Properties();
+		props.put("bootstrap.servers", brokers);
+		props.put("enable.auto.commit", "false");
+		props.put("key.deserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer");
+		props.put("value.deserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer");
+
+		Map<TopicAndPartition, Long> earliestOffsets = new HashMap<>();
+
+		try (KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<>(props)) {
+			List<TopicPartition> partitions = new ArrayList<>();
+
+			for (String topic : topics) {
+				for (PartitionInfo partitionInfo : consumer.partitionsFor(topic)) {
+					partitions.add(new TopicPartition(partitionInfo.topic(), partitionInfo.partition()));
+				}
+			}
+
+			consumer.assign(partitions);
+			consumer.seekToBeginning(partitions);
+
+			for (TopicPartition partition : partitions) {
+				earliestOffsets.put(new TopicAndPartition(partition.topic(), partition.partition()), consumer.position(partition));
+			}
+		}
+
+		return earliestOffsets;
+	}
+
+	public String getOffsetFile() {
+		return offsetFile;
+	}
+}
@@ -0,0 +1,15 @@
+package loadgenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where generated events go. Written to by every generator thread at once, each with a block of whole lines of JSON.
+ */
+public interface EventSink extends Closeable {
+	/**
+	 * @param thread index of the generator thread, from 0 to the number of threads - 1
+	 * @param events one or more events, each ending with a line break
+	 */
+	void write(int thread, String events, int noOfEvents) throws IOException;
+}
@@ -0,0 +1,53 @@
+package loadgenerator;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Straight into the topic the engine reads from, one message per event, like Logstash's Kafka output. The producer
+ * is shared by all threads and batches the messages itself.
+ */
+public class KafkaSink implements EventSink {
+	private final KafkaProducer<String, String> producer;
+	private final String topic;
+
+	public KafkaSink(String brokers, String topic) {
+		Properties props = new Properties();
+		props.put("bootstrap.servers", brokers);
+		props.put("acks", "1");
+		props.put("retries", 0);
+		//Larger batches and a little lingering, for throughput rather than latency.
+		props.put("batch.size", 262144);
+		props.put("linger.ms", 5);
+		props.put("compression.type", "lz4");
+		props.put("buffer.memory", 268435456L);
+		props.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+		props.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+
+		this.producer = new KafkaProducer<>(props);
+		this.topic = topic;
+	}
+
+	@Override
+	public void write(int thread, String events, int noOfEvents) throws IOException {
+		int start = 0;
+
+		for (int i = 0; i < noOfEvents; i++) {
+			int end = events.indexOf('\n', start);
+			if (end < 0) {
+				end = events.length();
+			}
+
+			producer.send(new ProducerRecord<String, String>(topic, events.substring(start, end)));
+			start = end + 1;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		producer.close();
+	}
+}
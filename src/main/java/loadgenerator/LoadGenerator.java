@@ -0,0 +1,232 @@
+package loadgenerator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Generates synthetic Apache access log events with geoip, as Logstash would send them, on all cores, for load
+ * testing the engine without Logstash or artificialLogDataGenerator.py.
+ *
+ * Every thread has its own LogEventGenerator with a seed derived from the given one, and hands its events to the sink
+ * in blocks, so the threads don't share anything but the sink. The same seed, number of events and number of threads
+ * always give the same events.
+ *
+ * Usage:  LoadGenerator <output> <noOfEvents> [<threads>]
+ *   <output> is one of
+ *     a directory         one NDJSON file per thread
+ *     -                   stdout
+ *     pipe:<path>         a named pipe (or any file) the events are appended to
+ *     kafka://<brokers>/<topic>   the Kafka topic the engine reads from
+ *   <noOfEvents> is the number of events over all threads, 0 to generate until stopped
+ *   <threads> is the number of generator threads, the number of cores by default
+ *
+ * The traffic is set with -Dverbs, -Dresponses, -Dcities, -DattackRate, -DburstLength, -DattackVerbs,
+ * -DattackResponses and -Dgazetteer (see LoadProfile), and further with
+ *   -Dseed=...            seed of the generators (42 by default)
+ *   -DstartTime=...       time of the first event, e.g. 2016-06-17T00:00:00Z (the default)
+ *   -DeventsPerSecond=... rate over all threads, 0 (the default) for as fast as possible
+ */
+public class LoadGenerator {
+	private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+	private static final long DEFAULT_SEED = 42;
+	private static final String DEFAULT_START_TIME = "2016-06-17T00:00:00Z";
+
+	private static final String STDOUT = "-";
+	private static final String PIPE_PREFIX = "pipe:";
+	private static final String KAFKA_PREFIX = "kafka://";
+
+	//Events handed to the sink at a time.
+	private static final int BLOCK_EVENTS = 1000;
+	private static final int BLOCK_CHARS = 1024 * 1024;
+
+	private static final long REPORT_INTERVAL_MILLIS = 10000;
+
+	private final LoadProfile profile;
+	private final long seed;
+	private final long startMillis;
+	private final double eventsPerSecond;
+
+	private final AtomicLong generatedEvents = new AtomicLong();
+	private final AtomicLong attackEvents = new AtomicLong();
+
+	/**
+	 * @param eventsPerSecond rate over all threads, 0 for as fast as possible
+	 */
+	public LoadGenerator(LoadProfile profile, long seed, long startMillis, double eventsPerSecond) {
+		checkArgument(eventsPerSecond >= 0, "The rate can't be negative");
+
+		this.profile = profile;
+		this.seed = seed;
+		this.startMillis = startMillis;
+		this.eventsPerSecond = eventsPerSecond;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: LoadGenerator <output> <noOfEvents> [<threads>]");
+			System.exit(1);
+		}
+
+		long noOfEvents = Long.parseLong(args[1]);
+		int noOfThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		LoadGenerator loadGenerator = new LoadGenerator(LoadProfile.fromSystemProperties(),
+				Long.parseLong(System.getProperty("seed", String.valueOf(DEFAULT_SEED))),
+				Instant.parse(System.getProperty("startTime", DEFAULT_START_TIME)).toEpochMilli(),
+				Double.parseDouble(System.getProperty("eventsPerSecond", "0")));
+
+		long start = System.currentTimeMillis();
+
+		try (EventSink sink = createSink(args[0], noOfThreads)) {
+			loadGenerator.generate(sink, noOfEvents, noOfThreads);
+		}
+
+		long millis = Math.max(1, System.currentTimeMillis() - start);
+		//On stderr, stdout may be where the events go.
+		System.err.println("Generated " + loadGenerator.getGeneratedEvents() + " events (" + loadGenerator.getAttackEvents()
+				+ " of attacks) in " + millis + " ms, " + loadGenerator.getGeneratedEvents() * 1000 / millis + " events/s");
+	}
+
+	public static EventSink createSink(String output, int noOfThreads) throws IOException {
+		if (output.equals(STDOUT)) {
+			return new StreamSink(System.out);
+		} else if (output.startsWith(PIPE_PREFIX)) {
+			return new StreamSink(new FileOutputStream(output.substring(PIPE_PREFIX.length()), true));
+		} else if (output.startsWith(KAFKA_PREFIX)) {
+			String brokersAndTopic = output.substring(KAFKA_PREFIX.length());
+			int separator = brokersAndTopic.lastIndexOf('/');
+			checkArgument(separator > 0 && separator < brokersAndTopic.length() - 1, "Expected kafka://<brokers>/<topic>");
+
+			return new KafkaSink(brokersAndTopic.substring(0, separator), brokersAndTopic.substring(separator + 1));
+		} else {
+			return new NdjsonFileSink(output, noOfThreads);
+		}
+	}
+
+	/**
+	 * Generates the events on the given number of threads and returns once all of them are written.
+	 *
+	 * @param noOfEvents events over all threads, 0 to generate until the thread is interrupted
+	 */
+	public void generate(EventSink sink, long noOfEvents, int noOfThreads) throws IOException, InterruptedException {
+		checkArgument(noOfThreads > 0, "At least one thread is needed");
+		checkArgument(noOfEvents >= 0, "The number of events can't be negative");
+
+		ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+		SplittableRandom seeds = new SplittableRandom(seed);
+		List<Future<Void>> threads = new ArrayList<>();
+
+		for (int thread = 0; thread < noOfThreads; thread++) {
+			//The first threads take one more event if they don't divide evenly.
+			long eventsOfThread = noOfEvents == 0 ? Long.MAX_VALUE
+					: noOfEvents / noOfThreads + (thread < noOfEvents % noOfThreads ? 1 : 0);
+
+			threads.add(executor.submit(new GeneratorThread(thread, new LogEventGenerator(profile, seeds.nextLong(), startMillis),
+					sink, eventsOfThread, eventsPerSecond / noOfThreads)));
+		}
+		executor.shutdown();
+
+		try {
+			long lastReport = System.currentTimeMillis();
+			long lastEvents = 0;
+
+			for (Future<Void> thread : threads) {
+				while (!thread.isDone()) {
+					Thread.sleep(100);
+
+					long now = System.currentTimeMillis();
+					if (now - lastReport >= REPORT_INTERVAL_MILLIS) {
+						long events = generatedEvents.get();
+						logger.info("Generated " + events + " events, " + (events - lastEvents) * 1000 / (now - lastReport) + " events/s");
+
+						lastReport = now;
+						lastEvents = events;
+					}
+				}
+
+				thread.get();
+			}
+		} catch (ExecutionException e) {
+			throw new IOException("Generating events failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public long getGeneratedEvents() {
+		return generatedEvents.get();
+	}
+
+	public long getAttackEvents() {
+		return attackEvents.get();
+	}
+
+	private class GeneratorThread implements Callable<Void> {
+		private final int thread;
+		private final LogEventGenerator generator;
+		private final EventSink sink;
+		private final long noOfEvents;
+		private final double eventsPerSecond;
+
+		private GeneratorThread(int thread, LogEventGenerator generator, EventSink sink, long noOfEvents, double eventsPerSecond) {
+			this.thread = thread;
+			this.generator = generator;
+			this.sink = sink;
+			this.noOfEvents = noOfEvents;
+			this.eventsPerSecond = eventsPerSecond;
+		}
+
+		@Override
+		public Void call() throws IOException, InterruptedException {
+			StringBuilder block = new StringBuilder(BLOCK_CHARS);
+			long start = System.nanoTime();
+			long written = 0;
+
+			while (written < noOfEvents && !Thread.currentThread().isInterrupted()) {
+				int blockEvents = (int) Math.min(BLOCK_EVENTS, noOfEvents - written);
+				int blockAttacks = 0;
+
+				block.setLength(0);
+				for (int i = 0; i < blockEvents; i++) {
+					if (generator.appendEvent(block)) {
+						blockAttacks++;
+					}
+				}
+
+				sink.write(thread, block.toString(), blockEvents);
+
+				written += blockEvents;
+				generatedEvents.addAndGet(blockEvents);
+				attackEvents.addAndGet(blockAttacks);
+
+				if (eventsPerSecond > 0) {
+					//Wait until the events written so far are due.
+					long dueNanos = start + (long) (written * 1000000000L / eventsPerSecond);
+					long waitNanos = dueNanos - System.nanoTime();
+
+					if (waitNanos > 0) {
+						Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+					}
+				}
+			}
+
+			return null;
+		}
+	}
+}
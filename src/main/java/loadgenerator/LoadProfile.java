@@ -0,0 +1,211 @@
+package loadgenerator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * What the generated traffic looks like: the distributions of verbs, responses and cities of normal requests, and how
+ * often an attack burst starts, how long it lasts and what its requests look like.
+ *
+ * Cities come from a gazetteer in either of the formats GazetteerGeocoder reads, so the coordinates of the events are
+ * the ones the engine's own geocoder knows. Without a city distribution every city of the gazetteer is equally
+ * likely.
+ */
+public class LoadProfile {
+	public static final String DEFAULT_VERBS = "GET:0.6,POST:0.1,DELETE:0.1,PUT:0.2";
+	public static final String DEFAULT_RESPONSES = "200:0.9,404:0.04,500:0.02,301:0.04";
+	public static final String DEFAULT_ATTACK_VERBS = "BADVERB:0.5,POST:0.3,DELETE:0.2";
+	public static final String DEFAULT_ATTACK_RESPONSES = "404:0.5,403:0.3,500:0.2";
+	public static final String DEFAULT_GAZETTEER_FILE = "src/main/resources/gazetteer.tsv";
+	public static final double DEFAULT_ATTACK_RATE = 0;
+	public static final int DEFAULT_BURST_LENGTH = 1000;
+
+	private static final int GEONAMES_COLUMNS = 15;
+
+	private final WeightedChoice verbs;
+	private final WeightedChoice responses;
+	private final List<City> cities;
+	private final WeightedChoice cityChoice;
+	private final WeightedChoice attackVerbs;
+	private final WeightedChoice attackResponses;
+	private final double attackRate;
+	private final int burstLength;
+
+	/**
+	 * @param cityChoice  names of cities of the gazetteer with their weights, or null for all of them equally likely
+	 * @param attackRate  chance of an attack burst starting with any normal event, 0 for no attacks
+	 * @param burstLength number of events of a burst
+	 */
+	public LoadProfile(WeightedChoice verbs, WeightedChoice responses, List<City> cities, WeightedChoice cityChoice,
+	                   WeightedChoice attackVerbs, WeightedChoice attackResponses, double attackRate, int burstLength) {
+		checkArgument(!cities.isEmpty(), "No cities");
+		checkArgument(attackRate >= 0 && attackRate <= 1, "Attack rate has to be between 0 and 1");
+		checkArgument(burstLength > 0, "Burst length has to be positive");
+
+		this.verbs = verbs;
+		this.responses = responses;
+		this.attackVerbs = attackVerbs;
+		this.attackResponses = attackResponses;
+		this.attackRate = attackRate;
+		this.burstLength = burstLength;
+
+		if (cityChoice == null) {
+			this.cities = cities;
+			this.cityChoice = null;
+		} else {
+			//Only the cities that are chosen from, in the order of the choice.
+			Map<String, City> citiesByName = new HashMap<>();
+			for (City city : cities) {
+				if (!citiesByName.containsKey(city.getName())) {
+					citiesByName.put(city.getName(), city);
+				}
+			}
+
+			List<City> chosen = new ArrayList<>();
+			for (int i = 0; i < cityChoice.size(); i++) {
+				City city = citiesByName.get(cityChoice.getValue(i));
+				checkArgument(city != null, "City " + cityChoice.getValue(i) + " is not in the gazetteer");
+				chosen.add(city);
+			}
+
+			this.cities = chosen;
+			this.cityChoice = cityChoice;
+		}
+	}
+
+	/**
+	 * The profile given with -Dverbs=..., -Dresponses=..., -Dcities=..., -DattackVerbs=..., -DattackResponses=...
+	 * (all "value:weight,..."), -DattackRate=..., -DburstLength=... and -Dgazetteer=...
+	 */
+	public static LoadProfile fromSystemProperties() throws IOException {
+		String cities = System.getProperty("cities");
+
+		return new LoadProfile(
+				WeightedChoice.parse(System.getProperty("verbs", DEFAULT_VERBS)),
+				WeightedChoice.parse(System.getProperty("responses", DEFAULT_RESPONSES)),
+				loadCities(System.getProperty("gazetteer", DEFAULT_GAZETTEER_FILE)),
+				cities == null ? null : WeightedChoice.parse(cities),
+				WeightedChoice.parse(System.getProperty("attackVerbs", DEFAULT_ATTACK_VERBS)),
+				WeightedChoice.parse(System.getProperty("attackResponses", DEFAULT_ATTACK_RESPONSES)),
+				Double.parseDouble(System.getProperty("attackRate", String.valueOf(DEFAULT_ATTACK_RATE))),
+				Integer.parseInt(System.getProperty("burstLength", String.valueOf(DEFAULT_BURST_LENGTH))));
+	}
+
+	/**
+	 * The cities of a gazetteer, see GazetteerGeocoder for the formats.
+	 */
+	public static List<City> loadCities(String gazetteerFile) throws IOException {
+		List<City> cities = new ArrayList<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(gazetteerFile), StandardCharsets.UTF_8)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+
+				String[] fields = line.split("\t", -1);
+
+				try {
+					if (fields.length >= GEONAMES_COLUMNS) {
+						cities.add(new City(fields[1], fields[8], null, Double.parseDouble(fields[4]),
+								Double.parseDouble(fields[5])));
+					} else if (fields.length >= 4) {
+						List<String> countries = Arrays.asList(fields[1].split("\\|"));
+						cities.add(new City(fields[0], countries.get(0), countries.size() > 1 ? countries.get(1) : null,
+								Double.parseDouble(fields[2]), Double.parseDouble(fields[3])));
+					}
+				} catch (NumberFormatException e) {
+					//Same lines as the geocoder skips.
+				}
+			}
+		}
+
+		return cities;
+	}
+
+	public WeightedChoice getVerbs() {
+		return verbs;
+	}
+
+	public WeightedChoice getResponses() {
+		return responses;
+	}
+
+	public List<City> getCities() {
+		return cities;
+	}
+
+	/**
+	 * Null if every city is equally likely.
+	 */
+	public WeightedChoice getCityChoice() {
+		return cityChoice;
+	}
+
+	public WeightedChoice getAttackVerbs() {
+		return attackVerbs;
+	}
+
+	public WeightedChoice getAttackResponses() {
+		return attackResponses;
+	}
+
+	public double getAttackRate() {
+		return attackRate;
+	}
+
+	public int getBurstLength() {
+		return burstLength;
+	}
+
+	public static class City {
+		private final String name;
+		private final String countryCode;
+		private final String countryName;
+		private final double latitude;
+		private final double longitude;
+
+		public City(String name, String countryCode, String countryName, double latitude, double longitude) {
+			this.name = name;
+			this.countryCode = countryCode;
+			this.countryName = countryName;
+			this.latitude = latitude;
+			this.longitude = longitude;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getCountryCode() {
+			return countryCode;
+		}
+
+		/**
+		 * Null if the gazetteer only has the code.
+		 */
+		public String getCountryName() {
+			return countryName;
+		}
+
+		public double getLatitude() {
+			return latitude;
+		}
+
+		public double getLongitude() {
+			return longitude;
+		}
+	}
+}
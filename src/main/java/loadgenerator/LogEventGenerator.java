@@ -0,0 +1,269 @@
+package loadgenerator;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Generates Logstash events the way the COMBINEDAPACHELOG grok pattern and the geoip filter produce them (see
+ * src/main/resources/schema.json), one line of JSON per event.
+ *
+ * The events are appended straight to a StringBuilder: every constant piece of JSON (the fields of the verbs,
+ * responses, agents and the whole geoip object of a city) is escaped once up front, and the timestamps are only
+ * formatted again when the second changes. Generators are seeded, so the same seed always gives the same events, and
+ * they are not thread safe, every thread needs its own.
+ *
+ * Now and then (see LoadProfile) an attack burst starts: a run of events from one address and city with the verbs,
+ * responses and requests of a scan, much closer together in time than normal traffic.
+ */
+public class LogEventGenerator {
+	//Same resources as artificialLogDataGenerator.py, the last one gets an app id appended.
+	private static final String[] RESOURCES = {"/list", "/wp-content", "/wp-admin", "/explore", "/search/tag/list",
+			"/app/main/posts", "/posts/posts/explore", "/apps/cart.jsp?appID="};
+	private static final String[] ATTACK_RESOURCES = {"/wp-login.php", "/wp-admin/admin-ajax.php", "/phpmyadmin/index.php",
+			"/cgi-bin/php?-d+allow_url_include=on", "/../../../../etc/passwd", "/login?user=admin'--", "/.env"};
+	private static final String[] REFERRERS = {"http://www.google.com/search?q=logstash", "http://semicomplete.com/",
+			"http://www.bing.com/", "-"};
+	private static final String[] AGENTS = {
+			"Mozilla/5.0 (X11; Linux x86_64; rv:45.0) Gecko/20100101 Firefox/45.0",
+			"Mozilla/5.0 (Macintosh; Intel Mac OS X 10_9_1) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/32.0.1700.77 Safari/537.36",
+			"Mozilla/5.0 (Macintosh; Intel Mac OS X 10_11_4) AppleWebKit/601.5.17 (KHTML, like Gecko) Version/9.1 Safari/601.5.17",
+			"Mozilla/5.0 (compatible; MSIE 10.0; Windows NT 6.1; Trident/6.0)",
+			"Opera/9.80 (Windows NT 6.1; U; en) Presto/2.10.229 Version/11.62"};
+	private static final String ATTACK_AGENT = "sqlmap/1.0-dev (http://sqlmap.org)";
+	private static final WeightedChoice AGENT_CHOICE = WeightedChoice.parse("0:0.5,1:0.3,2:0.1,3:0.05,4:0.05");
+
+	private static final int APP_ID_MIN = 1000;
+	private static final int APP_ID_MAX = 10000;
+
+	//Normal events are up to this far apart, the events of an attack burst up to 1ms.
+	private static final int MAX_GAP_MILLIS = 20;
+
+	private static final DateTimeFormatter ISO_SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss", Locale.ENGLISH)
+			.withZone(ZoneOffset.UTC);
+	private static final DateTimeFormatter APACHE_SECONDS = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss '+0000'", Locale.ENGLISH)
+			.withZone(ZoneOffset.UTC);
+
+	private final LoadProfile profile;
+	private final SplittableRandom random;
+
+	private final String[] verbs;
+	private final String[] responses;
+	private final String[] attackVerbs;
+	private final String[] attackResponses;
+	private final String[] resources;
+	private final String[] attackResources;
+	private final String[] referrers;
+	private final String[] agents;
+	private final String attackAgent;
+	private final String[] geoips;
+
+	private long millis;
+	private long second = Long.MIN_VALUE;
+	private String isoSecond;
+	private String apacheSecond;
+
+	private int burstRemaining;
+	private int burstCity;
+	private final int[] burstAddress = new int[4];
+	private final int[] address = new int[4];
+
+	public LogEventGenerator(LoadProfile profile, long seed, long startMillis) {
+		this.profile = profile;
+		this.random = new SplittableRandom(seed);
+		this.millis = startMillis;
+
+		verbs = escapeAll(profile.getVerbs());
+		responses = escapeAll(profile.getResponses());
+		attackVerbs = escapeAll(profile.getAttackVerbs());
+		attackResponses = escapeAll(profile.getAttackResponses());
+		resources = escapeAll(RESOURCES);
+		attackResources = escapeAll(ATTACK_RESOURCES);
+		referrers = escapeAll(REFERRERS);
+		agents = escapeAll(AGENTS);
+		attackAgent = escape(ATTACK_AGENT);
+
+		geoips = new String[profile.getCities().size()];
+		for (int i = 0; i < geoips.length; i++) {
+			geoips[i] = geoip(profile.getCities().get(i));
+		}
+	}
+
+	/**
+	 * Appends one event and a line break. Returns whether the event is part of an attack burst.
+	 */
+	public boolean appendEvent(StringBuilder out) {
+		if (burstRemaining == 0 && profile.getAttackRate() > 0 && random.nextDouble() < profile.getAttackRate()) {
+			startBurst();
+		}
+
+		boolean attack = burstRemaining > 0;
+		String verb;
+		String response;
+		String resource;
+		String agent;
+		int city;
+		int[] clientAddress;
+
+		if (attack) {
+			burstRemaining--;
+			millis += random.nextInt(2);
+
+			verb = attackVerbs[profile.getAttackVerbs().pick(random)];
+			response = attackResponses[profile.getAttackResponses().pick(random)];
+			resource = attackResources[random.nextInt(attackResources.length)];
+			agent = attackAgent;
+			city = burstCity;
+			clientAddress = burstAddress;
+		} else {
+			millis += random.nextInt(MAX_GAP_MILLIS);
+
+			verb = verbs[profile.getVerbs().pick(random)];
+			response = responses[profile.getResponses().pick(random)];
+			resource = resources[random.nextInt(resources.length)];
+			agent = agents[AGENT_CHOICE.pick(random)];
+			city = pickCity();
+			randomAddress(address);
+			clientAddress = address;
+		}
+
+		int appId = resource == resources[resources.length - 1] ? random.nextInt(APP_ID_MIN, APP_ID_MAX) : -1;
+		int bytes = response.charAt(0) == '2' ? 1000 + random.nextInt(9000) : 100 + random.nextInt(400);
+		String referrer = referrers[random.nextInt(referrers.length)];
+
+		updateTimestamps();
+
+		out.append("{\"message\":\"");
+		appendAddress(out, clientAddress);
+		out.append(" - - [").append(apacheSecond).append("] \\\"").append(verb).append(' ');
+		appendRequest(out, resource, appId);
+		out.append(" HTTP/1.1\\\" ").append(response).append(' ').append(bytes)
+				.append(" \\\"").append(referrer).append("\\\" \\\"").append(agent).append("\\\"\"");
+		out.append(",\"@version\":\"1\",\"@timestamp\":\"").append(isoSecond).append('.');
+		appendMillis(out, (int) (millis % 1000));
+		out.append("Z\",\"path\":\"/var/log/apache2/access.log\",\"host\":\"web-").append(random.nextInt(10))
+				.append("\",\"type\":\"apache-access\",\"clientip\":\"");
+		appendAddress(out, clientAddress);
+		out.append("\",\"ident\":\"-\",\"auth\":\"-\",\"timestamp\":\"").append(apacheSecond)
+				.append("\",\"verb\":\"").append(verb)
+				.append("\",\"request\":\"");
+		appendRequest(out, resource, appId);
+		out.append("\",\"httpversion\":\"1.1\",\"response\":\"").append(response)
+				.append("\",\"bytes\":\"").append(bytes)
+				.append("\",\"referrer\":\"\\\"").append(referrer)
+				.append("\\\"\",\"agent\":\"\\\"").append(agent)
+				.append("\\\"\",\"geoip\":{\"ip\":\"");
+		appendAddress(out, clientAddress);
+		out.append('"').append(geoips[city]).append('\n');
+
+		return attack;
+	}
+
+	private void startBurst() {
+		burstRemaining = profile.getBurstLength();
+		burstCity = pickCity();
+		randomAddress(burstAddress);
+	}
+
+	private int pickCity() {
+		return profile.getCityChoice() == null ? random.nextInt(geoips.length) : profile.getCityChoice().pick(random);
+	}
+
+	private void randomAddress(int[] octets) {
+		//Unicast only.
+		octets[0] = 1 + random.nextInt(223);
+		octets[1] = random.nextInt(256);
+		octets[2] = random.nextInt(256);
+		octets[3] = 1 + random.nextInt(254);
+	}
+
+	private void updateTimestamps() {
+		long currentSecond = Math.floorDiv(millis, 1000);
+
+		if (currentSecond != second) {
+			second = currentSecond;
+
+			Instant instant = Instant.ofEpochSecond(currentSecond);
+			isoSecond = ISO_SECONDS.format(instant);
+			apacheSecond = APACHE_SECONDS.format(instant);
+		}
+	}
+
+	private static void appendAddress(StringBuilder out, int[] octets) {
+		out.append(octets[0]).append('.').append(octets[1]).append('.').append(octets[2]).append('.').append(octets[3]);
+	}
+
+	private static void appendRequest(StringBuilder out, String resource, int appId) {
+		out.append(resource);
+		if (appId >= 0) {
+			out.append(appId);
+		}
+	}
+
+	private static void appendMillis(StringBuilder out, int millis) {
+		if (millis < 100) {
+			out.append('0');
+		}
+		if (millis < 10) {
+			out.append('0');
+		}
+		out.append(millis);
+	}
+
+	/**
+	 * The geoip object of a city after its "ip" field, up to the end of the event.
+	 */
+	private static String geoip(LoadProfile.City city) {
+		StringBuilder geoip = new StringBuilder();
+
+		geoip.append(",\"country_code2\":\"").append(escape(city.getCountryCode())).append('"');
+		if (city.getCountryName() != null) {
+			geoip.append(",\"country_name\":\"").append(escape(city.getCountryName())).append('"');
+		}
+		geoip.append(",\"city_name\":\"").append(escape(city.getName()))
+				.append("\",\"latitude\":").append(city.getLatitude())
+				.append(",\"longitude\":").append(city.getLongitude())
+				.append(",\"location\":[").append(city.getLongitude()).append(',').append(city.getLatitude()).append("]}}");
+
+		return geoip.toString();
+	}
+
+	private static String[] escapeAll(WeightedChoice choice) {
+		String[] escaped = new String[choice.size()];
+		for (int i = 0; i < escaped.length; i++) {
+			escaped[i] = escape(choice.getValue(i));
+		}
+		return escaped;
+	}
+
+	private static String[] escapeAll(String[] values) {
+		String[] escaped = new String[values.length];
+		for (int i = 0; i < escaped.length; i++) {
+			escaped[i] = escape(values[i]);
+		}
+		return escaped;
+	}
+
+	/**
+	 * The contents of a JSON string with the value.
+	 */
+	static String escape(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			if (c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			} else if (c < 0x20) {
+				escaped.append(String.format("\\u%04x", (int) c));
+			} else {
+				escaped.append(c);
+			}
+		}
+
+		return escaped.toString();
+	}
+}
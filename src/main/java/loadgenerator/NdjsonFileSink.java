@@ -0,0 +1,46 @@
+package loadgenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One newline delimited JSON file per generator thread (events-0.ndjson, events-1.ndjson, ...), so the threads never
+ * wait for each other and every file is the same for the same seed. The files can be fed to
+ * ParallelJsonToCsvConverter or to Logstash as they are.
+ */
+public class NdjsonFileSink implements EventSink {
+	private final FileChannel[] files;
+
+	public NdjsonFileSink(String outputDir, int noOfThreads) throws IOException {
+		Path dir = Paths.get(outputDir);
+		Files.createDirectories(dir);
+
+		files = new FileChannel[noOfThreads];
+		for (int i = 0; i < noOfThreads; i++) {
+			files[i] = FileChannel.open(dir.resolve("events-" + i + ".ndjson"), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		}
+	}
+
+	@Override
+	public void write(int thread, String events, int noOfEvents) throws IOException {
+		ByteBuffer bytes = ByteBuffer.wrap(events.getBytes(StandardCharsets.UTF_8));
+
+		while (bytes.hasRemaining()) {
+			files[thread].write(bytes);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (FileChannel file : files) {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package loadgenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Everything into one stream, e.g. stdout piped into Logstash or kafka-console-producer, or a named pipe. Blocks are
+ * written whole, so the lines of different threads are never mixed up, but the order of the blocks of different
+ * threads is not fixed.
+ */
+public class StreamSink implements EventSink {
+	private final OutputStream out;
+
+	public StreamSink(OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void write(int thread, String events, int noOfEvents) throws IOException {
+		//Encoded outside of the lock, only the write itself is serialised.
+		byte[] bytes = events.getBytes(StandardCharsets.UTF_8);
+
+		synchronized (out) {
+			out.write(bytes);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (out) {
+			out.close();
+		}
+	}
+}
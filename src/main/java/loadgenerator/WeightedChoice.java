@@ -0,0 +1,100 @@
+package loadgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Picks one of a few values with given weights, e.g. "GET:0.6,POST:0.1,PUT:0.2,DELETE:0.1". The weights don't have
+ * to add up to 1, a value without a weight has weight 1.
+ */
+public class WeightedChoice {
+	private final String[] values;
+	private final double[] cumulativeWeights;
+
+	public WeightedChoice(List<String> values, List<Double> weights) {
+		checkArgument(!values.isEmpty(), "Nothing to choose from");
+		checkArgument(values.size() == weights.size(), "Every value needs a weight");
+
+		this.values = values.toArray(new String[values.size()]);
+		this.cumulativeWeights = new double[weights.size()];
+
+		double total = 0;
+		for (int i = 0; i < weights.size(); i++) {
+			checkArgument(weights.get(i) >= 0, "Negative weight for " + values.get(i));
+
+			total += weights.get(i);
+			cumulativeWeights[i] = total;
+		}
+
+		checkArgument(total > 0, "All weights are 0");
+
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			cumulativeWeights[i] /= total;
+		}
+	}
+
+	/**
+	 * Parses "value:weight,value:weight,...".
+	 */
+	public static WeightedChoice parse(String spec) {
+		List<String> values = new ArrayList<>();
+		List<Double> weights = new ArrayList<>();
+
+		for (String entry : spec.split(",")) {
+			String trimmed = entry.trim();
+			if (trimmed.isEmpty()) {
+				continue;
+			}
+
+			int separator = trimmed.lastIndexOf(':');
+			if (separator < 0) {
+				values.add(trimmed);
+				weights.add(1.0);
+			} else {
+				values.add(trimmed.substring(0, separator).trim());
+				weights.add(Double.parseDouble(trimmed.substring(separator + 1).trim()));
+			}
+		}
+
+		return new WeightedChoice(values, weights);
+	}
+
+	/**
+	 * Same weight for every value.
+	 */
+	public static WeightedChoice uniform(List<String> values) {
+		List<Double> weights = new ArrayList<>();
+		for (int i = 0; i < values.size(); i++) {
+			weights.add(1.0);
+		}
+
+		return new WeightedChoice(values, weights);
+	}
+
+	/**
+	 * Position of the value that was picked, see getValue.
+	 */
+	public int pick(SplittableRandom random) {
+		double point = random.nextDouble();
+
+		//Linear, there are only ever a handful of values.
+		for (int i = 0; i < cumulativeWeights.length - 1; i++) {
+			if (point < cumulativeWeights[i]) {
+				return i;
+			}
+		}
+
+		return cumulativeWeights.length - 1;
+	}
+
+	public String getValue(int index) {
+		return values[index];
+	}
+
+	public int size() {
+		return values.length;
+	}
+}
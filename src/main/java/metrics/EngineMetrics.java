@@ -0,0 +1,88 @@
+package metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * The metrics of the engine in one registry per JVM: counters, histograms, timers and gauges of the stages of the
+ * batch processing (see StreamHandler), exported through JMX and, if a port is given, as Prometheus text on
+ * http://host:port/metrics (see PrometheusEndpoint).
+ *
+ * Metrics are only updated on the driver from values the batch processing has at hand anyway, so none of them adds a
+ * Spark job.
+ */
+public class EngineMetrics {
+	private static final Logger logger = LoggerFactory.getLogger(EngineMetrics.class);
+
+	//JMX domain, and the namespace of the Prometheus names.
+	public static final String JMX_DOMAIN = "mlanalysisengine";
+
+	private static final MetricRegistry registry = new MetricRegistry();
+
+	private static JmxReporter jmxReporter;
+	private static PrometheusEndpoint prometheusEndpoint;
+
+	private EngineMetrics() {
+	}
+
+	public static MetricRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Registers the gauge unless there is a metric with that name already, and returns whichever is registered.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Gauge<T> gauge(String name, Gauge<T> gauge) {
+		synchronized (registry) {
+			Metric existing = registry.getMetrics().get(name);
+
+			if (existing != null) {
+				return (Gauge<T>) existing;
+			}
+
+			return registry.register(name, gauge);
+		}
+	}
+
+	/**
+	 * Exports the metrics as MBeans in the JMX_DOMAIN domain. Does nothing if it is running already.
+	 */
+	public static synchronized void startJmxReporter() {
+		if (jmxReporter == null) {
+			jmxReporter = JmxReporter.forRegistry(registry).inDomain(JMX_DOMAIN).build();
+			jmxReporter.start();
+
+			logger.info("Exporting metrics through JMX in domain " + JMX_DOMAIN);
+		}
+	}
+
+	/**
+	 * Serves the metrics in the Prometheus text format on the port. Does nothing if it is running already.
+	 */
+	public static synchronized void startPrometheusEndpoint(int port) throws IOException {
+		if (prometheusEndpoint == null) {
+			prometheusEndpoint = PrometheusEndpoint.start(registry, JMX_DOMAIN, port);
+
+			logger.info("Serving Prometheus metrics on port " + port + PrometheusEndpoint.PATH);
+		}
+	}
+
+	public static synchronized void stop() {
+		if (jmxReporter != null) {
+			jmxReporter.stop();
+			jmxReporter = null;
+		}
+
+		if (prometheusEndpoint != null) {
+			prometheusEndpoint.stop();
+			prometheusEndpoint = null;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves a MetricRegistry in the Prometheus text exposition format (version 0.0.4) from the JDK's HTTP server, so
+ * no Prometheus client library is needed.
+ *
+ * Names are prefixed with the namespace and everything that is not allowed in a Prometheus name becomes '_', so
+ * "stage.kmeans" is exported as "mlanalysisengine_stage_kmeans". Counters and gauges are exported as they are
+ * (gauges only if they are numbers or booleans) and meters as counters. Histograms and timers are exported as a gauge
+ * of their median, 75th, 95th and 99th percentile (label quantile) and a <name>_count counter. They are not exported
+ * as summaries because Dropwizard does not keep the sum of the values that a summary needs next to the count. Timers
+ * are in seconds.
+ */
+public class PrometheusEndpoint {
+	public static final String PATH = "/metrics";
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99};
+	private static final double SECONDS_PER_NANO = 1.0 / TimeUnit.SECONDS.toNanos(1);
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	private PrometheusEndpoint(HttpServer server, ExecutorService executor) {
+		this.server = server;
+		this.executor = executor;
+	}
+
+	public static PrometheusEndpoint start(final MetricRegistry registry, final String namespace, int port) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+
+		//One daemon thread is plenty for a scrape every few seconds and does not keep the JVM alive.
+		ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "prometheus-endpoint");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = format(registry, namespace).getBytes(StandardCharsets.UTF_8);
+
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, body.length);
+
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+
+		return new PrometheusEndpoint(server, executor);
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * All metrics of the registry in the text format.
+	 */
+	public static String format(MetricRegistry registry, String namespace) {
+		StringBuilder text = new StringBuilder();
+
+		for (Map.Entry<String, Gauge<?>> gauge : gauges(registry).entrySet()) {
+			Object value = gauge.getValue().getValue();
+			double number;
+
+			if (value instanceof Number) {
+				number = ((Number) value).doubleValue();
+			} else if (value instanceof Boolean) {
+				number = (Boolean) value ? 1 : 0;
+			} else {
+				continue;
+			}
+
+			String name = name(namespace, gauge.getKey());
+			appendType(text, name, "gauge");
+			appendSample(text, name, null, number);
+		}
+
+		for (Map.Entry<String, Counter> counter : registry.getCounters().entrySet()) {
+			String name = name(namespace, counter.getKey());
+			appendType(text, name, "counter");
+			appendSample(text, name, null, counter.getValue().getCount());
+		}
+
+		for (Map.Entry<String, Meter> meter : registry.getMeters().entrySet()) {
+			String name = name(namespace, meter.getKey()) + "_total";
+			appendType(text, name, "counter");
+			appendSample(text, name, null, meter.getValue().getCount());
+		}
+
+		for (Map.Entry<String, Histogram> histogram : registry.getHistograms().entrySet()) {
+			appendQuantiles(text, name(namespace, histogram.getKey()), histogram.getValue().getSnapshot(),
+					histogram.getValue().getCount(), 1);
+		}
+
+		for (Map.Entry<String, Timer> timer : registry.getTimers().entrySet()) {
+			appendQuantiles(text, name(namespace, timer.getKey()) + "_seconds", timer.getValue().getSnapshot(),
+					timer.getValue().getCount(), SECONDS_PER_NANO);
+		}
+
+		return text.toString();
+	}
+
+	private static void appendQuantiles(StringBuilder text, String name, Snapshot snapshot, long count, double scale) {
+		appendType(text, name, "gauge");
+
+		for (double quantile : QUANTILES) {
+			appendSample(text, name, "quantile=\"" + quantile + "\"", snapshot.getValue(quantile) * scale);
+		}
+
+		appendType(text, name + "_count", "counter");
+		appendSample(text, name + "_count", null, count);
+	}
+
+	//MetricRegistry hands out its gauges with the raw type.
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Map<String, Gauge<?>> gauges(MetricRegistry registry) {
+		return (Map) registry.getGauges();
+	}
+
+	private static void appendType(StringBuilder text, String name, String type) {
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void appendSample(StringBuilder text, String name, String labels, double value) {
+		text.append(name);
+		if (labels != null) {
+			text.append('{').append(labels).append('}');
+		}
+		text.append(' ');
+
+		if (Double.isNaN(value)) {
+			text.append("NaN");
+		} else if (Double.isInfinite(value)) {
+			text.append(value > 0 ? "+Inf" : "-Inf");
+		} else {
+			text.append(value);
+		}
+
+		text.append('\n');
+	}
+
+	static String name(String namespace, String metricName) {
+		StringBuilder name = new StringBuilder(namespace.length() + 1 + metricName.length());
+		String full = namespace + "_" + metricName;
+
+		for (int i = 0; i < full.length(); i++) {
+			char c = full.charAt(i);
+			boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+					|| (c >= '0' && c <= '9' && i > 0);
+
+			name.append(allowed ? c : '_');
+		}
+
+		return name.toString();
+	}
+}
@@ -0,0 +1,133 @@
+package persistence;
+
+import classification.Classifier;
+import classification.ClassifierModel;
+import feature.CategoryDictionary;
+import org.apache.spark.SparkContext;
+import org.apache.spark.mllib.clustering.StreamingKMeansModel;
+import org.apache.spark.mllib.linalg.Vector;
+import org.apache.spark.mllib.linalg.Vectors;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One version written by the ModelSnapshotStore. Nothing is read until it is asked for, and every part is only read
+ * once.
+ */
+public class ModelSnapshot {
+	private final String version;
+	private final File versionDir;
+
+	private List<CategoryDictionary> dictionaries;
+	private StreamingKMeansModel kmeansModel;
+	private boolean kmeansModelLoaded;
+
+	ModelSnapshot(String version, File versionDir) {
+		this.version = version;
+		this.versionDir = versionDir;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public List<CategoryDictionary> getDictionaries() throws IOException {
+		if (dictionaries == null) {
+			dictionaries = readDictionaries(new File(versionDir, ModelSnapshotStore.DICTIONARIES_FILE));
+		}
+
+		return dictionaries;
+	}
+
+	/**
+	 * The cluster centres with their weights, or null if the snapshot was written before anything was clustered.
+	 */
+	public StreamingKMeansModel getKMeansModel() throws IOException {
+		if (!kmeansModelLoaded) {
+			File file = new File(versionDir, ModelSnapshotStore.KMEANS_FILE);
+
+			kmeansModel = file.exists() ? readKMeans(file) : null;
+			kmeansModelLoaded = true;
+		}
+
+		return kmeansModel;
+	}
+
+	/**
+	 * Model of the classifier, or null if the snapshot has none for it.
+	 */
+	public ClassifierModel getClassifierModel(SparkContext sparkContext, Classifier classifier) {
+		File modelDir = new File(new File(versionDir, ModelSnapshotStore.CLASSIFIERS_DIR), classifier.getName());
+
+		if (!modelDir.isDirectory()) {
+			return null;
+		}
+
+		return classifier.load(sparkContext, modelDir.toURI().toString());
+	}
+
+	private static List<CategoryDictionary> readDictionaries(File file) throws IOException {
+		if (!file.exists()) {
+			return Collections.emptyList();
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			int noOfDictionaries = in.readInt();
+			List<CategoryDictionary> dictionaries = new ArrayList<>(noOfDictionaries);
+
+			for (int i = 0; i < noOfDictionaries; i++) {
+				String columnName = readString(in);
+				int maxCategories = in.readInt();
+				int size = in.readInt();
+
+				List<String> categories = new ArrayList<>(size);
+				for (int j = 0; j < size; j++) {
+					categories.add(readString(in));
+				}
+
+				CategoryDictionary dictionary = new CategoryDictionary(columnName, maxCategories);
+				dictionary.addAll(categories);
+				dictionaries.add(dictionary);
+			}
+
+			return dictionaries;
+		}
+	}
+
+	private static StreamingKMeansModel readKMeans(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			int noOfClusters = in.readInt();
+			int noOfFeatures = in.readInt();
+
+			Vector[] centres = new Vector[noOfClusters];
+			double[] weights = new double[noOfClusters];
+
+			for (int i = 0; i < noOfClusters; i++) {
+				weights[i] = in.readDouble();
+
+				double[] values = new double[noOfFeatures];
+				for (int j = 0; j < noOfFeatures; j++) {
+					values[j] = in.readDouble();
+				}
+				centres[i] = Vectors.dense(values);
+			}
+
+			return new StreamingKMeansModel(centres, weights);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,250 @@
+package persistence;
+
+import classification.ClassifierModel;
+import feature.CategoryDictionary;
+import org.apache.commons.io.FileUtils;
+import org.apache.spark.SparkContext;
+import org.apache.spark.mllib.clustering.StreamingKMeansModel;
+import org.apache.spark.mllib.linalg.Vector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Versioned snapshots of everything the engine has learned: the category dictionaries of the features, the
+ * incremental KMeans centres and the latest model of every classifier.
+ *
+ * Every snapshot is written into a temporary directory that is renamed to v-<time> once it is complete, after which
+ * the LATEST file is replaced (atomically as well) to point to it. A crash while writing therefore leaves the previous
+ * snapshot in place. Only the newest versionsToKeep snapshots are kept.
+ *
+ * Layout of a version:
+ *   dictionaries            the category dictionaries
+ *   kmeans                  the cluster centres and their weights
+ *   classifiers/<name>/     the MLlib model of each classifier
+ *
+ * The snapshot directory is a local path, handed to MLlib as a file: URI so that it is not resolved against the
+ * default (HDFS) filesystem of the cluster. The executors write and read the parts of the classifier models
+ * themselves, so with a master other than local the directory has to be on a filesystem shared by the driver and all
+ * executors (NFS for example), mounted at the same path.
+ */
+public class ModelSnapshotStore {
+	private static final Logger logger = LoggerFactory.getLogger(ModelSnapshotStore.class);
+
+	static final String LATEST_FILE = "LATEST";
+	static final String DICTIONARIES_FILE = "dictionaries";
+	static final String KMEANS_FILE = "kmeans";
+	static final String CLASSIFIERS_DIR = "classifiers";
+
+	private static final String VERSION_PREFIX = "v-";
+	private static final String TEMP_PREFIX = ".tmp-";
+
+	private final File snapshotDir;
+	private final int versionsToKeep;
+	private final long intervalMillis;
+
+	private long lastWriteMillis;
+
+	public ModelSnapshotStore(String snapshotDir, int versionsToKeep, long intervalMillis) {
+		checkArgument(versionsToKeep > 0, "Need to keep at least one snapshot");
+		checkArgument(intervalMillis >= 0, "Snapshot interval can't be negative");
+
+		this.snapshotDir = new File(snapshotDir);
+		this.versionsToKeep = versionsToKeep;
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Whether the last snapshot is older than the snapshot interval.
+	 */
+	public boolean isDue(long now) {
+		return now - lastWriteMillis >= intervalMillis;
+	}
+
+	/**
+	 * Writes a new snapshot and makes it the latest one. Returns its version.
+	 *
+	 * @param kmeansModel      may be null if nothing has been clustered yet
+	 * @param classifierModels latest model per classifier name
+	 */
+	public String write(SparkContext sparkContext, Collection<CategoryDictionary> dictionaries, StreamingKMeansModel kmeansModel,
+	                    Map<String, ClassifierModel> classifierModels, long now) throws IOException {
+		String version = nextVersion(now);
+		File tempDir = new File(snapshotDir, TEMP_PREFIX + version);
+
+		FileUtils.deleteDirectory(tempDir);
+		FileUtils.forceMkdir(tempDir);
+
+		writeDictionaries(new File(tempDir, DICTIONARIES_FILE), dictionaries);
+
+		if (kmeansModel != null) {
+			writeKMeans(new File(tempDir, KMEANS_FILE), kmeansModel);
+		}
+
+		for (Map.Entry<String, ClassifierModel> classifierModel : classifierModels.entrySet()) {
+			File modelDir = new File(new File(tempDir, CLASSIFIERS_DIR), classifierModel.getKey());
+			classifierModel.getValue().getModel().save(sparkContext, modelDir.toURI().toString());
+		}
+
+		Files.move(tempDir.toPath(), new File(snapshotDir, version).toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		File latestTemp = new File(snapshotDir, TEMP_PREFIX + LATEST_FILE);
+		Files.write(latestTemp.toPath(), version.getBytes(StandardCharsets.UTF_8));
+		Files.move(latestTemp.toPath(), new File(snapshotDir, LATEST_FILE).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		lastWriteMillis = now;
+
+		logger.info("Wrote model snapshot " + version + " with " + classifierModels.size() + " classifier models");
+
+		deleteOldVersions();
+
+		return version;
+	}
+
+	/**
+	 * The latest snapshot, or null if there is none. Only the LATEST pointer is read here, the models are loaded when
+	 * they are asked for.
+	 */
+	public ModelSnapshot loadLatest() throws IOException {
+		File latestFile = new File(snapshotDir, LATEST_FILE);
+
+		if (!latestFile.exists()) {
+			return null;
+		}
+
+		String version = new String(Files.readAllBytes(latestFile.toPath()), StandardCharsets.UTF_8).trim();
+		File versionDir = new File(snapshotDir, version);
+
+		if (!versionDir.isDirectory()) {
+			logger.warn("Latest model snapshot " + version + " does not exist anymore");
+			return null;
+		}
+
+		return new ModelSnapshot(version, versionDir);
+	}
+
+	/**
+	 * Versions on disk, oldest first.
+	 */
+	public List<String> getVersions() {
+		List<String> versions = new ArrayList<>();
+		File[] files = snapshotDir.listFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory() && file.getName().startsWith(VERSION_PREFIX)) {
+					versions.add(file.getName());
+				}
+			}
+		}
+
+		//Zero padded, so the names sort by time.
+		Collections.sort(versions);
+
+		return versions;
+	}
+
+	private String nextVersion(long now) {
+		long time = now;
+		List<String> versions = getVersions();
+
+		while (versions.contains(versionName(time))) {
+			time++;
+		}
+
+		return versionName(time);
+	}
+
+	private static String versionName(long time) {
+		return VERSION_PREFIX + String.format("%015d", time);
+	}
+
+	private void deleteOldVersions() throws IOException {
+		List<String> versions = getVersions();
+
+		for (int i = 0; i < versions.size() - versionsToKeep; i++) {
+			FileUtils.deleteDirectory(new File(snapshotDir, versions.get(i)));
+		}
+
+		//Left overs of snapshots that were being written when the engine went down.
+		File[] files = snapshotDir.listFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory() && file.getName().startsWith(TEMP_PREFIX)) {
+					FileUtils.deleteDirectory(file);
+				}
+			}
+		}
+	}
+
+	private static void writeDictionaries(File file, Collection<CategoryDictionary> dictionaries) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(dictionaries.size());
+
+			for (CategoryDictionary dictionary : dictionaries) {
+				writeString(out, dictionary.getColumnName());
+				out.writeInt(dictionary.getMaxCategories());
+				out.writeInt(dictionary.size());
+
+				for (String category : dictionary.getCategories()) {
+					writeString(out, category);
+				}
+			}
+		}
+	}
+
+	private static void writeKMeans(File file, StreamingKMeansModel kmeansModel) throws IOException {
+		Vector[] centres = kmeansModel.clusterCenters();
+		double[] weights = kmeansModel.clusterWeights();
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(centres.length);
+			out.writeInt(centres.length == 0 ? 0 : centres[0].size());
+
+			for (int i = 0; i < centres.length; i++) {
+				out.writeDouble(weights[i]);
+
+				for (double value : centres[i].toArray()) {
+					out.writeDouble(value);
+				}
+			}
+		}
+	}
+
+	//Length prefixed rather than writeUTF, which can't write strings over 64KB (long requests).
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public String getSnapshotDir() {
+		return snapshotDir.getPath();
+	}
+
+	public int getVersionsToKeep() {
+		return versionsToKeep;
+	}
+
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+}
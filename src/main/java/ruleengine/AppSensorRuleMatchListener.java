@@ -0,0 +1,59 @@
+package ruleengine;
+
+import com.google.gson.JsonObject;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Flags events for AppSensor by publishing them to a Kafka topic, together with the best rule they matched.
+ *
+ * Only matches with at least the minimum score are flagged. Sending is asynchronous, so flagging does not add the
+ * round trip to the broker to the scoring latency.
+ */
+public class AppSensorRuleMatchListener implements RuleMatchListener, Closeable {
+	private final Producer<String, String> producer;
+	private final String topic;
+	private final double minScore;
+
+	public AppSensorRuleMatchListener(String brokers, String topic, double minScore) {
+		Properties props = new Properties();
+		props.put("bootstrap.servers", brokers);
+		props.put("acks", "1");
+		props.put("linger.ms", "5");
+		props.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+		props.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+
+		this.producer = new KafkaProducer<>(props);
+		this.topic = topic;
+		this.minScore = minScore;
+	}
+
+	@Override
+	public void onMatch(String event, Map<String, String> attributes, List<CompiledRule> matches) {
+		CompiledRule bestMatch = matches.get(0);
+
+		if (bestMatch.getScore() < minScore) {
+			return;
+		}
+
+		JsonObject flag = new JsonObject();
+		flag.addProperty("rule", bestMatch.toString());
+		flag.addProperty(bestMatch.getConsequentAttribute(), bestMatch.getConsequentValue());
+		flag.addProperty("score", bestMatch.getScore());
+		flag.addProperty("clientip", attributes.get("clientip"));
+		flag.addProperty("event", event);
+
+		producer.send(new ProducerRecord<String, String>(topic, attributes.get("clientip"), flag.toString()));
+	}
+
+	@Override
+	public void close() {
+		producer.close();
+	}
+}
@@ -0,0 +1,141 @@
+package ruleengine;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A rule of a rule file, e.g.
+ *
+ *   IF verb=GET AND response=200.0 THEN clusters=2 -- support=120 confidence=0.9 precision=0.88
+ *
+ * parsed into its antecedents (sorted by attribute), consequent and statistics. Values are normalised the same way
+ * as the attributes of the events they are matched against, so "200.0" in a rule matches "200" in an event.
+ */
+public class CompiledRule {
+	private static final String CONFIDENCE = "confidence";
+
+	private final TreeMap<String, String> antecedents;
+	private final String consequentAttribute;
+	private final String consequentValue;
+	private final Map<String, Double> statistics;
+	private final double score;
+
+	private CompiledRule(TreeMap<String, String> antecedents, String consequentAttribute, String consequentValue,
+	                     Map<String, Double> statistics) {
+		this.antecedents = antecedents;
+		this.consequentAttribute = consequentAttribute;
+		this.consequentValue = consequentValue;
+		this.statistics = statistics;
+
+		//Confidence if the rule has one, otherwise the last statistic (the evaluation metric of older rule files).
+		double lastStatistic = Double.NaN;
+		for (double statistic : statistics.values()) {
+			lastStatistic = statistic;
+		}
+		this.score = statistics.containsKey(CONFIDENCE) ? statistics.get(CONFIDENCE) : lastStatistic;
+	}
+
+	/**
+	 * Parses a line of a rule file, or returns null if it is not a rule.
+	 */
+	public static CompiledRule parse(String line) {
+		if (!line.startsWith("IF ")) {
+			return null;
+		}
+
+		int then = line.indexOf(" THEN ");
+		int separator = line.indexOf(" -- ", then);
+
+		if (then < 0) {
+			return null;
+		}
+
+		TreeMap<String, String> antecedents = new TreeMap<>();
+		for (String antecedent : line.substring(3, then).split(" AND ")) {
+			int equals = antecedent.indexOf('=');
+
+			if (equals <= 0) {
+				return null;
+			}
+			antecedents.put(antecedent.substring(0, equals), normalize(antecedent.substring(equals + 1)));
+		}
+
+		String consequent = separator < 0 ? line.substring(then + 6) : line.substring(then + 6, separator);
+		int equals = consequent.indexOf('=');
+
+		if (equals <= 0) {
+			return null;
+		}
+
+		Map<String, Double> statistics = new LinkedHashMap<>();
+		if (separator >= 0) {
+			for (String statistic : line.substring(separator + 4).trim().split(" ")) {
+				int statisticEquals = statistic.indexOf('=');
+
+				if (statisticEquals > 0) {
+					try {
+						statistics.put(statistic.substring(0, statisticEquals), Double.parseDouble(statistic.substring(statisticEquals + 1)));
+					} catch (NumberFormatException e) {
+						return null;
+					}
+				}
+			}
+		}
+
+		return new CompiledRule(antecedents, consequent.substring(0, equals), consequent.substring(equals + 1), statistics);
+	}
+
+	/**
+	 * Numbers in one canonical form (integral numbers without a fraction), anything else as it is.
+	 */
+	public static String normalize(String value) {
+		if (value.isEmpty() || !(Character.isDigit(value.charAt(0)) || value.charAt(0) == '-' || value.charAt(0) == '.')) {
+			return value;
+		}
+
+		try {
+			double number = Double.parseDouble(value);
+
+			if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+				return Long.toString((long) number);
+			}
+
+			return Double.toString(number);
+		} catch (NumberFormatException e) {
+			return value;
+		}
+	}
+
+	/**
+	 * Antecedent attributes and their normalised values, sorted by attribute.
+	 */
+	public Map<String, String> getAntecedents() {
+		return Collections.unmodifiableMap(antecedents);
+	}
+
+	public String getConsequentAttribute() {
+		return consequentAttribute;
+	}
+
+	public String getConsequentValue() {
+		return consequentValue;
+	}
+
+	public Map<String, Double> getStatistics() {
+		return Collections.unmodifiableMap(statistics);
+	}
+
+	/**
+	 * What matches are ranked by: the confidence, or the evaluation metric for rules without one.
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	@Override
+	public String toString() {
+		return "IF " + antecedents + " THEN " + consequentAttribute + "=" + consequentValue + " -- " + statistics;
+	}
+}
@@ -0,0 +1,56 @@
+package ruleengine;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the attributes of a JSON log event that rules can test, in a single streaming pass.
+ *
+ * Nested objects are flattened by their field names only, the same way StreamHandler selects geoip.city_name as
+ * city_name, and values are normalised like the values of the rules. Arrays are skipped.
+ */
+public class EventAttributes {
+	private EventAttributes() {
+	}
+
+	public static Map<String, String> read(String event) throws IOException {
+		Map<String, String> attributes = new HashMap<>();
+		JsonReader reader = new JsonReader(new StringReader(event));
+
+		readObject(reader, attributes);
+
+		if (reader.peek() != JsonToken.END_DOCUMENT) {
+			throw new IOException("Trailing data after the log event");
+		}
+
+		return attributes;
+	}
+
+	private static void readObject(JsonReader reader, Map<String, String> attributes) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+
+			switch (reader.peek()) {
+				case BEGIN_OBJECT:
+					readObject(reader, attributes);
+					break;
+				case STRING:
+				case NUMBER:
+					attributes.put(name, CompiledRule.normalize(reader.nextString()));
+					break;
+				case BOOLEAN:
+					attributes.put(name, String.valueOf(reader.nextBoolean()));
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+}
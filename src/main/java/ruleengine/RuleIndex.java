@@ -0,0 +1,181 @@
+package ruleengine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rules compiled into hash tables for matching single events.
+ *
+ * Rules are grouped by the attributes they test (e.g. all rules on verb, all rules on verb and response). Each group
+ * is a hash table from the normalised values of those attributes to the rules with exactly these values, best score
+ * first. Matching an event is one hash lookup per group, so the cost depends on the number of attribute combinations
+ * in the rule file (a handful) and not on the number of rules.
+ *
+ * The index is immutable, a reload builds a new one.
+ */
+public class RuleIndex {
+	private static final Logger logger = LoggerFactory.getLogger(RuleIndex.class);
+
+	private static final Comparator<CompiledRule> BY_SCORE = new Comparator<CompiledRule>() {
+		@Override
+		public int compare(CompiledRule rule, CompiledRule other) {
+			return Double.compare(other.getScore(), rule.getScore());
+		}
+	};
+
+	private final String source;
+	private final List<RuleGroup> groups;
+	private final int noOfRules;
+
+	private RuleIndex(String source, List<RuleGroup> groups, int noOfRules) {
+		this.source = source;
+		this.groups = groups;
+		this.noOfRules = noOfRules;
+	}
+
+	public static RuleIndex empty() {
+		return new RuleIndex("none", Collections.<RuleGroup>emptyList(), 0);
+	}
+
+	public static RuleIndex load(Path ruleFile) throws IOException {
+		List<CompiledRule> rules = new ArrayList<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(ruleFile, StandardCharsets.UTF_8)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				CompiledRule rule = CompiledRule.parse(line);
+
+				if (rule != null) {
+					rules.add(rule);
+				} else if (!line.isEmpty()) {
+					logger.warn("Skipping line that is not a rule in " + ruleFile + ": " + line);
+				}
+			}
+		}
+
+		return compile(ruleFile.toString(), rules);
+	}
+
+	public static RuleIndex compile(String source, List<CompiledRule> rules) {
+		Map<List<String>, RuleGroup> groups = new LinkedHashMap<>();
+
+		for (CompiledRule rule : rules) {
+			List<String> attributes = new ArrayList<>(rule.getAntecedents().keySet());
+			RuleGroup group = groups.get(attributes);
+
+			if (group == null) {
+				group = new RuleGroup(attributes.toArray(new String[attributes.size()]));
+				groups.put(attributes, group);
+			}
+
+			group.add(rule);
+		}
+
+		for (RuleGroup group : groups.values()) {
+			group.sort();
+		}
+
+		return new RuleIndex(source, new ArrayList<>(groups.values()), rules.size());
+	}
+
+	/**
+	 * Rules whose antecedents all hold for the event, best score first. The attributes of the event have to be
+	 * normalised with CompiledRule.normalize.
+	 */
+	public List<CompiledRule> match(Map<String, String> event) {
+		List<CompiledRule> matches = null;
+
+		for (RuleGroup group : groups) {
+			List<CompiledRule> groupMatches = group.match(event);
+
+			if (groupMatches != null) {
+				if (matches == null) {
+					matches = new ArrayList<>(groupMatches);
+				} else {
+					matches.addAll(groupMatches);
+				}
+			}
+		}
+
+		if (matches == null) {
+			return Collections.emptyList();
+		}
+
+		if (groups.size() > 1) {
+			Collections.sort(matches, BY_SCORE);
+		}
+
+		return matches;
+	}
+
+	/**
+	 * The file the rules were loaded from.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	public int getNoOfRules() {
+		return noOfRules;
+	}
+
+	public int getNoOfGroups() {
+		return groups.size();
+	}
+
+	private static class RuleGroup {
+		private final String[] attributes;
+		private final Map<List<String>, List<CompiledRule>> rules = new HashMap<>();
+
+		private RuleGroup(String[] attributes) {
+			this.attributes = attributes;
+		}
+
+		private void add(CompiledRule rule) {
+			List<String> values = new ArrayList<>(rule.getAntecedents().values());
+			List<CompiledRule> rulesWithValues = rules.get(values);
+
+			if (rulesWithValues == null) {
+				rulesWithValues = new ArrayList<>(1);
+				rules.put(values, rulesWithValues);
+			}
+
+			rulesWithValues.add(rule);
+		}
+
+		private void sort() {
+			for (List<CompiledRule> rulesWithValues : rules.values()) {
+				Collections.sort(rulesWithValues, BY_SCORE);
+			}
+		}
+
+		private List<CompiledRule> match(Map<String, String> event) {
+			String[] values = new String[attributes.length];
+
+			for (int i = 0; i < attributes.length; i++) {
+				values[i] = event.get(attributes[i]);
+
+				if (values[i] == null) {
+					return null;
+				}
+			}
+
+			return rules.get(Arrays.asList(values));
+		}
+	}
+}
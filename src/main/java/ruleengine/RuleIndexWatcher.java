@@ -0,0 +1,126 @@
+package ruleengine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps a RuleIndex of the newest rule file in a directory.
+ *
+ * Every rule file RuleGenerator writes holds all the rules of the window at that time, so the newest one replaces
+ * the index as a whole. The index is rebuilt on a background thread whenever a new rule file appears and swapped in
+ * atomically, scoring threads keep using the old index until then and never wait for a reload.
+ */
+public class RuleIndexWatcher implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(RuleIndexWatcher.class);
+
+	public static final String RULE_FILE_SUFFIX = "--rule";
+
+	private final Path ruleDir;
+	private final AtomicReference<RuleIndex> index = new AtomicReference<>(RuleIndex.empty());
+	private final WatchService watchService;
+	private final Thread watchThread;
+
+	public RuleIndexWatcher(String ruleDir) throws IOException {
+		this.ruleDir = new File(ruleDir).toPath();
+		this.watchService = FileSystems.getDefault().newWatchService();
+
+		//Register before loading so that a rule file written in between is not missed. Rule files are moved in place, which
+		//shows up as a create.
+		this.ruleDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+
+		Path newestRuleFile = findNewestRuleFile();
+		if (newestRuleFile != null) {
+			reload(newestRuleFile);
+		}
+
+		this.watchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "rule-index-watcher");
+		this.watchThread.setDaemon(true);
+		this.watchThread.start();
+	}
+
+	public RuleIndex getIndex() {
+		return index.get();
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				Path newRuleFile = null;
+
+				//Only the last rule file of a burst of events is loaded.
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						newRuleFile = findNewestRuleFile();
+					} else if (event.context().toString().endsWith(RULE_FILE_SUFFIX)) {
+						newRuleFile = ruleDir.resolve((Path) event.context());
+					}
+				}
+
+				if (newRuleFile != null) {
+					reload(newRuleFile);
+				}
+
+				if (!key.reset()) {
+					logger.error("Rule directory " + ruleDir + " is no longer accessible, rules are not reloaded anymore");
+					return;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			//Closed
+		}
+	}
+
+	private void reload(Path ruleFile) {
+		try {
+			long start = System.nanoTime();
+			RuleIndex newIndex = RuleIndex.load(ruleFile);
+
+			index.set(newIndex);
+
+			logger.info("Loaded " + newIndex.getNoOfRules() + " rules in " + newIndex.getNoOfGroups() + " groups from "
+					+ ruleFile + " in " + (System.nanoTime() - start) / 1000 + " us");
+		} catch (IOException e) {
+			logger.error("Could not load rule file " + ruleFile + ", keeping the rules of " + index.get().getSource(), e);
+		}
+	}
+
+	private Path findNewestRuleFile() {
+		File[] ruleFiles = ruleDir.toFile().listFiles();
+		File newest = null;
+
+		if (ruleFiles != null) {
+			for (File ruleFile : ruleFiles) {
+				if (ruleFile.getName().endsWith(RULE_FILE_SUFFIX) && !ruleFile.getName().startsWith(".")
+						&& (newest == null || ruleFile.lastModified() > newest.lastModified())) {
+					newest = ruleFile;
+				}
+			}
+		}
+
+		return newest == null ? null : newest.toPath();
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+		watchThread.interrupt();
+	}
+}
@@ -0,0 +1,18 @@
+package ruleengine;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gets the events that matched at least one rule.
+ */
+public interface RuleMatchListener {
+	/**
+	 * Called on the scoring thread, so it should hand off anything slow.
+	 *
+	 * @param event      the raw event
+	 * @param attributes the normalised attributes of the event
+	 * @param matches    the matching rules, best score first
+	 */
+	void onMatch(String event, Map<String, String> attributes, List<CompiledRule> matches);
+}
@@ -0,0 +1,144 @@
+package ruleengine;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Scores log events from Kafka against the newest rule file as they come in, outside of Spark.
+ *
+ * Every event is parsed once, matched against the compiled RuleIndex with one hash lookup per rule group, and handed
+ * to the listener if any rule matched. The index follows the rule files in the output directory (see
+ * RuleIndexWatcher), so the rules the streaming job learns are applied within a batch interval of being written.
+ */
+public class RuleScorer {
+	private static final Logger logger = LoggerFactory.getLogger(RuleScorer.class);
+
+	private static final String DEFAULT_RULE_DIR = "src/main/resources/output";
+	private static final String GROUP_ID = "rule-scorer";
+	private static final long POLL_TIMEOUT_MILLIS = 100;
+
+	// Only matches with at least this confidence are flagged for AppSensor.
+	private static final double MIN_SCORE = 0.5;
+
+	// How often the scoring statistics are logged.
+	private static final long REPORT_INTERVAL_MILLIS = 60000;
+
+	private final RuleIndexWatcher ruleIndexWatcher;
+	private final RuleMatchListener listener;
+
+	private long scoredEvents;
+	private long matchedEvents;
+	private long malformedEvents;
+	private long scoringNanos;
+
+	public RuleScorer(RuleIndexWatcher ruleIndexWatcher, RuleMatchListener listener) {
+		this.ruleIndexWatcher = ruleIndexWatcher;
+		this.listener = listener;
+	}
+
+	/**
+	 * Usage:  RuleScorer <brokers> <topics> <alertTopic> [<ruleDir>]
+	 *   <brokers> is a list of one or more kafka brokers
+	 *   <topics> is a list of one or more kafka topics with log events
+	 *   <alertTopic> is the kafka topic the events flagged for AppSensor are sent to
+	 *   <ruleDir> is the directory RuleGenerator writes the rule files to
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: RuleScorer <brokers> <topics> <alertTopic> [<ruleDir>]");
+			System.exit(1);
+		}
+
+		Properties props = new Properties();
+		props.put("bootstrap.servers", args[0]);
+		props.put("group.id", GROUP_ID);
+		props.put("enable.auto.commit", "true");
+		props.put("auto.commit.interval.ms", "1000");
+		props.put("session.timeout.ms", "30000");
+		props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+		props.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+
+		try (RuleIndexWatcher ruleIndexWatcher = new RuleIndexWatcher(args.length > 3 ? args[3] : DEFAULT_RULE_DIR);
+		     AppSensorRuleMatchListener listener = new AppSensorRuleMatchListener(args[0], args[2], MIN_SCORE);
+		     KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props)) {
+
+			consumer.subscribe(Arrays.asList(args[1].split(",")));
+
+			new RuleScorer(ruleIndexWatcher, listener).run(consumer);
+		}
+	}
+
+	public void run(KafkaConsumer<String, String> consumer) {
+		long nextReport = System.currentTimeMillis() + REPORT_INTERVAL_MILLIS;
+
+		while (!Thread.currentThread().isInterrupted()) {
+			ConsumerRecords<String, String> records = consumer.poll(POLL_TIMEOUT_MILLIS);
+
+			for (ConsumerRecord<String, String> record : records) {
+				score(record.value());
+			}
+
+			if (System.currentTimeMillis() >= nextReport) {
+				report();
+				nextReport = System.currentTimeMillis() + REPORT_INTERVAL_MILLIS;
+			}
+		}
+	}
+
+	/**
+	 * Scores a single event and returns the rules it matched, best score first.
+	 */
+	public List<CompiledRule> score(String event) {
+		long start = System.nanoTime();
+		Map<String, String> attributes;
+
+		try {
+			attributes = EventAttributes.read(event);
+		} catch (IOException | RuntimeException e) {
+			malformedEvents++;
+			return Collections.emptyList();
+		}
+
+		List<CompiledRule> matches = ruleIndexWatcher.getIndex().match(attributes);
+
+		scoringNanos += System.nanoTime() - start;
+		scoredEvents++;
+
+		if (!matches.isEmpty()) {
+			matchedEvents++;
+			listener.onMatch(event, attributes, matches);
+		}
+
+		return matches;
+	}
+
+	private void report() {
+		RuleIndex index = ruleIndexWatcher.getIndex();
+
+		logger.info("Scored " + scoredEvents + " events against " + index.getNoOfRules() + " rules of " + index.getSource()
+				+ ", " + matchedEvents + " matched, " + malformedEvents + " malformed, "
+				+ (scoredEvents == 0 ? 0 : scoringNanos / scoredEvents) + " ns per event");
+	}
+
+	public long getScoredEvents() {
+		return scoredEvents;
+	}
+
+	public long getMatchedEvents() {
+		return matchedEvents;
+	}
+
+	public long getMalformedEvents() {
+		return malformedEvents;
+	}
+}
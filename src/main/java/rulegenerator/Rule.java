@@ -0,0 +1,123 @@
+package rulegenerator;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * One row of a rule CSV or columnar rule file, parsed once: the values of the antecedent columns, the value of the
+ * consequent (the cluster) and the statistics of the rule, one of which is the metric the rules are ranked by.
+ */
+public class Rule {
+	/**
+	 * Ascending by metric, rules that were read first go first when the metric is the same.
+	 */
+	public static final Comparator<Rule> BY_METRIC = new Comparator<Rule>() {
+		@Override
+		public int compare(Rule rule, Rule other) {
+			int byMetric = Double.compare(rule.metric, other.metric);
+
+			return byMetric != 0 ? byMetric : Long.compare(rule.order, other.order);
+		}
+	};
+
+	private final String[] antecedentValues;
+	private final String consequentValue;
+	private final String[] statisticValues;
+	private final int metricIndex;
+	private final double metric;
+	private final long order;
+
+	/**
+	 * @param statisticValues values of the statistics columns as they were written in the CSV
+	 * @param metricIndex     which of the statistics is the metric
+	 */
+	public Rule(String[] antecedentValues, String consequentValue, String[] statisticValues, int metricIndex, long order) {
+		this(antecedentValues, consequentValue, statisticValues, metricIndex, Double.parseDouble(statisticValues[metricIndex]), order);
+	}
+
+	/**
+	 * For statistics that are already numbers, so the metric does not have to be parsed again.
+	 */
+	public Rule(String[] antecedentValues, String consequentValue, String[] statisticValues, int metricIndex, double metric, long order) {
+		this.antecedentValues = antecedentValues;
+		this.consequentValue = consequentValue;
+		this.statisticValues = statisticValues;
+		this.metricIndex = metricIndex;
+		this.metric = metric;
+		this.order = order;
+	}
+
+	/**
+	 * Same for rules with the same antecedent and consequent, whatever their metric.
+	 */
+	public RuleKey getKey() {
+		return new RuleKey(antecedentValues, consequentValue);
+	}
+
+	public String[] getAntecedentValues() {
+		return antecedentValues;
+	}
+
+	public String getConsequentValue() {
+		return consequentValue;
+	}
+
+	public double getMetric() {
+		return metric;
+	}
+
+	/**
+	 * The metric the way it was written in the CSV.
+	 */
+	public String getMetricText() {
+		return statisticValues[metricIndex];
+	}
+
+	public String[] getStatisticValues() {
+		return statisticValues;
+	}
+
+	public int getMetricIndex() {
+		return metricIndex;
+	}
+
+	/**
+	 * Same rule, but in the position of another one.
+	 */
+	public Rule withOrder(long order) {
+		return new Rule(antecedentValues, consequentValue, statisticValues, metricIndex, metric, order);
+	}
+
+	public long getOrder() {
+		return order;
+	}
+
+	public static class RuleKey {
+		private final String[] antecedentValues;
+		private final String consequentValue;
+
+		private RuleKey(String[] antecedentValues, String consequentValue) {
+			this.antecedentValues = antecedentValues;
+			this.consequentValue = consequentValue;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof RuleKey)) {
+				return false;
+			}
+
+			RuleKey ruleKey = (RuleKey) other;
+
+			return consequentValue.equals(ruleKey.consequentValue) && Arrays.equals(antecedentValues, ruleKey.antecedentValues);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Arrays.hashCode(antecedentValues) + consequentValue.hashCode();
+		}
+	}
+}
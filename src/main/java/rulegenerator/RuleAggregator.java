@@ -0,0 +1,161 @@
+package rulegenerator;
+
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.api.java.function.PairFunction;
+import org.apache.spark.sql.DataFrame;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+import scala.Tuple2;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Aggregates the clustered logs into distinct rules "IF antecedents THEN consequent" with their statistics, instead of
+ * one rule per log.
+ *
+ * - support: number of logs that match the antecedents and are in the consequent's cluster
+ * - confidence: support divided by the number of logs that match the antecedents, i.e. how sure the rule is about
+ *   the cluster once the antecedents match
+ * - precision: precision of the classifier, the same for every rule of a batch
+ *
+ * Counting is done with reduceByKey, so the executors combine the counts before anything is shuffled and only the
+ * rules that are above the support and confidence thresholds ever get to the driver.
+ */
+public class RuleAggregator implements Serializable {
+	public static final String SUPPORT_COLUMN = "support";
+	public static final String CONFIDENCE_COLUMN = "confidence";
+	public static final String PRECISION_COLUMN = "precision";
+
+	private final String[] antecedentColumns;
+	private final String consequentColumn;
+	private final long minSupport;
+	private final double minConfidence;
+
+	public RuleAggregator(String[] antecedentColumns, String consequentColumn, long minSupport, double minConfidence) {
+		checkArgument(antecedentColumns.length > 0, "Rules need at least one antecedent");
+		checkArgument(minConfidence >= 0.0 && minConfidence <= 1.0, "Confidence threshold has to be between 0 and 1");
+
+		this.antecedentColumns = antecedentColumns;
+		this.consequentColumn = consequentColumn;
+		this.minSupport = minSupport;
+		this.minConfidence = minConfidence;
+	}
+
+	/**
+	 * Rules with the antecedent columns, the consequent column, support, confidence and precision.
+	 */
+	public DataFrame aggregate(DataFrame clusterResults, double precision) {
+		String[] ruleColumns = Arrays.copyOf(antecedentColumns, antecedentColumns.length + 1);
+		ruleColumns[antecedentColumns.length] = consequentColumn;
+
+		DataFrame ruleValues = clusterResults.select(ruleColumns[0], Arrays.copyOfRange(ruleColumns, 1, ruleColumns.length));
+
+		JavaPairRDD<List<Object>, Tuple2<Object, Long>> supports = countRules(ruleValues.javaRDD(), antecedentColumns.length);
+		JavaPairRDD<List<Object>, Long> antecedentSupports = countAntecedents(supports);
+
+		JavaRDD<Row> rules = toRules(supports.join(antecedentSupports), minSupport, minConfidence, precision);
+
+		List<StructField> fields = new ArrayList<>(Arrays.asList(ruleValues.schema().fields()));
+		fields.add(DataTypes.createStructField(SUPPORT_COLUMN, DataTypes.LongType, false));
+		fields.add(DataTypes.createStructField(CONFIDENCE_COLUMN, DataTypes.DoubleType, false));
+		fields.add(DataTypes.createStructField(PRECISION_COLUMN, DataTypes.DoubleType, false));
+
+		return clusterResults.sqlContext().createDataFrame(rules, DataTypes.createStructType(fields));
+	}
+
+	//Static so that the functions shipped to the executors do not drag the aggregator along with them.
+
+	/**
+	 * (antecedent values) -> (consequent value, support)
+	 */
+	private static JavaPairRDD<List<Object>, Tuple2<Object, Long>> countRules(JavaRDD<Row> ruleValues, final int noOfAntecedents) {
+		return ruleValues.mapToPair(new PairFunction<Row, Row, Long>() {
+			@Override
+			public Tuple2<Row, Long> call(Row row) throws Exception {
+				return new Tuple2<>(row, 1L);
+			}
+		}).reduceByKey(new Function2<Long, Long, Long>() {
+			@Override
+			public Long call(Long count, Long other) throws Exception {
+				return count + other;
+			}
+		}).mapToPair(new PairFunction<Tuple2<Row, Long>, List<Object>, Tuple2<Object, Long>>() {
+			@Override
+			public Tuple2<List<Object>, Tuple2<Object, Long>> call(Tuple2<Row, Long> rule) throws Exception {
+				List<Object> antecedentValues = new ArrayList<>(noOfAntecedents);
+				for (int i = 0; i < noOfAntecedents; i++) {
+					antecedentValues.add(rule._1().get(i));
+				}
+
+				return new Tuple2<List<Object>, Tuple2<Object, Long>>(antecedentValues, new Tuple2<>(rule._1().get(noOfAntecedents), rule._2()));
+			}
+		});
+	}
+
+	private static JavaPairRDD<List<Object>, Long> countAntecedents(JavaPairRDD<List<Object>, Tuple2<Object, Long>> supports) {
+		return supports.mapValues(new Function<Tuple2<Object, Long>, Long>() {
+			@Override
+			public Long call(Tuple2<Object, Long> consequentAndSupport) throws Exception {
+				return consequentAndSupport._2();
+			}
+		}).reduceByKey(new Function2<Long, Long, Long>() {
+			@Override
+			public Long call(Long count, Long other) throws Exception {
+				return count + other;
+			}
+		});
+	}
+
+	private static JavaRDD<Row> toRules(JavaPairRDD<List<Object>, Tuple2<Tuple2<Object, Long>, Long>> supportsWithAntecedentSupports,
+	                                    final long minSupport, final double minConfidence, final double precision) {
+		return supportsWithAntecedentSupports.filter(new Function<Tuple2<List<Object>, Tuple2<Tuple2<Object, Long>, Long>>, Boolean>() {
+			@Override
+			public Boolean call(Tuple2<List<Object>, Tuple2<Tuple2<Object, Long>, Long>> rule) throws Exception {
+				long support = rule._2()._1()._2();
+				double confidence = (double) support / rule._2()._2();
+
+				return support >= minSupport && confidence >= minConfidence;
+			}
+		}).map(new Function<Tuple2<List<Object>, Tuple2<Tuple2<Object, Long>, Long>>, Row>() {
+			@Override
+			public Row call(Tuple2<List<Object>, Tuple2<Tuple2<Object, Long>, Long>> rule) throws Exception {
+				List<Object> values = new ArrayList<>(rule._1());
+				long support = rule._2()._1()._2();
+
+				values.add(rule._2()._1()._1());
+				values.add(support);
+				values.add((double) support / rule._2()._2());
+				values.add(precision);
+
+				return RowFactory.create(values.toArray());
+			}
+		});
+	}
+
+	public String[] getAntecedentColumns() {
+		return antecedentColumns;
+	}
+
+	public String getConsequentColumn() {
+		return consequentColumn;
+	}
+
+	public long getMinSupport() {
+		return minSupport;
+	}
+
+	public double getMinConfidence() {
+		return minConfidence;
+	}
+}
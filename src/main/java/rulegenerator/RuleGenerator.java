@@ -1,87 +1,428 @@
 package rulegenerator;
 
-import com.clearspring.analytics.util.Lists;
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sink.ColumnarFileReader;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 
+/**
+ * Turns a rule CSV (antecedent columns, the consequent column and then the statistics) into a rule file with lines
+ * like
+ *
+ *   IF verb=GET AND response=200.0 THEN clusters=2 -- precision=0.88
+ *   IF verb=GET THEN clusters=2 -- support=1200 confidence=0.97 precision=0.88
+ *
+ * The trailing columns named support, confidence or precision (see RuleAggregator) are statistics, and the column
+ * before them is the consequent. Rules are ranked by their confidence if there is one, otherwise by the last column,
+ * which is also always treated as a statistic so that CSVs with another evaluation metric keep working.
+ *
+ * The CSV is streamed: every row is parsed once into a Rule, identical rules (same antecedent and consequent) are
+ * only written once with the best metric they had, and rules below the metric threshold are left out. Rules are
+ * written in ascending order of their metric through a single buffered writer. When only the best maxRules rules are
+ * asked for they are kept in a bounded heap, so memory does not depend on the size of the CSV. Otherwise memory
+ * depends on the number of distinct rules, not on the number of rows.
+ *
+ * Rule files written in the ColumnarRowFormat instead of CSV are recognised by their magic number and read without
+ * any text parsing.
+ */
 public class RuleGenerator {
 	private static final Logger logger = LoggerFactory.getLogger(RuleGenerator.class);
-	private static final String outputFileDir = "src/main/resources/output";
+	private static final String DEFAULT_OUTPUT_FILE_DIR = "src/main/resources/output";
 	private static double thresholdForEvaluationMetric = 0.0;
 
-	private static Comparator<List<String>> comp = new Comparator<List<String>>() {
-		public int compare(List<String> csvLine1, List<String> csvLine2) {
-			//Get last field which would be the metric.
-			return Double.valueOf(csvLine1.get(csvLine1.size() - 1)).compareTo(Double.valueOf(csvLine2.get(csvLine2.size() - 1)));
-		}
-	};
+	private static final List<String> STATISTIC_COLUMNS = Arrays.asList(
+			RuleAggregator.SUPPORT_COLUMN, RuleAggregator.CONFIDENCE_COLUMN, RuleAggregator.PRECISION_COLUMN);
+
+	private final String outputFileDir;
+
+	private int noOfRules;
 
 	public RuleGenerator() {
+		this(DEFAULT_OUTPUT_FILE_DIR);
+	}
+
+	/**
+	 * Reads the CSVs from and writes the rule files to the given directory.
+	 */
+	public RuleGenerator(String outputFileDir) {
+		this.outputFileDir = outputFileDir;
 	}
 
+	/**
+	 * Writes all distinct rules of the CSV. Returns the name of the rule file.
+	 */
 	public String generateRuleFile(String fileName) {
+		return generateRuleFile(fileName, Integer.MAX_VALUE);
+	}
 
+	/**
+	 * Writes the maxRules distinct rules with the best metric. Returns the name of the rule file.
+	 */
+	public String generateRuleFile(String fileName, int maxRules) {
 		File csvFile = new File(outputFileDir + "/" + fileName);
-		List<List<String>> csvLinesRulesSplit = Lists.newArrayList();
 		String ruleFileName = fileName + "--rule";
 		File newRuleFile = new File(outputFileDir + "/" + ruleFileName);
+
+		RuleCollector rules = maxRules == Integer.MAX_VALUE ? new AllRules() : new BestRules(maxRules);
+		noOfRules = 0;
+
 		try {
-			List<String> csvLines = FileUtils.readLines(csvFile);
+			List<String> header = ColumnarFileReader.isColumnarFile(csvFile.toPath())
+					? readColumnarRules(csvFile.toPath(), rules)
+					: readCsvRules(csvFile.toPath(), rules);
 
-			for(String csvLine : csvLines) {
-				String[] csvLineSplit = csvLine.split(",");
-				List<String> csvLineRule = Arrays.asList(csvLineSplit);
-				csvLinesRulesSplit.add(csvLineRule);
+			if (header == null) {
+				logger.error("CSV File for rule generation is empty.");
+				return ruleFileName;
 			}
 
-			Collections.sort(csvLinesRulesSplit.subList(1, csvLinesRulesSplit.size()), comp);
-			List<String> header = csvLinesRulesSplit.get(0);
-
-			for(List<String> csvRuleLine : csvLinesRulesSplit.subList(1, csvLinesRulesSplit.size())) {
-				String rule = "IF ";
-				boolean meetsThreshold = true;
-				for(int i = 0; i < csvRuleLine.size(); i++) {
-
-					if(i == csvRuleLine.size() - 2) {
-						rule += " THEN " + header.get(i) + "=" + csvRuleLine.get(i) + " -- ";
-					} else if(i == csvRuleLine.size() - 1) {
-						String evaluationMetricStr = csvRuleLine.get(i);
-						Double evaluationMetric = Double.valueOf(evaluationMetricStr);
-						if( evaluationMetric < thresholdForEvaluationMetric || Double.isNaN(evaluationMetric)) {
-							meetsThreshold = false;
-						}
-						rule += header.get(i) + "=" + csvRuleLine.get(i);
-					} else {
-						rule += header.get(i) + "=" + csvRuleLine.get(i);
+			List<Rule> sortedRules = rules.sorted();
+
+			//Written next to the rule file and moved in place, so whoever watches the directory only sees complete files.
+			File tempRuleFile = new File(outputFileDir + "/." + ruleFileName + ".tmp");
+
+			try (BufferedWriter writer = Files.newBufferedWriter(tempRuleFile.toPath(), StandardCharsets.UTF_8)) {
+				StringBuilder ruleLine = new StringBuilder();
+
+				for (Rule rule : sortedRules) {
+					ruleLine.setLength(0);
+					appendRule(ruleLine, header, rule);
+
+					writer.write(ruleLine.toString());
+					writer.newLine();
+				}
+			}
+
+			Files.move(tempRuleFile.toPath(), newRuleFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			noOfRules = sortedRules.size();
+
+			logger.info("Wrote " + sortedRules.size() + " distinct rules from " + rules.getNoOfRows() + " rows to " + ruleFileName);
+
+		} catch (IOException e) {
+			logger.error("Could not generate rules from " + csvFile, e);
+		}
+
+		return ruleFileName;
+	}
+
+	/**
+	 * Number of rules written to the last rule file, 0 if it could not be written.
+	 */
+	public int getNoOfRules() {
+		return noOfRules;
+	}
+
+	/**
+	 * Adds the rules of a rule CSV to the collector. Returns the header, or null if the file is empty.
+	 */
+	private static List<String> readCsvRules(Path csvFile, RuleCollector rules) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+			String headerLine = reader.readLine();
+
+			if (headerLine == null) {
+				return null;
+			}
+
+			List<String> header = splitCsvLine(headerLine);
+			int noOfStatistics = countStatistics(header);
+			int metricIndex = findMetricIndex(header, noOfStatistics);
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+
+				Rule rule = parseRule(splitCsvLine(line), header.size(), noOfStatistics, metricIndex, rules.getNoOfRows());
+
+				if (rule == null) {
+					logger.warn("Skipping malformed rule CSV line: " + line);
+					rules.skip();
+				} else {
+					rules.add(rule);
+				}
+			}
+
+			return header;
+		}
+	}
+
+	/**
+	 * Adds the rules of a columnar rule file (see ColumnarRowFormat) to the collector. Statistics are taken as numbers
+	 * and strings from the dictionaries of the row groups, so nothing is parsed. Returns the header.
+	 */
+	private static List<String> readColumnarRules(Path ruleFile, RuleCollector rules) throws IOException {
+		try (ColumnarFileReader reader = new ColumnarFileReader(ruleFile)) {
+			List<String> header = Arrays.asList(reader.getColumnNames());
+			int noOfStatistics = countStatistics(header);
+			int metricIndex = findMetricIndex(header, noOfStatistics);
+			int noOfAntecedents = header.size() - noOfStatistics - 1;
+			int metricColumn = noOfAntecedents + 1 + metricIndex;
+
+			if (noOfAntecedents < 1) {
+				throw new IOException("Rule file " + ruleFile + " has no antecedent columns");
+			}
+
+			ColumnarFileReader.RowGroup rowGroup;
+
+			while ((rowGroup = reader.nextRowGroup()) != null) {
+				for (int row = 0; row < rowGroup.getNoOfRows(); row++) {
+					String[] antecedentValues = new String[noOfAntecedents];
+					String[] statisticValues = new String[noOfStatistics];
+
+					for (int i = 0; i < noOfAntecedents; i++) {
+						antecedentValues[i] = textOrEmpty(rowGroup.getText(i, row));
+					}
+					for (int i = 0; i < noOfStatistics; i++) {
+						statisticValues[i] = textOrEmpty(rowGroup.getText(noOfAntecedents + 1 + i, row));
 					}
 
-					//Don't add AND for consequent and the evaluation metric
-					if(i < header.size() - 2) {
-						rule += " AND ";
+					double metric = rowGroup.isNumeric(metricColumn)
+							? rowGroup.getDouble(metricColumn, row)
+							: parseMetric(statisticValues[metricIndex]);
+
+					if (Double.isNaN(metric)) {
+						logger.warn("Skipping rule without a metric in row " + rules.getNoOfRows() + " of " + ruleFile);
+						rules.skip();
+					} else {
+						rules.add(new Rule(antecedentValues, textOrEmpty(rowGroup.getText(noOfAntecedents, row)),
+								statisticValues, metricIndex, metric, rules.getNoOfRows()));
 					}
 				}
+			}
+
+			return header;
+		}
+	}
+
+	private static String textOrEmpty(String text) {
+		return text == null ? "" : text;
+	}
+
+	private static double parseMetric(String metric) {
+		try {
+			return Double.parseDouble(metric);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Index of the metric among the statistics: the confidence if there is one, otherwise the last statistic.
+	 */
+	private static int findMetricIndex(List<String> header, int noOfStatistics) {
+		int metricIndex = header.subList(header.size() - noOfStatistics, header.size()).indexOf(RuleAggregator.CONFIDENCE_COLUMN);
+
+		return metricIndex < 0 ? noOfStatistics - 1 : metricIndex;
+	}
+
+	/**
+	 * Number of trailing statistics columns, at least the last column.
+	 */
+	private static int countStatistics(List<String> header) {
+		int noOfStatistics = 1;
+
+		while (noOfStatistics < header.size() && STATISTIC_COLUMNS.contains(header.get(header.size() - noOfStatistics - 1))) {
+			noOfStatistics++;
+		}
+
+		return noOfStatistics;
+	}
+
+	private static Rule parseRule(List<String> fields, int noOfColumns, int noOfStatistics, int metricIndex, long order) {
+		int noOfAntecedents = noOfColumns - noOfStatistics - 1;
+
+		//At least one antecedent, the consequent and the statistics.
+		if (fields.size() != noOfColumns || noOfAntecedents < 1) {
+			return null;
+		}
+
+		String[] antecedentValues = fields.subList(0, noOfAntecedents).toArray(new String[noOfAntecedents]);
+		String[] statisticValues = fields.subList(noOfAntecedents + 1, noOfColumns).toArray(new String[noOfStatistics]);
+
+		try {
+			return new Rule(antecedentValues, fields.get(noOfAntecedents), statisticValues, metricIndex, order);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static void appendRule(StringBuilder ruleLine, List<String> header, Rule rule) {
+		String[] antecedentValues = rule.getAntecedentValues();
+		String[] statisticValues = rule.getStatisticValues();
+		int firstStatistic = header.size() - statisticValues.length;
+
+		ruleLine.append("IF ");
+
+		for (int i = 0; i < antecedentValues.length; i++) {
+			if (i > 0) {
+				ruleLine.append(" AND ");
+			}
+			ruleLine.append(header.get(i)).append('=').append(antecedentValues[i]);
+		}
+
+		ruleLine.append(" THEN ").append(header.get(firstStatistic - 1)).append('=').append(rule.getConsequentValue())
+				.append(" --");
+
+		for (int i = 0; i < statisticValues.length; i++) {
+			ruleLine.append(' ').append(header.get(firstStatistic + i)).append('=').append(statisticValues[i]);
+		}
+	}
+
+	/**
+	 * Splits a CSV line into its fields. Fields may be quoted (with "" for a quote inside a quoted field), which is
+	 * how values containing commas are written.
+	 */
+	static List<String> splitCsvLine(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+
+		return fields;
+	}
+
+	/**
+	 * Counts the rows that were read and keeps the rules whose metric reaches the threshold.
+	 */
+	private abstract static class RuleCollector {
+		private long noOfRows;
 
-				rule += "\n";
-				String filterRule = rule.replace("AND  THEN", "THEN");
-				if(meetsThreshold) {
-					FileUtils.writeStringToFile(newRuleFile, filterRule, true);
+		void add(Rule rule) {
+			noOfRows++;
+
+			if (rule.getMetric() >= thresholdForEvaluationMetric && !Double.isNaN(rule.getMetric())) {
+				keep(rule);
+			}
+		}
+
+		void skip() {
+			noOfRows++;
+		}
+
+		/**
+		 * Rows read so far, which is also the order of the next rule.
+		 */
+		long getNoOfRows() {
+			return noOfRows;
+		}
+
+		abstract void keep(Rule rule);
+
+		abstract List<Rule> sorted();
+	}
+
+	/**
+	 * Every distinct rule, with the best metric it was seen with.
+	 */
+	private static class AllRules extends RuleCollector {
+		private final Map<Rule.RuleKey, Rule> rules = new LinkedHashMap<>();
+
+		@Override
+		void keep(Rule rule) {
+			Rule existing = rules.get(rule.getKey());
+
+			if (existing == null || existing.getMetric() < rule.getMetric()) {
+				rules.put(rule.getKey(), existing == null ? rule : withOrder(rule, existing));
+			}
+		}
+
+		@Override
+		List<Rule> sorted() {
+			List<Rule> sorted = new ArrayList<>(rules.values());
+			Collections.sort(sorted, Rule.BY_METRIC);
+
+			return sorted;
+		}
+	}
+
+	/**
+	 * The maxRules distinct rules with the best metric, in a min-heap so the worst of them is the one to replace.
+	 */
+	private static class BestRules extends RuleCollector {
+		private final int maxRules;
+		private final PriorityQueue<Rule> heap;
+		private final Map<Rule.RuleKey, Rule> rulesInHeap = new HashMap<>();
+
+		private BestRules(int maxRules) {
+			this.maxRules = maxRules;
+			this.heap = new PriorityQueue<>(Math.max(1, Math.min(maxRules, 1024)), Rule.BY_METRIC);
+		}
+
+		@Override
+		void keep(Rule rule) {
+			Rule.RuleKey key = rule.getKey();
+			Rule existing = rulesInHeap.get(key);
+
+			if (existing != null) {
+				if (existing.getMetric() < rule.getMetric()) {
+					heap.remove(existing);
+					Rule better = withOrder(rule, existing);
+					heap.add(better);
+					rulesInHeap.put(key, better);
 				}
+				return;
 			}
 
-		} catch (java.io.IOException e) {
-			logger.error("CSV File was not found for rule generation.");
+			if (heap.size() < maxRules) {
+				heap.add(rule);
+				rulesInHeap.put(key, rule);
+			} else if (maxRules > 0 && heap.peek().getMetric() < rule.getMetric()) {
+				rulesInHeap.remove(heap.poll().getKey());
+				heap.add(rule);
+				rulesInHeap.put(key, rule);
+			}
 		}
 
-		System.out.println("Rule File created.");
-		return ruleFileName;
+		@Override
+		List<Rule> sorted() {
+			List<Rule> sorted = new ArrayList<>(heap);
+			Collections.sort(sorted, Rule.BY_METRIC);
+
+			return sorted;
+		}
 	}
 
+	//A duplicate with a better metric keeps the position of the rule it replaces.
+	private static Rule withOrder(Rule rule, Rule existing) {
+		return rule.withOrder(existing.getOrder());
+	}
 }
-
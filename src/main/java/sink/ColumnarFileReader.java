@@ -0,0 +1,268 @@
+package sink;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reads files in the ColumnarRowFormat one row group at a time. Only the columns that are asked for are decoded,
+ * the others are skipped without being read. Strings of a row group share the instances of its dictionary.
+ */
+public class ColumnarFileReader implements Closeable {
+	private final DataInputStream data;
+	private final String[] columnNames;
+	private final byte[] columnTypes;
+
+	public ColumnarFileReader(Path file) throws IOException {
+		this.data = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+
+		try {
+			if (data.readInt() != ColumnarRowFormat.MAGIC) {
+				throw new IOException(file + " is not a columnar file");
+			}
+
+			byte version = data.readByte();
+			if (version != ColumnarRowFormat.VERSION) {
+				throw new IOException("Unsupported columnar file version " + version + " in " + file);
+			}
+
+			int noOfColumns = data.readInt();
+			columnNames = new String[noOfColumns];
+			columnTypes = new byte[noOfColumns];
+
+			for (int i = 0; i < noOfColumns; i++) {
+				columnNames[i] = readString(data);
+				columnTypes[i] = data.readByte();
+			}
+		} catch (IOException e) {
+			data.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Whether the file starts with the magic number of the columnar format.
+	 */
+	public static boolean isColumnarFile(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+			return in.readInt() == ColumnarRowFormat.MAGIC;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	public String[] getColumnNames() {
+		return columnNames.clone();
+	}
+
+	/**
+	 * Index of the column with the given name, or -1 if there is none.
+	 */
+	public int getColumnIndex(String columnName) {
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i].equals(columnName)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * The next row group with only the given columns decoded (all of them if none are given), or null at the end of
+	 * the file.
+	 */
+	public RowGroup nextRowGroup(int... columns) throws IOException {
+		int firstByte = data.read();
+
+		if (firstByte < 0) {
+			return null;
+		}
+
+		int noOfRows = (firstByte << 24) | (data.readUnsignedByte() << 16) | (data.readUnsignedByte() << 8) | data.readUnsignedByte();
+
+		boolean[] selected = new boolean[columnNames.length];
+		if (columns.length == 0) {
+			Arrays.fill(selected, true);
+		}
+		for (int column : columns) {
+			selected[column] = true;
+		}
+
+		RowGroup rowGroup = new RowGroup(noOfRows, columnNames.length);
+
+		for (int i = 0; i < columnNames.length; i++) {
+			int length = data.readInt();
+
+			if (selected[i]) {
+				readColumn(rowGroup, i, noOfRows);
+			} else {
+				skipFully(length);
+			}
+		}
+
+		return rowGroup;
+	}
+
+	private void readColumn(RowGroup rowGroup, int column, int noOfRows) throws IOException {
+		byte[] nonNulls = new byte[(noOfRows + 7) / 8];
+		data.readFully(nonNulls);
+
+		byte type = columnTypes[column];
+		String[] dictionary = null;
+
+		if (type == ColumnarRowFormat.STRING) {
+			dictionary = new String[data.readInt()];
+			for (int i = 0; i < dictionary.length; i++) {
+				dictionary[i] = readString(data);
+			}
+			rowGroup.strings[column] = new String[noOfRows];
+		} else if (type == ColumnarRowFormat.DOUBLE) {
+			rowGroup.doubles[column] = new double[noOfRows];
+		} else {
+			rowGroup.longs[column] = new long[noOfRows];
+		}
+
+		rowGroup.nonNulls[column] = nonNulls;
+
+		for (int row = 0; row < noOfRows; row++) {
+			if ((nonNulls[row >> 3] & (1 << (row & 7))) == 0) {
+				continue;
+			}
+
+			if (type == ColumnarRowFormat.STRING) {
+				int index;
+				if (dictionary.length <= 1 << 8) {
+					index = data.readUnsignedByte();
+				} else if (dictionary.length <= 1 << 16) {
+					index = data.readUnsignedShort();
+				} else {
+					index = data.readInt();
+				}
+				rowGroup.strings[column][row] = dictionary[index];
+			} else if (type == ColumnarRowFormat.DOUBLE) {
+				rowGroup.doubles[column][row] = data.readDouble();
+			} else {
+				rowGroup.longs[column][row] = readVarLong(data);
+			}
+		}
+	}
+
+	private void skipFully(int length) throws IOException {
+		int skipped = 0;
+
+		while (skipped < length) {
+			int skippedNow = data.skipBytes(length - skipped);
+
+			if (skippedNow <= 0) {
+				throw new EOFException("Columnar file ends within a row group");
+			}
+			skipped += skippedNow;
+		}
+	}
+
+	private static long readVarLong(DataInputStream data) throws IOException {
+		long zigzag = 0;
+		int shift = 0;
+		int b;
+
+		do {
+			b = data.readUnsignedByte();
+			zigzag |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	private static String readString(DataInputStream data) throws IOException {
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		data.close();
+	}
+
+	/**
+	 * The decoded columns of a row group, addressed by their index in the file.
+	 */
+	public class RowGroup {
+		private final int noOfRows;
+		private final byte[][] nonNulls;
+		private final String[][] strings;
+		private final double[][] doubles;
+		private final long[][] longs;
+
+		private RowGroup(int noOfRows, int noOfColumns) {
+			this.noOfRows = noOfRows;
+			this.nonNulls = new byte[noOfColumns][];
+			this.strings = new String[noOfColumns][];
+			this.doubles = new double[noOfColumns][];
+			this.longs = new long[noOfColumns][];
+		}
+
+		public int getNoOfRows() {
+			return noOfRows;
+		}
+
+		public boolean isNull(int column, int row) {
+			if (nonNulls[column] == null) {
+				throw new IllegalArgumentException("Column " + columnNames[column] + " was not read");
+			}
+
+			return (nonNulls[column][row >> 3] & (1 << (row & 7))) == 0;
+		}
+
+		public String getString(int column, int row) {
+			return strings[column][row];
+		}
+
+		/**
+		 * Value of a numeric column as a double, NaN for nulls.
+		 */
+		public double getDouble(int column, int row) {
+			if (isNull(column, row)) {
+				return Double.NaN;
+			}
+
+			return doubles[column] != null ? doubles[column][row] : longs[column][row];
+		}
+
+		public long getLong(int column, int row) {
+			return longs[column][row];
+		}
+
+		/**
+		 * Value of any column the way it would have been written to a CSV, null for nulls.
+		 */
+		public String getText(int column, int row) {
+			if (isNull(column, row)) {
+				return null;
+			}
+
+			byte type = columnTypes[column];
+
+			if (type == ColumnarRowFormat.STRING) {
+				return strings[column][row];
+			} else if (type == ColumnarRowFormat.DOUBLE) {
+				return String.valueOf(doubles[column][row]);
+			}
+
+			return String.valueOf(longs[column][row]);
+		}
+
+		public boolean isNumeric(int column) {
+			return columnTypes[column] != ColumnarRowFormat.STRING;
+		}
+	}
+}
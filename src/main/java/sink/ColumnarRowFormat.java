@@ -0,0 +1,231 @@
+package sink;
+
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Compact binary columnar format, read with ColumnarFileReader.
+ *
+ * Header: the magic number, the format version, the number of columns and the name and type of every column. Then
+ * row groups of up to ROW_GROUP_SIZE rows until the end of the file, each one the number of rows followed by every
+ * column as its length in bytes and its data, so that a reader can skip the columns it does not need. The data of a
+ * column is a bitmap of the rows that are not null and the values of those rows: doubles as they are, longs and ints
+ * as zigzag varints, strings dictionary encoded (the distinct strings of the row group, then a 1, 2 or 4 byte index
+ * per row depending on the size of the dictionary). Other types are written as strings.
+ *
+ * Every partition is written as its own row groups, so part files can simply be concatenated after the header.
+ */
+public class ColumnarRowFormat implements RowFormat {
+	public static final int MAGIC = 0x52434F4C;
+	public static final byte VERSION = 1;
+
+	public static final byte STRING = 'S';
+	public static final byte DOUBLE = 'D';
+	public static final byte LONG = 'L';
+	public static final byte INT = 'I';
+
+	public static final int ROW_GROUP_SIZE = 65536;
+
+	@Override
+	public void writeHeader(StructType schema, OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeInt(schema.size());
+
+		for (StructField field : schema.fields()) {
+			writeString(data, field.name());
+			data.writeByte(typeOf(field.dataType()));
+		}
+
+		data.flush();
+	}
+
+	@Override
+	public long writeRows(StructType schema, Iterator<Row> rows, OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		StructField[] fields = schema.fields();
+		ColumnBuffer[] columns = new ColumnBuffer[fields.length];
+
+		for (int i = 0; i < fields.length; i++) {
+			columns[i] = new ColumnBuffer(typeOf(fields[i].dataType()));
+		}
+
+		long noOfRows = 0;
+		int rowsInGroup = 0;
+
+		while (rows.hasNext()) {
+			Row row = rows.next();
+
+			for (int i = 0; i < columns.length; i++) {
+				columns[i].add(row.get(i));
+			}
+
+			noOfRows++;
+			if (++rowsInGroup == ROW_GROUP_SIZE) {
+				writeRowGroup(data, columns, rowsInGroup);
+				rowsInGroup = 0;
+			}
+		}
+
+		if (rowsInGroup > 0) {
+			writeRowGroup(data, columns, rowsInGroup);
+		}
+
+		data.flush();
+
+		return noOfRows;
+	}
+
+	private static void writeRowGroup(DataOutputStream data, ColumnBuffer[] columns, int noOfRows) throws IOException {
+		data.writeInt(noOfRows);
+
+		for (ColumnBuffer column : columns) {
+			column.writeTo(data);
+		}
+	}
+
+	static byte typeOf(DataType dataType) {
+		if (dataType == DataTypes.DoubleType) {
+			return DOUBLE;
+		} else if (dataType == DataTypes.LongType) {
+			return LONG;
+		} else if (dataType == DataTypes.IntegerType || dataType == DataTypes.ShortType || dataType == DataTypes.ByteType) {
+			return INT;
+		}
+
+		return STRING;
+	}
+
+	static void writeString(DataOutputStream data, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+
+	/**
+	 * Zigzag encoded variable length long, small numbers (like counts) take a byte or two.
+	 */
+	static void writeVarLong(DataOutputStream data, long value) throws IOException {
+		long zigzag = (value << 1) ^ (value >> 63);
+
+		while ((zigzag & ~0x7FL) != 0) {
+			data.writeByte((int) ((zigzag & 0x7F) | 0x80));
+			zigzag >>>= 7;
+		}
+		data.writeByte((int) zigzag);
+	}
+
+	/**
+	 * The values of one column of the current row group, encoded as they are added.
+	 */
+	private static class ColumnBuffer {
+		private final byte type;
+		private final ByteArrayOutputStream values = new ByteArrayOutputStream();
+		private final DataOutputStream valueData = new DataOutputStream(values);
+		private final Map<String, Integer> dictionary = new HashMap<>();
+		private final ByteArrayOutputStream column = new ByteArrayOutputStream();
+
+		private byte[] nonNulls = new byte[ROW_GROUP_SIZE / 8];
+		private int[] indices;
+		private int noOfRows;
+		private int noOfValues;
+
+		private ColumnBuffer(byte type) {
+			this.type = type;
+
+			if (type == STRING) {
+				indices = new int[1024];
+			}
+		}
+
+		private void add(Object value) throws IOException {
+			if (value != null) {
+				nonNulls[noOfRows >> 3] |= 1 << (noOfRows & 7);
+
+				if (type == DOUBLE) {
+					valueData.writeDouble(((Number) value).doubleValue());
+				} else if (type == LONG || type == INT) {
+					writeVarLong(valueData, ((Number) value).longValue());
+				} else {
+					String string = value.toString();
+					Integer index = dictionary.get(string);
+
+					if (index == null) {
+						index = dictionary.size();
+						dictionary.put(string, index);
+					}
+
+					if (noOfValues == indices.length) {
+						indices = Arrays.copyOf(indices, indices.length * 2);
+					}
+					indices[noOfValues] = index;
+				}
+
+				noOfValues++;
+			}
+
+			noOfRows++;
+		}
+
+		private void writeTo(DataOutputStream data) throws IOException {
+			DataOutputStream columnData = new DataOutputStream(column);
+
+			columnData.write(nonNulls, 0, (noOfRows + 7) / 8);
+
+			if (type == STRING) {
+				String[] strings = new String[dictionary.size()];
+				for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+					strings[entry.getValue()] = entry.getKey();
+				}
+
+				columnData.writeInt(strings.length);
+				for (String string : strings) {
+					writeString(columnData, string);
+				}
+
+				for (int i = 0; i < noOfValues; i++) {
+					if (strings.length <= 1 << 8) {
+						columnData.writeByte(indices[i]);
+					} else if (strings.length <= 1 << 16) {
+						columnData.writeShort(indices[i]);
+					} else {
+						columnData.writeInt(indices[i]);
+					}
+				}
+			} else {
+				values.writeTo(columnData);
+			}
+
+			columnData.flush();
+			data.writeInt(column.size());
+			column.writeTo(data);
+
+			reset();
+		}
+
+		private void reset() {
+			Arrays.fill(nonNulls, (byte) 0);
+			values.reset();
+			dictionary.clear();
+			column.reset();
+			noOfRows = 0;
+			noOfValues = 0;
+		}
+	}
+}
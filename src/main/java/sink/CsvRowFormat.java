@@ -0,0 +1,67 @@
+package sink;
+
+import converter.CsvOutputWriter;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.types.StructType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * CSV with a header line of the column names. Nulls are empty fields, values with a separator, a quote or a line
+ * break are quoted with their quotes doubled (see CsvOutputWriter.appendField).
+ */
+public class CsvRowFormat implements RowFormat {
+	private static final String LINE_SEPARATOR = "\n";
+
+	@Override
+	public void writeHeader(StructType schema, OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		StringBuilder line = new StringBuilder();
+
+		appendLine(line, schema.fieldNames());
+		writer.write(line.toString());
+		writer.flush();
+	}
+
+	@Override
+	public long writeRows(StructType schema, Iterator<Row> rows, OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		StringBuilder line = new StringBuilder();
+		Object[] values = new Object[schema.size()];
+		long noOfRows = 0;
+
+		while (rows.hasNext()) {
+			Row row = rows.next();
+
+			for (int i = 0; i < values.length; i++) {
+				values[i] = row.get(i);
+			}
+
+			line.setLength(0);
+			appendLine(line, values);
+			writer.write(line.toString());
+			noOfRows++;
+		}
+		writer.flush();
+
+		return noOfRows;
+	}
+
+	private static void appendLine(StringBuilder line, Object[] values) {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				line.append(',');
+			}
+
+			CsvOutputWriter.appendField(line, values[i] == null ? null : values[i].toString());
+		}
+
+		line.append(LINE_SEPARATOR);
+	}
+}
@@ -0,0 +1,141 @@
+package sink;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.sql.DataFrame;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.types.StructType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Writes a DataFrame to a single file in an output directory, in a given RowFormat.
+ *
+ * Every partition is written to its own part file by its own task, in parallel and without a shuffle. The driver
+ * then writes the header and appends the part files in partition order with FileChannel.transferTo, which leaves the
+ * copying to the OS, and renames the result into place atomically. Readers of the output directory only ever see
+ * complete files and nothing is read back to be verified.
+ *
+ * The part files are written to the local file system of the executors, so the executors have to share it with the
+ * driver (local mode, or the output directory on a shared mount).
+ */
+public class PartitionedFileSink {
+	private static final Logger logger = LoggerFactory.getLogger(PartitionedFileSink.class);
+
+	private final String outputDir;
+	private final RowFormat format;
+
+	public PartitionedFileSink(String outputDir, RowFormat format) {
+		this.outputDir = outputDir;
+		this.format = format;
+	}
+
+	/**
+	 * Writes the rows to outputDir/fileName, replacing the file if it exists. Returns the number of rows written.
+	 */
+	public long write(DataFrame rows, String fileName) throws IOException {
+		File partDir = new File(outputDir, "." + fileName + ".parts");
+		File tempFile = new File(outputDir, "." + fileName + ".tmp");
+		File file = new File(outputDir, fileName);
+
+		FileUtils.deleteDirectory(partDir);
+		Files.createDirectories(partDir.toPath());
+
+		try {
+			List<Long> rowsPerPartition = writePartitions(rows, format, partDir.getAbsolutePath()).collect();
+
+			try (FileChannel out = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+				ByteArrayOutputStream header = new ByteArrayOutputStream();
+				format.writeHeader(rows.schema(), header);
+
+				ByteBuffer headerBuffer = ByteBuffer.wrap(header.toByteArray());
+				while (headerBuffer.hasRemaining()) {
+					out.write(headerBuffer);
+				}
+
+				for (int partition = 0; partition < rowsPerPartition.size(); partition++) {
+					if (rowsPerPartition.get(partition) > 0) {
+						transferAll(partFile(partDir.getAbsolutePath(), partition), out);
+					}
+				}
+			}
+
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			long noOfRows = 0;
+			for (long partitionRows : rowsPerPartition) {
+				noOfRows += partitionRows;
+			}
+
+			logger.info("Wrote " + noOfRows + " rows from " + rowsPerPartition.size() + " partitions to " + file);
+
+			return noOfRows;
+		} finally {
+			Files.deleteIfExists(tempFile.toPath());
+			FileUtils.deleteDirectory(partDir);
+		}
+	}
+
+	//Static so that the function shipped to the executors does not drag the sink along with it.
+	private static JavaRDD<Long> writePartitions(DataFrame rows, final RowFormat format, final String partDir) {
+		final StructType schema = rows.schema();
+
+		return rows.javaRDD().mapPartitionsWithIndex(new Function2<Integer, Iterator<Row>, Iterator<Long>>() {
+			@Override
+			public Iterator<Long> call(Integer partition, Iterator<Row> partitionRows) throws Exception {
+				long noOfRows = 0;
+
+				//Empty partitions get no part file.
+				if (partitionRows.hasNext()) {
+					try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partFile(partDir, partition)))) {
+						noOfRows = format.writeRows(schema, partitionRows, out);
+					}
+				}
+
+				return Collections.singletonList(noOfRows).iterator();
+			}
+		}, true);
+	}
+
+	private static Path partFile(String partDir, int partition) {
+		return new File(partDir, String.format("part-%05d", partition)).toPath();
+	}
+
+	private static void transferAll(Path partFile, FileChannel out) throws IOException {
+		try (FileChannel in = FileChannel.open(partFile, StandardOpenOption.READ)) {
+			long size = in.size();
+			long position = 0;
+
+			//transferTo may copy less than asked for, e.g. at most 2GB at a time on Linux.
+			while (position < size) {
+				position += in.transferTo(position, size - position, out);
+			}
+		}
+	}
+
+	public String getOutputDir() {
+		return outputDir;
+	}
+
+	public RowFormat getFormat() {
+		return format;
+	}
+}
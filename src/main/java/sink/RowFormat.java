@@ -0,0 +1,25 @@
+package sink;
+
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.types.StructType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+
+/**
+ * File format of a PartitionedFileSink. A file is the header followed by the rows of every partition, so the rows of
+ * a partition have to be encoded without knowing anything about the other partitions.
+ */
+public interface RowFormat extends Serializable {
+	/**
+	 * Written once at the start of the file, by the driver.
+	 */
+	void writeHeader(StructType schema, OutputStream out) throws IOException;
+
+	/**
+	 * Writes the rows of a partition, on the executor. Returns the number of rows written.
+	 */
+	long writeRows(StructType schema, Iterator<Row> rows, OutputStream out) throws IOException;
+}
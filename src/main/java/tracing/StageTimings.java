@@ -0,0 +1,85 @@
+package tracing;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock time the driver spends in each stage of the batch processing, summed over the batches.
+ *
+ * Spark evaluates lazily, so a stage is charged for the jobs its actions run, which can include work set up by the
+ * stages before it (e.g. the logs are only decoded when the window store counts the new batch). Stages are timed
+ * back to back: record returns the time it was called, which is the start of the next stage.
+ *
+ * With a MetricRegistry every run of a stage is also recorded in the timer "stage.<stage>" of the registry, for the
+ * latency distribution rather than the average.
+ */
+public class StageTimings {
+	private final Map<String, Stage> stages = new LinkedHashMap<>();
+	private final MetricRegistry registry;
+
+	public StageTimings() {
+		this(null);
+	}
+
+	public StageTimings(MetricRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Adds the time since stageStart (from System.nanoTime) to the stage. Returns the current System.nanoTime.
+	 */
+	public synchronized long record(String stage, long stageStart) {
+		long now = System.nanoTime();
+		Stage timing = stages.get(stage);
+
+		if (timing == null) {
+			timing = new Stage();
+			stages.put(stage, timing);
+		}
+
+		timing.nanos += now - stageStart;
+		timing.count++;
+
+		if (registry != null) {
+			registry.timer(MetricRegistry.name("stage", stage)).update(now - stageStart, TimeUnit.NANOSECONDS);
+		}
+
+		return now;
+	}
+
+	/**
+	 * Average milliseconds per run of every stage, in the order the stages were first seen.
+	 */
+	public synchronized Map<String, Double> getAverageMillis() {
+		Map<String, Double> averages = new LinkedHashMap<>();
+
+		for (Map.Entry<String, Stage> stage : stages.entrySet()) {
+			averages.put(stage.getKey(), stage.getValue().nanos / 1e6 / stage.getValue().count);
+		}
+
+		return Collections.unmodifiableMap(averages);
+	}
+
+	public synchronized Map<String, Long> getCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+
+		for (Map.Entry<String, Stage> stage : stages.entrySet()) {
+			counts.put(stage.getKey(), stage.getValue().count);
+		}
+
+		return Collections.unmodifiableMap(counts);
+	}
+
+	public synchronized void reset() {
+		stages.clear();
+	}
+
+	private static class Stage {
+		private long nanos;
+		private long count;
+	}
+}
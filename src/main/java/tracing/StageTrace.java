@@ -0,0 +1,111 @@
+package tracing;
+
+import org.apache.spark.Accumulator;
+import org.apache.spark.AccumulatorParam;
+import org.apache.spark.SparkContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+import java.io.Serializable;
+
+/**
+ * Debug trace for the records going through a stage of the processing (for example mapping rows to LabeledPoints).
+ *
+ * Every record is counted in an accumulator, so the number of records per stage is known on the driver. Records are
+ * only logged if sampling is switched on, and then only one in every sampleEvery records per task, through SLF4J at
+ * the configured level (logger "tracing.StageTrace.<stage>"). With sampling off (the default) recording a record does
+ * no I/O at all.
+ */
+public class StageTrace implements Serializable {
+	private final String stage;
+	private final int sampleEvery;
+	private final Level level;
+	private final Accumulator<Object> records;
+
+	//Per task, every task works on its own deserialised copy of the trace.
+	private transient long recordsSeen;
+	private transient Logger logger;
+
+	private StageTrace(String stage, int sampleEvery, Level level, Accumulator<Object> records) {
+		this.stage = stage;
+		this.sampleEvery = sampleEvery;
+		this.level = level;
+		this.records = records;
+	}
+
+	/**
+	 * @param sampleEvery log one in every sampleEvery records, 0 to not log records at all
+	 */
+	public static StageTrace create(SparkContext sparkContext, String stage, int sampleEvery, Level level) {
+		//Scala's Long accumulator, which shows up as Accumulator<Object> in Java.
+		Accumulator<Object> records = sparkContext.accumulator(0L, "Records in " + stage, AccumulatorParam.LongAccumulatorParam$.MODULE$);
+
+		return new StageTrace(stage, sampleEvery, level, records);
+	}
+
+	public void record(String format, Object argument) {
+		if (count()) {
+			log(format, new Object[]{argument});
+		}
+	}
+
+	public void record(String format, Object firstArgument, Object secondArgument) {
+		if (count()) {
+			log(format, new Object[]{firstArgument, secondArgument});
+		}
+	}
+
+	/**
+	 * Counts the record and tells whether it is one that should be logged.
+	 */
+	private boolean count() {
+		records.add(1L);
+		recordsSeen++;
+
+		return sampleEvery > 0 && recordsSeen % sampleEvery == 0;
+	}
+
+	private void log(String format, Object[] arguments) {
+		if (logger == null) {
+			logger = LoggerFactory.getLogger(StageTrace.class.getName() + "." + stage);
+		}
+
+		switch (level) {
+			case ERROR:
+				logger.error(format, arguments);
+				break;
+			case WARN:
+				logger.warn(format, arguments);
+				break;
+			case INFO:
+				logger.info(format, arguments);
+				break;
+			case DEBUG:
+				logger.debug(format, arguments);
+				break;
+			default:
+				logger.trace(format, arguments);
+				break;
+		}
+	}
+
+	public String getStage() {
+		return stage;
+	}
+
+	public int getSampleEvery() {
+		return sampleEvery;
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Number of records that went through the stage so far. Only available on the driver.
+	 */
+	public long getRecords() {
+		return (Long) records.value();
+	}
+}